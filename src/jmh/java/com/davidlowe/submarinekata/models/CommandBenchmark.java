@@ -0,0 +1,79 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing command lines: Command.create, Direction.fromString and the allocation-free CommandParser.
+ * Each invocation handles 'count' lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark
+{
+    @Param({"1000", "100000"})
+    int count;
+
+    private String[] lines;
+    private String[] directions;
+    private final CommandParser parser = new CommandParser();
+
+    @Setup
+    public void setUp()
+    {
+        val random = new Random(count);
+        lines = new String[count];
+        directions = new String[count];
+        for (int idx = 0; idx < count; ++idx)
+        {
+            directions[idx] = Direction.fromOrdinal(random.nextInt(3)).name().toLowerCase();
+            lines[idx] = directions[idx] + " " + random.nextInt(-20, 20);
+        }
+    }
+
+
+    @Benchmark
+    public void commandCreate(Blackhole blackhole)
+            throws ParseException
+    {
+        for (val line : lines)
+            blackhole.consume(Command.create(line));
+    }
+
+    @Benchmark
+    public void directionFromString(Blackhole blackhole)
+    {
+        for (val direction : directions)
+            blackhole.consume(Direction.fromString(direction));
+    }
+
+    @Benchmark
+    public void commandParser(Blackhole blackhole)
+            throws ParseException
+    {
+        for (val line : lines)
+        {
+            parser.parse(line, 0);
+            blackhole.consume(parser.getDistance());
+        }
+    }
+}
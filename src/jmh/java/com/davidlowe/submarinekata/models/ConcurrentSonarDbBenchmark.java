@@ -0,0 +1,48 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write contention: every benchmark thread writes random cells into one shared ConcurrentSonarDb.
+ * Run it with JMH's thread count option to compare writer counts, e.g. -t 1, -t 8, -t 64.
+ * Each iteration starts from an empty db, so later iterations are not measured against a map that has been filling
+ * up since the first warmup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentSonarDbBenchmark
+{
+    private ConcurrentSonarDb sonarDb;
+
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+        sonarDb = new ConcurrentSonarDb();
+    }
+
+
+    @Benchmark
+    public void addScannedData()
+    {
+        val random = ThreadLocalRandom.current();
+        sonarDb.addScannedData(random.nextInt(-2000, 2000), random.nextInt(-2000, 2000), '#');
+    }
+}
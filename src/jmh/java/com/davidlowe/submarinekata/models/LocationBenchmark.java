@@ -0,0 +1,86 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applying 'count' commands to a LocationImpl, one at a time and in CommandBatches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationBenchmark
+{
+    @Param({"1000", "1000000"})
+    int count;
+
+    private Command[] commands;
+    private final List<CommandBatch> batches = new ArrayList<>();
+    private final LocationImpl location = new LocationImpl();
+    private double changes;
+
+    @Setup
+    public void setUp()
+    {
+        val random = new Random(count);
+        commands = new Command[count];
+        CommandBatch batch = null;
+        for (int idx = 0; idx < count; ++idx)
+        {
+            commands[idx] = new Command(Direction.fromOrdinal(random.nextInt(3)), random.nextInt(-20, 20));
+            if (batch == null || batch.isFull())
+            {
+                batch = new CommandBatch(CommandFactory.BATCH_SIZE);
+                batches.add(batch);
+            }
+            batch.add(commands[idx].direction(), commands[idx].distance());
+        }
+    }
+
+
+    @Benchmark
+    public Location processCommand()
+    {
+        location.setConfigValue(0, 0, 0);
+        for (val command : commands)
+            location.processCommand(command);
+        return location;
+    }
+
+    @Benchmark
+    public Location processBatch()
+    {
+        location.setConfigValue(0, 0, 0);
+        for (val batch : batches)
+            location.processBatch(batch);
+        return location;
+    }
+
+    @Benchmark
+    public double processBatchWithListener()
+    {
+        location.setConfigValue(0, 0, 0);
+        changes = 0;
+        for (val batch : batches)
+            location.processBatch(batch, (horizontalLocation, depth) -> changes += horizontalLocation);
+        return changes;
+    }
+}
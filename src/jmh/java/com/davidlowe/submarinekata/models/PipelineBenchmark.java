@@ -0,0 +1,102 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end, as the terminal runner does it: steer a Submarine with docs/input.txt repeated 'scale' times,
+ * scanning from docs/scanner-data.json, then render its map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark
+{
+    @Param({"1", "100", "1000"})
+    int scale;
+
+    private final ScannedSonarDataDb scannedSonarDataDb = new ScannedSonarDataDb();
+    private final PrintStream mapOut = new PrintStream(OutputStream.nullOutputStream());
+    private File commandFile;
+
+    @Setup
+    public void setUp()
+            throws IOException
+    {
+        scannedSonarDataDb.loadData(new File("docs/scanner-data.json"));
+        scannedSonarDataDb.makeReadOnly();
+
+        // docs/input.txt has no trailing line break.
+        val commands = Files.readString(Path.of("docs/input.txt")).strip() + System.lineSeparator();
+        commandFile = File.createTempFile("commands", ".txt");
+        for (int idx = 0; idx < scale; ++idx)
+            Files.writeString(commandFile.toPath(), commands, StandardOpenOption.APPEND);
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException
+    {
+        Files.deleteIfExists(commandFile.toPath());
+    }
+
+
+    @Benchmark
+    public Submarine replay()
+            throws IOException, ExecutionException, InterruptedException
+    {
+        val submarine = new Submarine(new LocationImpl(), scannedSonarDataDb);
+        val commandStream = new CommandStream();
+        commandStream.setConfigValue(commandFile, true);
+        val commandFactory = new CommandFactory(_ -> { }, commandStream, List.of(submarine));
+        try
+        {
+            commandFactory.start().get();
+        }
+        finally
+        {
+            commandFactory.stop();
+        }
+
+        submarine.printMap(mapOut);
+        return submarine;
+    }
+
+    @Benchmark
+    public Submarine parallelReplay()
+            throws IOException, ParseException
+    {
+        val submarine = new Submarine(new LocationImpl(), scannedSonarDataDb);
+        submarine.replay(new TrajectoryEngine(ForkJoinPool.commonPool()), commandFile);
+
+        submarine.printMap(mapOut);
+        return submarine;
+    }
+}
@@ -0,0 +1,167 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading 'entries' scanner entries from a JSON file and from the equivalent binary file, and looking each of them up
+ * (plus a miss for every three hits) in a db loaded each way.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScannedSonarDataDbBenchmark
+{
+    private static final String CELLS = "-+*.#=%.: ";
+
+    @Param({"1000", "100000"})
+    int entries;
+
+    private File jsonFile;
+    private File binaryFile;
+    private int[] lookupXs;
+    private int[] lookupYs;
+    private final ScannedSonarDataDb packedDb = new ScannedSonarDataDb();
+    private final ScannedSonarDataDb mappedDb = new ScannedSonarDataDb();
+    private final ScannedSonarDataDb lazyDb = new ScannedSonarDataDb();
+
+    @Setup
+    public void setUp()
+            throws IOException
+    {
+        val random = new Random(entries);
+        val json = new StringBuilder("{");
+        val lookups = entries + entries / 3;
+        lookupXs = new int[lookups];
+        lookupYs = new int[lookups];
+        for (int idx = 0; idx < entries; ++idx)
+        {
+            if (idx > 0)
+                json.append(',');
+            // Distinct positions along a diagonal band, as a real route's scans are.
+            lookupXs[idx] = idx;
+            lookupYs[idx] = idx / 2 + random.nextInt(4) * entries;
+            json.append("\"(").append(lookupXs[idx]).append(", ").append(lookupYs[idx]).append(")\":[");
+            for (int cell = 0; cell < 9; ++cell)
+                json.append(cell > 0 ? ",\"" : "\"").append(CELLS.charAt(random.nextInt(CELLS.length()))).append('"');
+            json.append(']');
+        }
+        json.append('}');
+
+        jsonFile = File.createTempFile("scanner-data", ".json");
+        Files.writeString(jsonFile.toPath(), json);
+        binaryFile = File.createTempFile("scanner-data", ".bin");
+        BinaryScannerDataFile.convert(jsonFile, binaryFile);
+
+        // Misses just above the band, in between the hits.
+        for (int idx = entries; idx < lookups; ++idx)
+        {
+            lookupXs[idx] = (idx - entries) * 3;
+            lookupYs[idx] = -1 - idx;
+        }
+        // In random order, so no store gains from lookups following the file's order.
+        shuffle(random);
+
+        packedDb.loadData(jsonFile);
+        mappedDb.loadData(binaryFile);
+        lazyDb.loadDataLazily(jsonFile);
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException
+    {
+        mappedDb.clear();
+        lazyDb.clear();
+        Files.deleteIfExists(jsonFile.toPath());
+        Files.deleteIfExists(binaryFile.toPath());
+    }
+
+
+    @Benchmark
+    public ScannedSonarDataDb loadJson()
+            throws IOException
+    {
+        val db = new ScannedSonarDataDb();
+        db.loadData(jsonFile);
+        return db;
+    }
+
+    /**
+     * Includes unmapping the file again, which clear() does.
+     */
+    @Benchmark
+    public long loadBinary()
+            throws IOException
+    {
+        val db = new ScannedSonarDataDb();
+        db.loadData(binaryFile);
+        val size = db.size();
+        db.clear();
+        return size;
+    }
+
+
+    @Benchmark
+    public void lookupPacked(Blackhole blackhole)
+    {
+        lookUpAll(packedDb, blackhole);
+    }
+
+    @Benchmark
+    public void lookupMapped(Blackhole blackhole)
+    {
+        lookUpAll(mappedDb, blackhole);
+    }
+
+    /**
+     * After the first invocation every entry has been decoded, so this measures the lazy store's warm lookups.
+     */
+    @Benchmark
+    public void lookupLazy(Blackhole blackhole)
+    {
+        lookUpAll(lazyDb, blackhole);
+    }
+
+
+    private void lookUpAll(ScannedSonarDataDb db, Blackhole blackhole)
+    {
+        for (int idx = 0; idx < lookupXs.length; ++idx)
+            blackhole.consume(db.getScannerKey2ScannerData(lookupXs[idx], lookupYs[idx]));
+    }
+
+    private void shuffle(Random random)
+    {
+        for (int idx = lookupXs.length - 1; idx > 0; --idx)
+        {
+            val other = random.nextInt(idx + 1);
+            val x = lookupXs[idx];
+            lookupXs[idx] = lookupXs[other];
+            lookupXs[other] = x;
+            val y = lookupYs[idx];
+            lookupYs[idx] = lookupYs[other];
+            lookupYs[other] = y;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing 'cells' map cells into an empty SonarDb or ConcurrentSonarDb, one at a time and as scan grids (with
+ * addScannedBlock(...), or cell by cell), and rendering every row of a map that is 'cells' cells wide.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SonarDbBenchmark
+{
+    @Param({"10000", "1000000"})
+    int cells;
+
+    @Param({"SonarDb", "ConcurrentSonarDb"})
+    String implementation;
+
+    private int[] horizontalPositions;
+    private int[] depths;
+    private int[] blockCenterXs;
+    private int[] blockCenterYs;
+    private ScannerData[] blocks;
+    private SonarDb map;
+
+    @Setup
+    public void setUp()
+    {
+        val random = new Random(cells);
+
+        // Random cells in a square with, on average, one write per cell.
+        val side = (int) Math.sqrt(cells);
+        horizontalPositions = new int[cells];
+        depths = new int[cells];
+        for (int idx = 0; idx < cells; ++idx)
+        {
+            horizontalPositions[idx] = random.nextInt(-side / 2, side - side / 2);
+            depths[idx] = random.nextInt(-side / 2, side - side / 2);
+        }
+
+        // 'cells' / 9 scan grids along a route that moves one cell forward per scan and wanders up and down,
+        // so neighbouring grids overlap as a submarine's do.
+        val blockCount = cells / ScannerData.getGridSize() / ScannerData.getGridSize();
+        blockCenterXs = new int[blockCount];
+        blockCenterYs = new int[blockCount];
+        blocks = new ScannerData[blockCount];
+        int blockCenterY = 0;
+        for (int idx = 0; idx < blockCount; ++idx)
+        {
+            blockCenterY += random.nextInt(-1, 2);
+            blockCenterXs[idx] = idx;
+            blockCenterYs[idx] = blockCenterY;
+            val gridCells = new StringBuilder();
+            for (int cell = 0; cell < ScannerData.getGridSize() * ScannerData.getGridSize(); ++cell)
+                gridCells.append(".#~".charAt(random.nextInt(3)));
+            blocks[idx] = new ScannerData(gridCells.toString());
+        }
+
+        // A map 'cells' wide and 100 rows deep, 1% filled.
+        map = newSonarDb();
+        for (int idx = 0; idx < cells; ++idx)
+            map.addScannedData(random.nextInt(cells), random.nextInt(100), '#');
+        map.addScannedData(0, 0, '#');
+        map.addScannedData(cells - 1, 99, '#');
+    }
+
+
+    @Benchmark
+    public SonarDb addScannedData()
+    {
+        val sonarDb = newSonarDb();
+        for (int idx = 0; idx < cells; ++idx)
+            sonarDb.addScannedData(horizontalPositions[idx], depths[idx], '#');
+        return sonarDb;
+    }
+
+    @Benchmark
+    public SonarDb addScannedBlock()
+    {
+        val sonarDb = newSonarDb();
+        for (int idx = 0; idx < blocks.length; ++idx)
+            sonarDb.addScannedBlock(blockCenterXs[idx], blockCenterYs[idx], blocks[idx]);
+        return sonarDb;
+    }
+
+    /**
+     * The same grids as addScannedBlock(), written with one addScannedData(...) call per cell.
+     */
+    @Benchmark
+    public SonarDb addScannedBlockCellByCell()
+    {
+        val sonarDb = newSonarDb();
+        val gridSize = ScannerData.getGridSize();
+        for (int idx = 0; idx < blocks.length; ++idx)
+        {
+            val startX = blockCenterXs[idx] - gridSize / 2;
+            val startY = blockCenterYs[idx] - gridSize / 2;
+            for (int row = 0; row < gridSize; ++row)
+            {
+                for (int col = 0; col < gridSize; ++col)
+                    sonarDb.addScannedData(startX + col, startY + row, blocks[idx].getCell(row, col));
+            }
+        }
+        return sonarDb;
+    }
+
+    @Benchmark
+    public void getHorizontalMapDataForDepth(Blackhole blackhole)
+    {
+        for (int depth = 0; depth < 100; ++depth)
+            blackhole.consume(map.getHorizontalMapDataForDepth(depth));
+    }
+
+
+    private SonarDb newSonarDb()
+    {
+        return implementation.equals("ConcurrentSonarDb") ? new ConcurrentSonarDb() : new SonarDb();
+    }
+}
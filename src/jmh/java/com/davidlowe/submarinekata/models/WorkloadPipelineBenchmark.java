@@ -0,0 +1,95 @@
+package com.davidlowe.submarinekata.models;
+
+import com.davidlowe.submarinekata.WorkloadGenerator;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end on a generated workload: steer a Submarine with 'commands' commands from WorkloadGenerator, scanning
+ * from its matching scanner data, then render the map.
+ * The 10M-command workload needs about 768 MB of heap (its scanner data, the sonar map and the command file's
+ * buffers), so each fork is given a fixed 1 GB rather than a default sized from the host's memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class WorkloadPipelineBenchmark
+{
+    @Param({"1000000", "10000000"})
+    long commands;
+
+    @Param("0.5")
+    double density;
+
+    private final ScannedSonarDataDb scannedSonarDataDb = new ScannedSonarDataDb();
+    private final PrintStream mapOut = new PrintStream(OutputStream.nullOutputStream());
+    private File commandFile;
+    private File scannerFile;
+
+    @Setup
+    public void setUp()
+            throws IOException
+    {
+        val generator = new WorkloadGenerator(42, WorkloadGenerator.DEFAULT_WIDTH, WorkloadGenerator.DEFAULT_DEPTH_RANGE, density, 0.0);
+        commandFile = File.createTempFile("commands", ".txt");
+        scannerFile = File.createTempFile("scanner-data", ".json");
+        generator.writeCommands(commandFile.toPath(), commands);
+        generator.writeScannerData(scannerFile.toPath(), commands);
+
+        scannedSonarDataDb.loadData(scannerFile);
+        scannedSonarDataDb.makeReadOnly();
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException
+    {
+        Files.deleteIfExists(commandFile.toPath());
+        Files.deleteIfExists(scannerFile.toPath());
+    }
+
+
+    @Benchmark
+    public Submarine replay()
+            throws IOException, ExecutionException, InterruptedException
+    {
+        val submarine = new Submarine(new LocationImpl(), scannedSonarDataDb);
+        val commandStream = new CommandStream();
+        commandStream.setConfigValue(commandFile, true);
+        val commandFactory = new CommandFactory(_ -> { }, commandStream, List.of(submarine));
+        try
+        {
+            commandFactory.start().get();
+        }
+        finally
+        {
+            commandFactory.stop();
+        }
+
+        submarine.printMap(mapOut);
+        return submarine;
+    }
+}
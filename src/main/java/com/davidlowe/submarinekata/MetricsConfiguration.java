@@ -0,0 +1,69 @@
+package com.davidlowe.submarinekata;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.logging.LoggingMeterRegistry;
+import io.micrometer.core.instrument.logging.LoggingRegistryConfig;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Supplies the MeterRegistry that PipelineMetrics records into, chosen by 'submarine.metrics.backend':
+ * <ul>
+ *   <li>logging (the default): a LoggingMeterRegistry, which needs no backend. Every 'submarine.metrics.step' it
+ *   logs each meter's rate, totals and latencies for that step, and it logs a final report when the application
+ *   shuts down.</li>
+ *   <li>none: a registry with no backend, which records nothing.</li>
+ * </ul>
+ */
+@Slf4j
+@Configuration
+public class MetricsConfiguration
+{
+    /**
+     * @throws IllegalArgumentException Thrown if 'backend' is not one of the backends above.
+     */
+    @Bean(destroyMethod = "close")
+    public MeterRegistry meterRegistry(@Value("${submarine.metrics.backend:logging}") String backend,
+                                       @Value("${submarine.metrics.step:PT1M}") Duration step)
+    {
+        return switch (backend)
+        {
+            case "logging" -> loggingMeterRegistry(step);
+            case "none" -> new CompositeMeterRegistry();
+            default ->
+            {
+                val msg = "Unknown metrics backend \"%s\"; expected \"logging\" or \"none\".".formatted(backend);
+                log.warn(msg);
+                throw new IllegalArgumentException(msg);
+            }
+        };
+    }
+
+
+    private static MeterRegistry loggingMeterRegistry(Duration step)
+    {
+        val config = new LoggingRegistryConfig()
+        {
+            @Override
+            public String get(String key)
+            {
+                return null;
+            }
+
+            @Override
+            public Duration step()
+            {
+                return step;
+            }
+        };
+        log.info("Logging pipeline metrics every {}.", step);
+        return LoggingMeterRegistry.builder(config).clock(Clock.SYSTEM).build();
+    }
+}
@@ -1,14 +1,21 @@
 package com.davidlowe.submarinekata;
 
+import com.davidlowe.submarinekata.models.BinaryScannerDataFile;
 import com.davidlowe.submarinekata.models.CommandFactory;
 import com.davidlowe.submarinekata.models.CommandStream;
+import com.davidlowe.submarinekata.models.FleetRunner;
 import com.davidlowe.submarinekata.models.Location;
+import com.davidlowe.submarinekata.models.MapRenderer;
+import com.davidlowe.submarinekata.models.PipelineEvents;
+import com.davidlowe.submarinekata.models.RoutePositions;
 import com.davidlowe.submarinekata.models.Submarine;
+import com.davidlowe.submarinekata.models.TrajectoryEngine;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.help.HelpFormatter;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -18,6 +25,9 @@ import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * CommandLineRunner that executes if the 'terminal' Spring profile is active.
@@ -37,6 +47,18 @@ public class SubmarineTerminalRunner implements CommandLineRunner
     private static final String SCANNER_DATA_FILE_LONG_OPTION = "scanner-file";
     private static final String SCANNER_DATA_FILE_SHORT_OPTION = "sf";
 
+    private static final String SCANNER_LAZY_LONG_OPTION = "scanner-lazy";
+    private static final String SCANNER_LAZY_SHORT_OPTION = "sl";
+
+    private static final String SCANNER_ROUTE_LONG_OPTION = "scanner-route";
+    private static final String SCANNER_ROUTE_SHORT_OPTION = "sr";
+
+    private static final String SCANNER_PREFETCH_LONG_OPTION = "scanner-prefetch";
+    private static final String SCANNER_PREFETCH_SHORT_OPTION = "sp";
+
+    private static final String CONVERT_SCANNER_FILE_LONG_OPTION = "convert-scanner-file";
+    private static final String CONVERT_SCANNER_FILE_SHORT_OPTION = "csf";
+
     private static final String HORIZONTAL_START_LONG_OPTION = "horizontal-start";
     private static final String HORIZONTAL_START_SHORT_OPTION = "hs";
 
@@ -49,6 +71,27 @@ public class SubmarineTerminalRunner implements CommandLineRunner
     private static final String COMMAND_FILE_LONG_OPTION = "command-file";
     private static final String COMMAND_FILE_SHORT_OPTION = "cf";
 
+    private static final String PARALLEL_REPLAY_LONG_OPTION = "parallel-replay";
+    private static final String PARALLEL_REPLAY_SHORT_OPTION = "pr";
+
+    private static final String FLEET_DIR_LONG_OPTION = "fleet-dir";
+    private static final String FLEET_DIR_SHORT_OPTION = "fd";
+
+    private static final String JFR_FILE_LONG_OPTION = "jfr-file";
+    private static final String JFR_FILE_SHORT_OPTION = "jfr";
+
+    private static final String MAP_OUT_LONG_OPTION = "map-out";
+    private static final String MAP_OUT_SHORT_OPTION = "mo";
+
+    private static final String MAP_ROWS_LONG_OPTION = "map-rows";
+    private static final String MAP_ROWS_SHORT_OPTION = "mr";
+
+    private static final String VIEWPORT_LONG_OPTION = "viewport";
+    private static final String VIEWPORT_SHORT_OPTION = "vp";
+
+    private static final String PARALLEL_MAP_LONG_OPTION = "parallel-map";
+    private static final String PARALLEL_MAP_SHORT_OPTION = "pm";
+
     private static final String HELP_LONG_OPTION = "help";
     private static final String HELP_SHORT_OPTION = "h";
 
@@ -68,12 +111,23 @@ public class SubmarineTerminalRunner implements CommandLineRunner
     {
         applicationCliOptions = new Options();
 
-        applicationCliOptions.addOption(SCANNER_DATA_FILE_SHORT_OPTION, SCANNER_DATA_FILE_LONG_OPTION, true, "The fully-qualified filename of the scanner json data file.");
+        applicationCliOptions.addOption(SCANNER_DATA_FILE_SHORT_OPTION, SCANNER_DATA_FILE_LONG_OPTION, true, "The fully-qualified filename of the scanner data file, either json or binary (format is detected automatically).");
+        applicationCliOptions.addOption(SCANNER_LAZY_SHORT_OPTION, SCANNER_LAZY_LONG_OPTION, false, "Index the scanner data file at startup and only decode the entries the route looks up, instead of loading every entry.");
+        applicationCliOptions.addOption(SCANNER_ROUTE_SHORT_OPTION, SCANNER_ROUTE_LONG_OPTION, false, "Only load the scanner data at the positions the command file's route scans at, found by a first pass over the command file. Requires a command file, and cannot be combined with " + SCANNER_LAZY_LONG_OPTION + ", " + PARALLEL_REPLAY_LONG_OPTION + " or " + FLEET_DIR_LONG_OPTION + ".");
+        applicationCliOptions.addOption(SCANNER_PREFETCH_SHORT_OPTION, SCANNER_PREFETCH_LONG_OPTION, false, "Look up the scanner data of the next batch of commands on a virtual thread while the current batch is applied. Helps when entries are decoded or read on demand (" + SCANNER_LAZY_LONG_OPTION + ", or a binary scanner data file). Requires a command file, and cannot be combined with " + PARALLEL_REPLAY_LONG_OPTION + " or " + FLEET_DIR_LONG_OPTION + ".");
+        applicationCliOptions.addOption(CONVERT_SCANNER_FILE_SHORT_OPTION, CONVERT_SCANNER_FILE_LONG_OPTION, true, "Converts the json scanner data file to a binary scanner data file at the specified fully-qualified filename, then exits.");
 
         applicationCliOptions.addOption(HORIZONTAL_START_SHORT_OPTION, HORIZONTAL_START_LONG_OPTION, true, "Submarine's starting Horizontal location (meters).");
         applicationCliOptions.addOption(DEPTH_START_SHORT_OPTION, DEPTH_START_LONG_OPTION, true, "Submarine's starting Depth (meters).");
         applicationCliOptions.addOption(AIM_START_SHORT_OPTION, AIM_START_LONG_OPTION, true, "Submarine's starting Aim (meters).");
         applicationCliOptions.addOption(COMMAND_FILE_SHORT_OPTION, COMMAND_FILE_LONG_OPTION, true, "The fully-qualified filename of a command file to steer the submarine in batch mode. If not specified, program will run in interactive mode.");
+        applicationCliOptions.addOption(PARALLEL_REPLAY_SHORT_OPTION, PARALLEL_REPLAY_LONG_OPTION, false, "Replay the command file on all available cores. Requires a command file.");
+        applicationCliOptions.addOption(FLEET_DIR_SHORT_OPTION, FLEET_DIR_LONG_OPTION, true, "The fully-qualified name of a directory of command files. Each file is run as a separate submarine's route, all at the same time.");
+        applicationCliOptions.addOption(JFR_FILE_SHORT_OPTION, JFR_FILE_LONG_OPTION, true, "Record the run with Java Flight Recorder, including the command pipeline's events, and write the recording to the specified fully-qualified filename at exit.");
+        applicationCliOptions.addOption(MAP_OUT_SHORT_OPTION, MAP_OUT_LONG_OPTION, true, "Write the submarine's map to the specified fully-qualified filename instead of the terminal.");
+        applicationCliOptions.addOption(MAP_ROWS_SHORT_OPTION, MAP_ROWS_LONG_OPTION, true, "Only output the map's rows between two depths, both inclusive, given as \"from:to\" (e.g. \"-10:250\").");
+        applicationCliOptions.addOption(VIEWPORT_SHORT_OPTION, VIEWPORT_LONG_OPTION, true, "Only output the part of the map inside a rectangle, given as \"xMin,yMin,xMax,yMax\" (all inclusive), or as a single radius for the square centered on the submarine's final location. Cannot be combined with " + MAP_ROWS_LONG_OPTION + ".");
+        applicationCliOptions.addOption(PARALLEL_MAP_SHORT_OPTION, PARALLEL_MAP_LONG_OPTION, false, "Render the map's rows on all available cores. Cannot be combined with " + VIEWPORT_LONG_OPTION + ".");
         applicationCliOptions.addOption(HELP_SHORT_OPTION, HELP_LONG_OPTION, false, "Display help information");
     }
 
@@ -121,20 +175,68 @@ public class SubmarineTerminalRunner implements CommandLineRunner
         }
 
         String scannerFilename;
+        boolean scannerLazy;
+        boolean scannerRoute;
+        boolean scannerPrefetch;
         double horizontalStart;
         double depthStart;
         double aimStart;
         String commandFilename;
+        String convertedScannerFilename;
+        boolean parallelReplay;
+        String fleetDirname;
+        String jfrFilename;
+        String mapOutFilename;
+        int[] mapRows;
+        int[] viewport;
+        boolean parallelMap;
 
         try
         {
             val commandLine = new DefaultParser().parse(applicationCliOptions, args);
 
             scannerFilename = commandLine.getParsedOptionValue(SCANNER_DATA_FILE_LONG_OPTION);
+            scannerLazy = commandLine.hasOption(SCANNER_LAZY_LONG_OPTION);
             horizontalStart = commandLine.getParsedOptionValue(HORIZONTAL_START_LONG_OPTION, 0.0);
             depthStart = commandLine.getParsedOptionValue(DEPTH_START_LONG_OPTION, 0.0);
             aimStart = commandLine.getParsedOptionValue(AIM_START_LONG_OPTION, 0.0);
             commandFilename = commandLine.getParsedOptionValue(COMMAND_FILE_LONG_OPTION, "");
+            convertedScannerFilename = commandLine.getParsedOptionValue(CONVERT_SCANNER_FILE_LONG_OPTION, "");
+            parallelReplay = commandLine.hasOption(PARALLEL_REPLAY_LONG_OPTION);
+            fleetDirname = commandLine.getParsedOptionValue(FLEET_DIR_LONG_OPTION, "");
+            jfrFilename = commandLine.getParsedOptionValue(JFR_FILE_LONG_OPTION, "");
+            mapOutFilename = commandLine.getParsedOptionValue(MAP_OUT_LONG_OPTION, "");
+            mapRows = parseRowRange(commandLine.getParsedOptionValue(MAP_ROWS_LONG_OPTION, ""));
+            viewport = parseViewport(commandLine.getParsedOptionValue(VIEWPORT_LONG_OPTION, ""));
+            if (viewport != null && commandLine.hasOption(MAP_ROWS_LONG_OPTION))
+                throw new ParseException("Only one of %s and %s can be used.".formatted(MAP_ROWS_LONG_OPTION, VIEWPORT_LONG_OPTION));
+            parallelMap = commandLine.hasOption(PARALLEL_MAP_LONG_OPTION);
+            if (viewport != null && parallelMap)
+                throw new ParseException("Only one of %s and %s can be used.".formatted(PARALLEL_MAP_LONG_OPTION, VIEWPORT_LONG_OPTION));
+            scannerRoute = commandLine.hasOption(SCANNER_ROUTE_LONG_OPTION);
+            if (scannerRoute)
+            {
+                if (StringUtils.isBlank(commandFilename))
+                    throw new ParseException("%s requires a command file.".formatted(SCANNER_ROUTE_LONG_OPTION));
+                // A parallel replay can round positions differently, and a fleet has many routes.
+                for (val option : new String[]{SCANNER_LAZY_LONG_OPTION, PARALLEL_REPLAY_LONG_OPTION, FLEET_DIR_LONG_OPTION})
+                {
+                    if (commandLine.hasOption(option))
+                        throw new ParseException("Only one of %s and %s can be used.".formatted(SCANNER_ROUTE_LONG_OPTION, option));
+                }
+            }
+            scannerPrefetch = commandLine.hasOption(SCANNER_PREFETCH_LONG_OPTION);
+            if (scannerPrefetch)
+            {
+                if (StringUtils.isBlank(commandFilename))
+                    throw new ParseException("%s requires a command file.".formatted(SCANNER_PREFETCH_LONG_OPTION));
+                // Only batches read by the command reader are prefetched.
+                for (val option : new String[]{PARALLEL_REPLAY_LONG_OPTION, FLEET_DIR_LONG_OPTION})
+                {
+                    if (commandLine.hasOption(option))
+                        throw new ParseException("Only one of %s and %s can be used.".formatted(SCANNER_PREFETCH_LONG_OPTION, option));
+                }
+            }
         }
         catch (Exception e)
         {
@@ -142,6 +244,9 @@ public class SubmarineTerminalRunner implements CommandLineRunner
             return;
         }
 
+        if (StringUtils.isNotBlank(jfrFilename))
+            PipelineEvents.startRecording(Path.of(jfrFilename));
+
         submarineLocation.setConfigValue(horizontalStart, depthStart, aimStart);
 
         File scannerFile = null;
@@ -161,8 +266,37 @@ public class SubmarineTerminalRunner implements CommandLineRunner
             return;
         }
 
-        submarine.getScannedSonarDataDb().loadData(scannerFile);
+        if (StringUtils.isNotBlank(convertedScannerFilename))
+        {
+            BinaryScannerDataFile.convert(scannerFile, new File(convertedScannerFilename));
+            return;
+        }
 
+        if (scannerLazy)
+        {
+            submarine.getScannedSonarDataDb().loadDataLazily(scannerFile);
+        }
+        else if (scannerRoute)
+        {
+            val commandFile = new File(commandFilename);
+            if (!commandFile.exists())
+            {
+                log.error("File not found: {}", commandFilename);
+                return;
+            }
+            val positions = RoutePositions.collect(commandFile, horizontalStart, depthStart, aimStart);
+            submarine.getScannedSonarDataDb().loadData(scannerFile, positions);
+        }
+        else
+        {
+            submarine.getScannedSonarDataDb().loadData(scannerFile);
+        }
+
+        if (StringUtils.isNotBlank(fleetDirname))
+        {
+            runFleet(new File(fleetDirname), horizontalStart, depthStart, aimStart);
+            return;
+        }
 
         File commandFile = null;
         if (StringUtils.isNotBlank(commandFilename))
@@ -176,15 +310,34 @@ public class SubmarineTerminalRunner implements CommandLineRunner
 
             log.info("Batch mode using file \"{}\".", commandFilename);
         }
+        else if (parallelReplay)
+        {
+            log.error("Parallel replay requires a command file.");
+            return;
+        }
         else
         {
             log.info("Interactive mode. Please enter your commands, pressing ENTER after each command. To exit, enter 'q' or 'Q' and press ENTER.");
         }
 
-        commandStreamBean.setConfigValue(commandFile);
-
-        log.info("Starting command reader.");
-        val commandsRead = commandFactory.start().get();
+        long commandsRead;
+        if (parallelReplay)
+        {
+            log.info("Starting parallel replay.");
+            commandsRead = submarine.replay(new TrajectoryEngine(ForkJoinPool.commonPool()), commandFile);
+        }
+        else
+        {
+            // Command files are memory-mapped; terminal input is read as before.
+            commandStreamBean.setConfigValue(commandFile, commandFile != null);
+            if (scannerPrefetch)
+                submarine.enableScannerPrefetch();
+
+            log.info("Starting command reader.");
+            commandsRead = commandFactory.start().get();
+            if (scannerPrefetch)
+                log.info("Scanner prefetch: {} hits, {} misses.", submarine.getScannerPrefetcher().getHitCount(), submarine.getScannerPrefetcher().getMissCount());
+        }
         log.info("Finished reading commands. Read {} commands.", commandsRead);
 
         val subFinalLocation = submarine.getCurrentLocation();
@@ -194,6 +347,152 @@ public class SubmarineTerminalRunner implements CommandLineRunner
 
         log.info("!!!Submarine map!!!", subFinalLocation.getDepth());
 
-        submarine.printMap();
+        if (viewport != null && viewport.length == 1)
+        {
+            // A radius around the final location, clamped to the positions a map can hold.
+            val centerX = (long) subFinalLocation.getHorizontalLocation();
+            val centerY = (long) subFinalLocation.getDepth();
+            val radius = viewport[0];
+            viewport = new int[]{clampToInt(centerX - radius), clampToInt(centerY - radius), clampToInt(centerX + radius), clampToInt(centerY + radius)};
+        }
+
+        val mapRenderer = new MapRenderer(submarine.getSonarDb());
+        if (StringUtils.isNotBlank(mapOutFilename))
+        {
+            val mapFile = Path.of(mapOutFilename);
+            long rowsWritten;
+            if (viewport != null)
+                rowsWritten = mapRenderer.render(mapFile, viewport[0], viewport[1], viewport[2], viewport[3]);
+            else if (parallelMap)
+                rowsWritten = mapRenderer.renderParallel(mapFile, ForkJoinPool.commonPool(), mapRows[0], mapRows[1]);
+            else
+                rowsWritten = mapRenderer.render(mapFile, mapRows[0], mapRows[1]);
+            log.info("Wrote {} map rows to \"{}\".", rowsWritten, mapOutFilename);
+        }
+        else
+        {
+            val out = Channels.newChannel(System.out);
+            if (viewport != null)
+                mapRenderer.render(out, viewport[0], viewport[1], viewport[2], viewport[3]);
+            else if (parallelMap)
+                mapRenderer.renderParallel(out, ForkJoinPool.commonPool(), mapRows[0], mapRows[1]);
+            else
+                mapRenderer.render(out, mapRows[0], mapRows[1]);
+            System.out.flush();
+        }
+    }
+
+
+    private static int clampToInt(long value)
+    {
+        return Math.clamp(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses an "xMin,yMin,xMax,yMax" viewport, or a single viewport radius.
+     *
+     * @return The viewport's {xMin, yMin, xMax, yMax}, {radius}, or null if 'viewport' is blank.
+     * @throws ParseException Thrown if 'viewport' is not a valid viewport.
+     */
+    static int[] parseViewport(String viewport)
+            throws ParseException
+    {
+        if (StringUtils.isBlank(viewport))
+            return null;
+
+        val parts = viewport.split(",");
+        if (parts.length == 1 || parts.length == 4)
+        {
+            try
+            {
+                val values = new int[parts.length];
+                for (int idx = 0; idx < parts.length; ++idx)
+                    values[idx] = Integer.parseInt(parts[idx].trim());
+
+                val valid = values.length == 1
+                            ? values[0] >= 0
+                            : values[0] <= values[2] && values[1] <= values[3];
+                if (valid)
+                    return values;
+            }
+            catch (NumberFormatException _)
+            {
+                // Reported below.
+            }
+        }
+
+        val msg = "Invalid viewport \"%s\"; expected \"xMin,yMin,xMax,yMax\" or a radius".formatted(viewport);
+        log.warn(msg);
+        throw new ParseException(msg);
+    }
+
+    /**
+     * Parses a "from:to" depth range, where both depths are inclusive.
+     *
+     * @return The range's {from, to} depths, or the widest possible range if 'rowRange' is blank.
+     * @throws ParseException Thrown if 'rowRange' is not a valid range.
+     */
+    static int[] parseRowRange(String rowRange)
+            throws ParseException
+    {
+        if (StringUtils.isBlank(rowRange))
+            return new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE};
+
+        // Look for the separator after the first character, so a negative "from" depth is allowed.
+        val separator = rowRange.indexOf(':', 1);
+        if (separator > 0)
+        {
+            try
+            {
+                val from = Integer.parseInt(rowRange.substring(0, separator).trim());
+                val to = Integer.parseInt(rowRange.substring(separator + 1).trim());
+                if (from <= to)
+                    return new int[]{from, to};
+            }
+            catch (NumberFormatException _)
+            {
+                // Reported below.
+            }
+        }
+
+        val msg = "Invalid map row range \"%s\"; expected \"from:to\" with from <= to".formatted(rowRange);
+        log.warn(msg);
+        throw new ParseException(msg);
+    }
+
+
+    /**
+     * Runs every command file in 'fleetDir' as its own submarine's route, sharing the scanner data already loaded
+     * into the submarine bean, then reports each route's final location and map.
+     */
+    private void runFleet(File fleetDir, double horizontalStart, double depthStart, double aimStart)
+            throws IOException, InterruptedException
+    {
+        if (!fleetDir.isDirectory())
+        {
+            log.error("Fleet directory not found: {}", fleetDir.getAbsolutePath());
+            return;
+        }
+
+        val scannedSonarDataDb = submarine.getScannedSonarDataDb();
+        scannedSonarDataDb.makeReadOnly();
+
+        log.info("Starting fleet from \"{}\".", fleetDir.getAbsolutePath());
+        val startNanos = System.nanoTime();
+        val results = new FleetRunner(scannedSonarDataDb, horizontalStart, depthStart, aimStart).run(fleetDir);
+        val elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        log.info("FLEET RUN COMPLETE: {} routes, {} commands in {} ms.", results.size(), results.stream().mapToLong(FleetRunner.RouteResult::commandCount).sum(), elapsedMillis);
+
+        for (val result : results)
+        {
+            val routeLocation = result.submarine().getCurrentLocation();
+            if (result.isSuccessful())
+                log.info("Route \"{}\": {} commands, final location: {}", result.routeFile().getName(), result.commandCount(), routeLocation);
+            else
+                log.error("Route \"{}\" stopped after {} commands ({}), final location: {}", result.routeFile().getName(), result.commandCount(), result.error(), routeLocation);
+
+            System.out.println("=== " + result.routeFile().getName() + " ===");
+            result.submarine().printMap();
+        }
     }
 }
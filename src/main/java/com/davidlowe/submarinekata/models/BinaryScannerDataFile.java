@@ -0,0 +1,224 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Compact binary scanner-data file format, so that a scan does not have to be reparsed from JSON on
+ * every start. Layout (big-endian):
+ * <pre>
+ *   offset 0               4 bytes   magic "SKSD"
+ *   offset 4               int       format version
+ *   offset 8               long      entry count (n)
+ *   offset 16              long[n]   packed (horizontal, depth) keys, sorted ascending
+ *   offset 16 + 8n         byte[9n]  cell data, one byte per cell in row order, same order as the keys
+ * </pre>
+ * Keys are packed with LongOpenHashMap.packKey(int, int). Cells must be ISO-8859-1 characters.
+ */
+@Slf4j
+public final class BinaryScannerDataFile
+{
+    static final int MAGIC = 0x534B5344; // "SKSD"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int CELL_COUNT = ScannerData.ARRAY_ROW_MAX_SIZE * ScannerData.ARRAY_COL_MAX_SIZE;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private BinaryScannerDataFile()
+    {
+    }
+
+
+    /**
+     * @return True if 'file' starts with the binary scanner-data magic number.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    public static boolean isBinary(@NonNull File file)
+            throws IOException
+    {
+        try (val raf = new RandomAccessFile(file, "r"))
+        {
+            return raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC;
+        }
+    }
+
+
+    /**
+     * Converts a scanner-data JSON file into the binary format.
+     *
+     * @param jsonFile   Scanner-data JSON file to read.
+     * @param binaryFile File to write. Overwritten if it exists.
+     *
+     * @return Number of entries written.
+     * @throws IOException              Thrown if either file cannot be read or written.
+     * @throws IllegalArgumentException Thrown if the JSON is not valid scanner data, contains a duplicate position,
+     *                                  or contains a cell that is not an ISO-8859-1 character.
+     */
+    public static long convert(@NonNull File jsonFile, @NonNull File binaryFile)
+            throws IOException, IllegalArgumentException
+    {
+        val entries = new Entries();
+        ScannerDataJsonReader.read(jsonFile, entries::add);
+
+        sort(entries.keys, entries.cells, 0, entries.size - 1);
+        for (int idx = 1; idx < entries.size; ++idx)
+        {
+            if (entries.keys[idx] == entries.keys[idx - 1])
+            {
+                val msg = "Duplicate scanner position (%d,%d)".formatted(LongOpenHashMap.unpackX(entries.keys[idx]), LongOpenHashMap.unpackY(entries.keys[idx]));
+                throw new IllegalArgumentException(msg);
+            }
+        }
+
+        write(binaryFile, entries);
+        log.info("Converted {} scanner entries from \"{}\" to \"{}\".", entries.size, jsonFile.getAbsolutePath(), binaryFile.getAbsolutePath());
+        return entries.size;
+    }
+
+
+    private static void write(File binaryFile, Entries entries)
+            throws IOException
+    {
+        try (val channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            val buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(entries.size);
+
+            for (int idx = 0; idx < entries.size; ++idx)
+            {
+                if (buffer.remaining() < Long.BYTES)
+                    flush(channel, buffer);
+                buffer.putLong(entries.keys[idx]);
+            }
+
+            val cellBytes = (long) entries.size * CELL_COUNT;
+            for (int offset = 0; offset < cellBytes; )
+            {
+                if (!buffer.hasRemaining())
+                    flush(channel, buffer);
+                val length = (int) Math.min(buffer.remaining(), cellBytes - offset);
+                buffer.put(entries.cells, offset, length);
+                offset += length;
+            }
+
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer)
+            throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+
+    /**
+     * Sorts 'keys' ascending, moving each key's 9 cell bytes along with it.
+     */
+    private static void sort(long[] keys, byte[] cells, int lo, int hi)
+    {
+        while (lo < hi)
+        {
+            if (hi - lo < 16)
+            {
+                for (int i = lo + 1; i <= hi; ++i)
+                    for (int j = i; j > lo && keys[j - 1] > keys[j]; --j)
+                        swap(keys, cells, j - 1, j);
+                return;
+            }
+
+            val pivot = keys[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j)
+            {
+                while (keys[i] < pivot)
+                    ++i;
+                while (keys[j] > pivot)
+                    --j;
+                if (i <= j)
+                    swap(keys, cells, i++, j--);
+            }
+
+            // Recurse into the smaller half so the stack depth stays logarithmic.
+            if (j - lo < hi - i)
+            {
+                sort(keys, cells, lo, j);
+                lo = i;
+            }
+            else
+            {
+                sort(keys, cells, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    private static void swap(long[] keys, byte[] cells, int a, int b)
+    {
+        val key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+
+        val aOffset = a * CELL_COUNT;
+        val bOffset = b * CELL_COUNT;
+        for (int idx = 0; idx < CELL_COUNT; ++idx)
+        {
+            val cell = cells[aOffset + idx];
+            cells[aOffset + idx] = cells[bOffset + idx];
+            cells[bOffset + idx] = cell;
+        }
+    }
+
+
+    /**
+     * Growable primitive buffer of the entries read from the JSON file.
+     */
+    private static class Entries
+    {
+        // The cell bytes of every entry have to fit in a single array.
+        static final int MAX_ENTRIES = (Integer.MAX_VALUE - 8) / CELL_COUNT;
+
+        long[] keys = new long[1024];
+        byte[] cells = new byte[1024 * CELL_COUNT];
+        int size;
+
+        void add(int horizontalPos, int depthPos, char[] entryCells)
+        {
+            if (size == keys.length)
+            {
+                if (size == MAX_ENTRIES)
+                    throw new IllegalArgumentException("Scanner data has more than %d entries".formatted(MAX_ENTRIES));
+                val newCapacity = (int) Math.min((long) size + (size >> 1), MAX_ENTRIES);
+                keys = Arrays.copyOf(keys, newCapacity);
+                cells = Arrays.copyOf(cells, newCapacity * CELL_COUNT);
+            }
+
+            keys[size] = LongOpenHashMap.packKey(horizontalPos, depthPos);
+            val offset = size * CELL_COUNT;
+            for (int idx = 0; idx < CELL_COUNT; ++idx)
+            {
+                if (entryCells[idx] > 0xFF)
+                {
+                    val msg = "Scanner cell '%c' at (%d,%d) cannot be stored in the binary format".formatted(entryCells[idx], horizontalPos, depthPos);
+                    throw new IllegalArgumentException(msg);
+                }
+                cells[offset + idx] = (byte) entryCells[idx];
+            }
+            ++size;
+        }
+    }
+}
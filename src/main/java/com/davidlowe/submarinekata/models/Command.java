@@ -39,26 +39,19 @@ public record Command(@NonNull Direction direction, double distance) implements
         if (StringUtils.isBlank(commandString))
             throwParseException(commandString);
 
-        String[] parts = commandString.split(" ");
-        if (parts.length != 2)
-            throwParseException(commandString);
-
-        val direction = Direction.fromString(parts[0]);
-        if (direction == null)
-            throwParseException(commandString);
-
-        double distance = 0;
-        try
+        val parsedEvent = new PipelineEvents.CommandParsed();
+        parsedEvent.begin();
+        val parser = new CommandParser();
+        parser.parse(commandString, 0);
+
+        val newCommand = new Command(parser.getDirection(), parser.getDistance());
+        parsedEvent.end();
+        if (parsedEvent.shouldCommit())
         {
-            distance = Double.parseDouble(parts[1]);
+            parsedEvent.direction = newCommand.direction().name();
+            parsedEvent.distance = newCommand.distance();
+            parsedEvent.commit();
         }
-        catch (NumberFormatException _)
-        {
-            throwParseException(commandString);
-        }
-
-        // If 'direction' is null, an exception is thrown above. Any IntelliJ/SonarQube warnings can be ignored.
-        val newCommand = new Command(direction, distance);
         log.info("Created command: {}.", newCommand);
 
         return newCommand;
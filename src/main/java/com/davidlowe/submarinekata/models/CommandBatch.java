@@ -0,0 +1,126 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+/**
+ * A fixed-capacity batch of commands stored column-wise: each command's Direction ordinal in a byte[] and its
+ * distance in a double[]. Unlike a List of Command objects, a batch is two arrays no matter how many commands
+ * it holds, and it is refilled after clear() without allocating, so replaying a command file creates no
+ * garbage per command.
+ * This class is not thread-safe.
+ */
+@Slf4j
+public final class CommandBatch
+{
+    private final byte[] directions;
+    private final double[] distances;
+    private int size = 0;
+
+    /**
+     * @param capacity Maximum number of commands the batch holds.
+     */
+    public CommandBatch(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            val msg = "Invalid batch capacity %d".formatted(capacity);
+            log.warn(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.directions = new byte[capacity];
+        this.distances = new double[capacity];
+    }
+
+
+    /**
+     * Appends a command to the batch.
+     *
+     * @throws IllegalStateException Thrown if the batch is full.
+     */
+    public void add(@NonNull Direction direction, double distance)
+    {
+        if (size == directions.length)
+        {
+            val msg = "CommandBatch is full (%d commands)".formatted(size);
+            log.warn(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        directions[size] = (byte) direction.ordinal();
+        distances[size] = distance;
+        ++size;
+    }
+
+    public Direction getDirection(int idx)
+    {
+        return Direction.fromOrdinal(directions[checkIndex(idx)]);
+    }
+
+    public double getDistance(int idx)
+    {
+        return distances[checkIndex(idx)];
+    }
+
+    /**
+     * @return A new Command object for the command at 'idx'.
+     */
+    public Command getCommand(int idx)
+    {
+        return new Command(getDirection(idx), getDistance(idx));
+    }
+
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int capacity()
+    {
+        return directions.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean isFull()
+    {
+        return size == directions.length;
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+
+    private int checkIndex(int idx)
+    {
+        if (idx < 0 || idx >= size)
+            throw new IndexOutOfBoundsException("Index %d out of bounds for batch size %d".formatted(idx, size));
+        return idx;
+    }
+
+
+    /**
+     * Direction ordinals, one per command. Only the first size() entries are valid.
+     * Exposed package-private so Location implementations can loop over the batch without per-command calls.
+     */
+    byte[] directions()
+    {
+        return directions;
+    }
+
+    /**
+     * Distances, one per command. Only the first size() entries are valid.
+     */
+    double[] distances()
+    {
+        return distances;
+    }
+}
@@ -0,0 +1,26 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+
+/**
+ * Receives commands in batches from CommandFactory when it is reading a command file.
+ * Batch dispatch replaces one CommandAvailableEvent per command, so a large command file does not pay for
+ * event allocation and listener resolution on every line. Interactive input is still published as events.
+ */
+public interface CommandBatchListener
+{
+    /**
+     * Processes a batch of commands, in the order they were read.
+     *
+     * @param commands Commands to process. The batch is cleared and refilled once this method returns,
+     *                 so implementations must not keep a reference to it.
+     */
+    void commandsAvailable(@NonNull CommandBatch commands);
+
+    /**
+     * Called once the last batch has been published, including when reading stops at an invalid line.
+     */
+    default void commandsFinished()
+    {
+    }
+}
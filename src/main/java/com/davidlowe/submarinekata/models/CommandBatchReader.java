@@ -0,0 +1,93 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+
+import java.io.IOException;
+
+/**
+ * Reads command lines and hands them on in CommandBatches of up to CommandFactory.BATCH_SIZE commands: the read,
+ * parse and batch loop of every batch-mode reader of a command file (CommandFactory, FleetRunner and RoutePositions).
+ * Reading stops at the last line or at a quit command (see CommandFactory.isQuitCommand(...)).
+ * This class is not thread-safe.
+ */
+final class CommandBatchReader
+{
+    /**
+     * Where the lines come from, e.g. MappedLineReader::readLineSlice.
+     */
+    @FunctionalInterface
+    interface LineSource
+    {
+        /**
+         * @return The next line, or null if there are no more. Only read until the next call.
+         */
+        CharSequence readLineSlice()
+                throws IOException;
+    }
+
+    private final CommandParser parser = new CommandParser();
+    private final CommandBatch batch = new CommandBatch(CommandFactory.BATCH_SIZE);
+
+    /**
+     * Number of lines read, including a final quit command or invalid line.
+     */
+    @Getter
+    private long lineNumber = 0;
+
+    /**
+     * Number of commands handed on.
+     */
+    @Getter
+    private long commandCount = 0;
+
+
+    /**
+     * Reads every line from 'lines', handing each full batch, then the last partial one, to 'batches'. Like the
+     * commands before an invalid line, those read before an I/O error are handed on before the exception is thrown.
+     *
+     * @param batches Receives the batches. Its commandsFinished() is not called.
+     *
+     * @throws IOException    Thrown if a line cannot be read.
+     * @throws ParseException Thrown at the first line that is not a valid command.
+     */
+    void read(@NonNull LineSource lines, @NonNull CommandBatchListener batches)
+            throws IOException, ParseException
+    {
+        try
+        {
+            CharSequence line;
+            while ((line = lines.readLineSlice()) != null)
+            {
+                ++lineNumber;
+                if (CommandFactory.isQuitCommand(line))
+                    break;
+
+                parser.parse(line, lineNumber);
+                batch.add(parser.getDirection(), parser.getDistance());
+                if (batch.isFull())
+                    handOn(batches);
+            }
+        }
+        catch (IOException | ParseException e)
+        {
+            handOn(batches);
+            throw e;
+        }
+        handOn(batches);
+    }
+
+
+    private void handOn(CommandBatchListener batches)
+    {
+        if (batch.isEmpty())
+            return;
+
+        val size = batch.size();
+        batches.commandsAvailable(batch);
+        commandCount += size;
+        batch.clear();
+    }
+}
@@ -1,12 +1,16 @@
 package com.davidlowe.submarinekata.models;
 
-import lombok.RequiredArgsConstructor;
+import lombok.NonNull;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -17,18 +21,39 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * This class will receive String inputs of commands and convert those to
  * Command objects, then publish those commands via CommandAvailableEvent events.
  * The Strings are coming from CommandStream, which can be any type of input stream.
+ * When CommandStream is reading a file rather than the user's terminal, commands are instead handed to every
+ * CommandBatchListener in batches of up to BATCH_SIZE commands.
  */
 @Slf4j
-@RequiredArgsConstructor
 @Service
 public class CommandFactory
 {
+    static final int BATCH_SIZE = 4096;
+
     private final ApplicationEventPublisher eventPublisher;
     private final CommandStream commandStream;
+    private final List<CommandBatchListener> batchListeners;
+    private final PipelineMetrics metrics;
 
     private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Only used by processStreamAsEvents, which runs on a single executor thread at a time.
+    private final CommandParser commandParser = new CommandParser();
     private final AtomicBoolean running = new AtomicBoolean(false);
 
+    public CommandFactory(@NonNull ApplicationEventPublisher eventPublisher, @NonNull CommandStream commandStream, @NonNull List<CommandBatchListener> batchListeners)
+    {
+        this(eventPublisher, commandStream, batchListeners, PipelineMetrics.NOOP);
+    }
+
+    @Autowired
+    public CommandFactory(@NonNull ApplicationEventPublisher eventPublisher, @NonNull CommandStream commandStream, @NonNull List<CommandBatchListener> batchListeners, @NonNull PipelineMetrics metrics)
+    {
+        this.eventPublisher = eventPublisher;
+        this.commandStream = commandStream;
+        this.batchListeners = batchListeners;
+        this.metrics = metrics;
+    }
+
 
     @SneakyThrows
     public Future<Integer> start()
@@ -44,24 +69,67 @@ public class CommandFactory
     }
 
 
-    @SneakyThrows
     private Integer processStream()
     {
         running.set(true);
+        return commandStream.isInteractive() ? processStreamAsEvents() : processStreamInBatches();
+    }
+
+    @SneakyThrows
+    private Integer processStreamAsEvents()
+    {
         int commandsRetrieved = 0;
+        long lineNumber = 0;
         try
         {
-            String commandString;
-            while (running.get() && (commandString = commandStream.readLine()) != null && running.get())
+            while (running.get())
             {
-                if (commandString.equalsIgnoreCase("q"))
+                val readEvent = new PipelineEvents.CommandRead();
+                readEvent.begin();
+                val commandString = commandStream.readLineSlice();
+                readEvent.end();
+                if (commandString == null || !running.get())
                     break;
 
+                ++lineNumber;
+                if (isQuitCommand(commandString))
+                    break;
+
+                if (readEvent.shouldCommit())
+                {
+                    readEvent.commandCount = 1;
+                    readEvent.firstLine = lineNumber;
+                    readEvent.commit();
+                }
+
                 log.info("Received command from input stream: \"{}\"", commandString);
-                val event = new CommandAvailableEvent(this, Command.create(commandString));
+                val parsedEvent = new PipelineEvents.CommandParsed();
+                parsedEvent.begin();
+                parse(commandString, lineNumber);
+                parsedEvent.end();
+                metrics.commandsParsed(1);
+                val event = new CommandAvailableEvent(this, new Command(commandParser.getDirection(), commandParser.getDistance()));
+                if (parsedEvent.shouldCommit())
+                {
+                    parsedEvent.direction = event.getCommand().direction().name();
+                    parsedEvent.distance = event.getCommand().distance();
+                    parsedEvent.commit();
+                }
+
                 ++commandsRetrieved;
                 log.info("Publishing command \"{}\"", event.getCommand());
+                val dispatchedEvent = new PipelineEvents.CommandDispatched();
+                dispatchedEvent.begin();
+                val startNanos = System.nanoTime();
                 eventPublisher.publishEvent(event);
+                metrics.eventDispatched(System.nanoTime() - startNanos);
+                dispatchedEvent.end();
+                if (dispatchedEvent.shouldCommit())
+                {
+                    dispatchedEvent.mode = "event";
+                    dispatchedEvent.commandCount = 1;
+                    dispatchedEvent.commit();
+                }
             }
         }
         catch (Exception e)
@@ -73,4 +141,145 @@ public class CommandFactory
         return commandsRetrieved;
     }
 
+    @SneakyThrows
+    private Integer processStreamInBatches()
+    {
+        val reader = new CommandBatchReader();
+        Exception failure = null;
+        try
+        {
+            // Commands before a bad line are still published, as they are when publishing events.
+            reader.read(this::readLineWhileRunning, new BatchPublisher(reader));
+        }
+        catch (Exception e)
+        {
+            failure = e;
+            if (e instanceof ParseException)
+                metrics.parseFailed();
+            log.error("Error while reading stream and creating command.", e);
+            throw e;
+        }
+        finally
+        {
+            finishBatches(failure);
+        }
+
+        return (int) reader.getCommandCount();
+    }
+
+    /**
+     * @return The next line, or null at the end of the stream or once stop() has been called.
+     */
+    private CharSequence readLineWhileRunning()
+            throws IOException
+    {
+        if (!running.get())
+            return null;
+        val commandString = commandStream.readLineSlice();
+        return running.get() ? commandString : null;
+    }
+
+    /**
+     * Tells every batch listener that no more batches follow. If reading already failed with 'failure', a listener's
+     * own failure is attached to it rather than replacing it.
+     */
+    private void finishBatches(Exception failure)
+    {
+        for (val batchListener : batchListeners)
+        {
+            try
+            {
+                batchListener.commandsFinished();
+            }
+            catch (RuntimeException e)
+            {
+                if (failure == null)
+                    throw e;
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    private void publishBatch(CommandBatch batch)
+    {
+        if (batch.isEmpty())
+            return;
+
+        log.debug("Publishing batch of {} commands", batch.size());
+        metrics.commandsParsed(batch.size());
+        val dispatchedEvent = new PipelineEvents.CommandDispatched();
+        dispatchedEvent.begin();
+        val startNanos = System.nanoTime();
+        for (val batchListener : batchListeners)
+            batchListener.commandsAvailable(batch);
+        metrics.batchDispatched(System.nanoTime() - startNanos);
+        dispatchedEvent.end();
+        if (dispatchedEvent.shouldCommit())
+        {
+            dispatchedEvent.mode = "batch";
+            dispatchedEvent.commandCount = batch.size();
+            dispatchedEvent.commit();
+        }
+        batch.clear();
+    }
+
+    private void parse(CharSequence commandString, long lineNumber)
+            throws ParseException
+    {
+        try
+        {
+            commandParser.parse(commandString, lineNumber);
+        }
+        catch (ParseException e)
+        {
+            metrics.parseFailed();
+            throw e;
+        }
+    }
+
+
+    /**
+     * @return True if 'commandString' is "q" or "Q", which ends command input.
+     */
+    static boolean isQuitCommand(CharSequence commandString)
+    {
+        return commandString.length() == 1 && Character.toLowerCase(commandString.charAt(0)) == 'q';
+    }
+
+
+    /**
+     * Publishes each batch a CommandBatchReader hands on, with a CommandRead event covering the reading and parsing
+     * of its lines.
+     */
+    private final class BatchPublisher implements CommandBatchListener
+    {
+        private final CommandBatchReader reader;
+        private PipelineEvents.CommandRead readEvent;
+
+        BatchPublisher(CommandBatchReader reader)
+        {
+            this.reader = reader;
+            startRead();
+        }
+
+        @Override
+        public void commandsAvailable(@NonNull CommandBatch commands)
+        {
+            readEvent.end();
+            if (readEvent.shouldCommit())
+            {
+                readEvent.commandCount = commands.size();
+                readEvent.commit();
+            }
+            publishBatch(commands);
+            startRead();
+        }
+
+        private void startRead()
+        {
+            readEvent = new PipelineEvents.CommandRead();
+            readEvent.begin();
+            readEvent.firstLine = reader.getLineNumber() + 1;
+        }
+    }
 }
@@ -0,0 +1,213 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.Arrays;
+
+/**
+ * Every command a submarine has received, indexed so that the Location after any command can be found, and any
+ * earlier command changed, without replaying the history from the start.
+ * Commands are grouped into blocks of BLOCK_SIZE, and a segment tree over the blocks holds the composed
+ * LocationTransform of every block range. The transform of the first n commands is the composition of O(log n)
+ * tree nodes plus at most BLOCK_SIZE - 1 commands of the last, partial block, so seeking and updating both take
+ * O(log n) time. Blocking keeps the tree small: under 0.2 doubles of tree per command, instead of 6 for a tree
+ * with one leaf per command.
+ * Results match replaying the commands with LocationImpl up to floating-point rounding, and exactly for integer
+ * distances (see TrajectoryEngine).
+ * This class is not thread-safe.
+ */
+@Slf4j
+public class CommandHistory
+{
+    static final int BLOCK_SHIFT = 5;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    private static final int NODE_STRIDE = 3;
+
+    private byte[] directions = new byte[BLOCK_SIZE];
+    private double[] distances = new double[BLOCK_SIZE];
+    private int size = 0;
+
+    // Segment tree over the complete blocks, stored as an implicit binary heap: node 1 is the root, the children of
+    // node n are 2n and 2n + 1, and block b is leaf leafCount + b. Node n's transform is (forward, depth, aim) at
+    // tree[3n], tree[3n + 1] and tree[3n + 2], so a node is one memory access rather than three.
+    // The last block's leaf is only filled in once the block is complete; until then queries fold its commands
+    // directly, so only every BLOCK_SIZE-th append does any tree work.
+    private int leafCount = 1;
+    private double[] tree = new double[2 * NODE_STRIDE];
+
+
+    /**
+     * Appends a command to the history.
+     */
+    public void add(@NonNull Direction direction, double distance)
+    {
+        if (size == directions.length)
+        {
+            if (size == Integer.MAX_VALUE - BLOCK_SIZE)
+            {
+                val msg = "CommandHistory cannot hold more than %d commands".formatted(size);
+                log.warn(msg);
+                throw new IllegalStateException(msg);
+            }
+            val newCapacity = (int) Math.min((long) size * 2, Integer.MAX_VALUE - BLOCK_SIZE);
+            directions = Arrays.copyOf(directions, newCapacity);
+            distances = Arrays.copyOf(distances, newCapacity);
+        }
+
+        val block = size >>> BLOCK_SHIFT;
+        if (block == leafCount)
+            growTree();
+
+        directions[size] = (byte) direction.ordinal();
+        distances[size] = distance;
+        ++size;
+
+        if ((size & BLOCK_MASK) == 0)
+            updateBlock(block);
+    }
+
+    /**
+     * Replaces the command at 'index'.
+     *
+     * @throws IndexOutOfBoundsException Thrown if there is no command at 'index'.
+     */
+    public void set(int index, @NonNull Direction direction, double distance)
+    {
+        checkIndex(index);
+        directions[index] = (byte) direction.ordinal();
+        distances[index] = distance;
+
+        // The last block only has a leaf once it is complete.
+        val block = index >>> BLOCK_SHIFT;
+        if (block < size >>> BLOCK_SHIFT)
+            updateBlock(block);
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException Thrown if there is no command at 'index'.
+     */
+    public Command get(int index)
+    {
+        checkIndex(index);
+        return new Command(Direction.fromOrdinal(directions[index]), distances[index]);
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+
+    /**
+     * @param count Number of commands from the start of the history, 0 to size().
+     *
+     * @return The composed transform of the first 'count' commands.
+     * @throws IndexOutOfBoundsException Thrown if 'count' is negative or larger than size().
+     */
+    public LocationTransform transformOf(int count)
+    {
+        if (count < 0 || count > size)
+            throw new IndexOutOfBoundsException("Count %d out of bounds for history size %d".formatted(count, size));
+
+        // Prefix over the whole blocks: composing left to right, the nodes met from the left end of the range are
+        // appended to 'left' and the ones met from the right end are prepended to 'right'.
+        double leftForward = 0.0, leftDepth = 0.0, leftAim = 0.0;
+        double rightForward = 0.0, rightDepth = 0.0, rightAim = 0.0;
+        int lo = leafCount;
+        int hi = leafCount + (count >>> BLOCK_SHIFT);
+        while (lo < hi)
+        {
+            if ((lo & 1) == 1)
+            {
+                val node = lo * NODE_STRIDE;
+                leftDepth += tree[node + 1] + leftAim * tree[node];
+                leftForward += tree[node];
+                leftAim += tree[node + 2];
+                ++lo;
+            }
+            if ((hi & 1) == 1)
+            {
+                --hi;
+                val node = hi * NODE_STRIDE;
+                rightDepth += tree[node + 1] + tree[node + 2] * rightForward;
+                rightForward += tree[node];
+                rightAim += tree[node + 2];
+            }
+            lo >>>= 1;
+            hi >>>= 1;
+        }
+        val blocks = new LocationTransform(leftForward, leftDepth, leftAim).andThen(new LocationTransform(rightForward, rightDepth, rightAim));
+
+        val partialStart = count & ~BLOCK_MASK;
+        if (partialStart == count)
+            return blocks;
+        return blocks.andThen(foldCommands(partialStart, count));
+    }
+
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index %d out of bounds for history size %d".formatted(index, size));
+    }
+
+    /**
+     * @return The transform of commands [from, to).
+     */
+    private LocationTransform foldCommands(int from, int to)
+    {
+        val fold = new LocationImpl();
+        for (int idx = from; idx < to; ++idx)
+            fold.step(Direction.fromOrdinal(directions[idx]), distances[idx]);
+        return LocationTransform.fromOrigin(fold);
+    }
+
+    /**
+     * Recomputes a complete block's leaf from its commands, then every node above it.
+     */
+    private void updateBlock(int block)
+    {
+        val blockStart = block << BLOCK_SHIFT;
+        val transform = foldCommands(blockStart, blockStart + BLOCK_SIZE);
+        val leaf = (leafCount + block) * NODE_STRIDE;
+        tree[leaf] = transform.forward();
+        tree[leaf + 1] = transform.depth();
+        tree[leaf + 2] = transform.aim();
+
+        for (int node = (leafCount + block) >>> 1; node > 0; node >>>= 1)
+            combineChildren(node);
+    }
+
+    private void combineChildren(int node)
+    {
+        val parent = node * NODE_STRIDE;
+        val left = 2 * node * NODE_STRIDE;
+        val right = left + NODE_STRIDE;
+        tree[parent] = tree[left] + tree[right];
+        tree[parent + 1] = tree[left + 1] + tree[right + 1] + tree[left + 2] * tree[right];
+        tree[parent + 2] = tree[left + 2] + tree[right + 2];
+    }
+
+    /**
+     * Doubles the number of leaves, keeping the existing block transforms and rebuilding the nodes above them.
+     */
+    private void growTree()
+    {
+        val newLeafCount = leafCount << 1;
+        val newTree = new double[2 * newLeafCount * NODE_STRIDE];
+        System.arraycopy(tree, leafCount * NODE_STRIDE, newTree, newLeafCount * NODE_STRIDE, leafCount * NODE_STRIDE);
+
+        leafCount = newLeafCount;
+        tree = newTree;
+        for (int node = leafCount - 1; node > 0; --node)
+            combineChildren(node);
+    }
+}
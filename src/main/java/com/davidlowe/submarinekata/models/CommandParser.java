@@ -0,0 +1,144 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Parses "direction distance" command lines without allocating.
+ * Lines are read through the CharSequence interface, so a String, a CharBuffer, or a window over
+ * a command file's bytes can all be parsed in place. The result of the last successful parse is
+ * available from getDirection() and getDistance(); a single instance is meant to be reused for every
+ * line of a stream and is not thread-safe.
+ * A line is accepted exactly when Command.create has always accepted it: a direction keyword, a single
+ * space, a distance, and optionally trailing spaces.
+ */
+@Slf4j
+@Getter
+public final class CommandParser
+{
+    // Largest mantissa for which mantissa / 10^n (n <= 22) is exactly rounded: both operands are
+    // then exact doubles, and a single IEEE division rounds correctly.
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private Direction direction;
+    private double distance;
+
+
+    /**
+     * Parses 'line'. On success, getDirection() and getDistance() return the parsed command.
+     *
+     * @param line       Command line, without its line terminator.
+     * @param lineNumber 1-based line number reported in the error message, or 0 if the line has no line number.
+     *
+     * @throws ParseException Thrown if 'line' is not a properly formatted command.
+     */
+    public void parse(@NonNull CharSequence line, long lineNumber)
+            throws ParseException
+    {
+        val length = line.length();
+
+        int directionEnd = 0;
+        while (directionEnd < length && line.charAt(directionEnd) != ' ')
+            ++directionEnd;
+
+        val parsedDirection = Direction.fromCharSequence(line, 0, directionEnd);
+        if (parsedDirection == null || directionEnd == length)
+            throw parseException(line, lineNumber);
+
+        val distanceStart = directionEnd + 1;
+        int distanceEnd = distanceStart;
+        while (distanceEnd < length && line.charAt(distanceEnd) != ' ')
+            ++distanceEnd;
+
+        if (distanceEnd == distanceStart)
+            throw parseException(line, lineNumber);
+
+        for (int idx = distanceEnd; idx < length; ++idx)
+        {
+            if (line.charAt(idx) != ' ')
+                throw parseException(line, lineNumber);
+        }
+
+        distance = parseDistance(line, distanceStart, distanceEnd, lineNumber);
+        direction = parsedDirection;
+    }
+
+
+    /**
+     * Parses [-+]digits[.digits] directly. Anything else (exponents, hex, "NaN", more digits than a double
+     * can represent exactly, ...) falls back to Double.parseDouble.
+     */
+    private static double parseDistance(CharSequence line, int start, int end, long lineNumber)
+            throws ParseException
+    {
+        int idx = start;
+        val negative = line.charAt(idx) == '-';
+        if (negative || line.charAt(idx) == '+')
+            ++idx;
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean inFraction = false;
+        for (; idx < end; ++idx)
+        {
+            val ch = line.charAt(idx);
+            if (ch >= '0' && ch <= '9')
+            {
+                mantissa = mantissa * 10 + (ch - '0');
+                if (mantissa >= MAX_EXACT_MANTISSA)
+                    return parseDistanceSlowly(line, start, end, lineNumber);
+                ++digits;
+                if (inFraction)
+                    ++fractionDigits;
+            }
+            else if (ch == '.' && !inFraction)
+            {
+                inFraction = true;
+            }
+            else
+            {
+                return parseDistanceSlowly(line, start, end, lineNumber);
+            }
+        }
+
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length)
+            return parseDistanceSlowly(line, start, end, lineNumber);
+
+        val value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static double parseDistanceSlowly(CharSequence line, int start, int end, long lineNumber)
+            throws ParseException
+    {
+        try
+        {
+            return Double.parseDouble(line.subSequence(start, end).toString());
+        }
+        catch (NumberFormatException _)
+        {
+            throw parseException(line, lineNumber);
+        }
+    }
+
+
+    /**
+     * Logs and returns the exception parse(...) throws for an invalid 'line'.
+     */
+    static ParseException parseException(CharSequence line, long lineNumber)
+    {
+        val msg = lineNumber > 0
+                  ? "Invalid command \"%s\" at line %d".formatted(line, lineNumber)
+                  : "Invalid command \"%s\"".formatted(line);
+        log.warn(msg);
+        return new ParseException(msg);
+    }
+}
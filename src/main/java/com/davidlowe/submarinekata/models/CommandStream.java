@@ -6,10 +6,13 @@ import lombok.val;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
+import java.nio.file.NoSuchFileException;
 
 /**
  * CommandStream provides the flexibility to use either a file for streaming Commands to the application in batch mode,
  * or the user's Terminal to send Command objects to the application in interactive mode.
+ * A command file can also be read memory-mapped (see MappedLineReader), which avoids decoding and allocating a String
+ * per line when lines are read with readLineSlice().
  */
 @Slf4j
 @Getter
@@ -17,6 +20,11 @@ import java.io.*;
 public class CommandStream
 {
     private BufferedReader commandReader = null;
+    private MappedLineReader mappedCommandReader = null;
+    /**
+     * True if commands are read from the user's terminal rather than from a file.
+     */
+    private boolean interactive = false;
 
     /**
      * Sets commandReader to either an InputStreamReader or FileReader depending on whether the
@@ -30,11 +38,29 @@ public class CommandStream
     public void setConfigValue(File commandFile)
             throws IOException
     {
-        if (this.commandReader != null)
+        setConfigValue(commandFile, false);
+    }
+
+    /**
+     * Same as setConfigValue(File), but can read 'commandFile' memory-mapped.
+     *
+     * @param commandFile  Command file, or null to read commands from the user's terminal.
+     * @param memoryMapped If true and 'commandFile' is not null, the file is read through a MappedLineReader
+     *                     instead of a BufferedReader. Ignored for terminal input.
+     *
+     * @throws FileNotFoundException Thrown if 'commandFile' does not exist, or is not available for reading.
+     */
+    public void setConfigValue(File commandFile, boolean memoryMapped)
+            throws IOException
+    {
+        if (this.commandReader != null || this.mappedCommandReader != null)
         {
             try
             {
-                this.commandReader.close();
+                if (this.commandReader != null)
+                    this.commandReader.close();
+                if (this.mappedCommandReader != null)
+                    this.mappedCommandReader.close();
             }
             catch (IOException e)
             {
@@ -43,13 +69,25 @@ public class CommandStream
                 throw e;
             }
             this.commandReader = null;
+            this.mappedCommandReader = null;
         }
 
+        this.interactive = commandFile == null;
+
         if (commandFile != null)
         {
             try
             {
-                this.commandReader = new BufferedReader(new FileReader(commandFile));
+                if (memoryMapped)
+                    this.mappedCommandReader = new MappedLineReader(commandFile);
+                else
+                    this.commandReader = new BufferedReader(new FileReader(commandFile));
+            }
+            catch (NoSuchFileException e)
+            {
+                val msg = "File \"%s\" is not available for reading.".formatted(commandFile.getAbsolutePath());
+                log.error(msg, e);
+                throw new FileNotFoundException(msg);
             }
             catch (FileNotFoundException e)
             {
@@ -74,7 +112,32 @@ public class CommandStream
     public String readLine()
             throws IOException
     {
+        if (mappedCommandReader != null)
+            return mappedCommandReader.readLine();
         return commandReader.readLine();
     }
 
+    /**
+     * Reads the next line from the active input without creating a String when the input is memory-mapped.
+     *
+     * @return The next line from the input, or null if end of stream is reached. The returned CharSequence is
+     * only valid until the next read.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    public CharSequence readLineSlice()
+            throws IOException
+    {
+        if (mappedCommandReader != null)
+            return mappedCommandReader.readLineSlice();
+        return commandReader.readLine();
+    }
+
+    /**
+     * @return True if the active input is a memory-mapped command file.
+     */
+    public boolean isMemoryMapped()
+    {
+        return mappedCommandReader != null;
+    }
+
 }
@@ -0,0 +1,198 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SonarDb that many threads (for example the submarines of a fleet) can write into and read from at once.
+ * <p>
+ * The tile index is split into STRIPE_COUNT stripes, each a LongOpenHashMap guarded by its own lock, so writers
+ * only contend when they need the same stripe; the lock is only held to look up or install a tile. Cells are written
+ * and read while holding their tile's lock, so exactly one writer wins each cell, as in SonarDb: the first writer to
+ * lock the tile. Bounds are kept in atomics that only CAS when they actually grow.
+ * <p>
+ * A reader running at the same time as writers sees every cell either before or after its write, and may see bounds
+ * that are slightly ahead of the rows it reads; once the writers have finished (and been joined), reads see everything.
+ */
+public class ConcurrentSonarDb extends SonarDb
+{
+    static final int STRIPE_COUNT = 64;
+
+    public ConcurrentSonarDb()
+    {
+        super(new StripedTileStore());
+    }
+
+
+    private static final class StripedTileStore implements SonarTileStore
+    {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final LongOpenHashMap<SonarTile>[] stripes = new LongOpenHashMap[STRIPE_COUNT];
+
+        private final AtomicInteger tileCount = new AtomicInteger();
+        private final LongAdder cellCount = new LongAdder();
+        private volatile boolean wideCells = false;
+
+        // Only read once 'empty' is false; 'empty' is cleared after the first bounds have been written.
+        private volatile boolean empty = true;
+        private final AtomicInteger minHorizontalLocation = new AtomicInteger(Integer.MAX_VALUE);
+        private final AtomicInteger minDepth = new AtomicInteger(Integer.MAX_VALUE);
+        private final AtomicInteger maxHorizontalLocation = new AtomicInteger(Integer.MIN_VALUE);
+        private final AtomicInteger maxDepth = new AtomicInteger(Integer.MIN_VALUE);
+
+        StripedTileStore()
+        {
+            for (int idx = 0; idx < STRIPE_COUNT; ++idx)
+                stripes[idx] = new LongOpenHashMap<>();
+        }
+
+
+        @Override
+        public long getCellCount()
+        {
+            return cellCount.sum();
+        }
+
+        @Override
+        public int getTileCount()
+        {
+            return tileCount.get();
+        }
+
+        @Override
+        public Integer getMinHorizontalLocation()
+        {
+            return empty ? null : minHorizontalLocation.get();
+        }
+
+        @Override
+        public Integer getMinDepth()
+        {
+            return empty ? null : minDepth.get();
+        }
+
+        @Override
+        public Integer getMaxHorizontalLocation()
+        {
+            return empty ? null : maxHorizontalLocation.get();
+        }
+
+        @Override
+        public Integer getMaxDepth()
+        {
+            return empty ? null : maxDepth.get();
+        }
+
+
+        @Override
+        public SonarTile findTile(int tileX, int tileY)
+        {
+            val stripe = stripeFor(tileX, tileY);
+            synchronized (stripe)
+            {
+                return stripe.get(tileX, tileY);
+            }
+        }
+
+        @Override
+        public SonarTile getOrCreateTile(int tileX, int tileY)
+        {
+            val stripe = stripeFor(tileX, tileY);
+            synchronized (stripe)
+            {
+                var tile = stripe.get(tileX, tileY);
+                if (tile == null)
+                {
+                    tile = new SonarTile();
+                    stripe.put(tileX, tileY, tile);
+                    tileCount.incrementAndGet();
+                }
+                return tile;
+            }
+        }
+
+        @Override
+        public void writeCell(SonarTile tile, int horizontalPosition, int depth, char mapData)
+        {
+            boolean written;
+            synchronized (tile)
+            {
+                written = tile.setIfAbsent(horizontalPosition & SonarTile.MASK, depth & SonarTile.MASK, mapData);
+            }
+            if (written)
+            {
+                cellCount.increment();
+                if (mapData > 0xFF && !wideCells)
+                    wideCells = true;
+            }
+        }
+
+        @Override
+        public int readCell(SonarTile tile, int localX, int localY)
+        {
+            synchronized (tile)
+            {
+                return SonarTileStore.super.readCell(tile, localX, localY);
+            }
+        }
+
+        @Override
+        public void copyCells(SonarTile tile, int tileOffset, byte[] destination, int destinationOffset, int length)
+        {
+            synchronized (tile)
+            {
+                SonarTileStore.super.copyCells(tile, tileOffset, destination, destinationOffset, length);
+            }
+        }
+
+        @Override
+        public void copyWideCells(SonarTile tile, int tileOffset, char[] destination, int destinationOffset, int length)
+        {
+            synchronized (tile)
+            {
+                SonarTileStore.super.copyWideCells(tile, tileOffset, destination, destinationOffset, length);
+            }
+        }
+
+        @Override
+        public boolean hasWideCells()
+        {
+            return wideCells;
+        }
+
+        @Override
+        public void extendBounds(int fromHorizontalPosition, int fromDepth, int toHorizontalPosition, int toDepth)
+        {
+            lowerTo(minHorizontalLocation, fromHorizontalPosition);
+            lowerTo(minDepth, fromDepth);
+            raiseTo(maxHorizontalLocation, toHorizontalPosition);
+            raiseTo(maxDepth, toDepth);
+            if (empty)
+                empty = false;
+        }
+
+
+        private LongOpenHashMap<SonarTile> stripeFor(int tileX, int tileY)
+        {
+            // Neighbouring tiles, which concurrent writers along nearby routes tend to hit, land in different stripes.
+            val hash = (tileX * 0x9E3779B9) ^ tileY;
+            return stripes[(hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1)];
+        }
+
+        private static void lowerTo(AtomicInteger bound, int value)
+        {
+            int current = bound.get();
+            while (value < current && !bound.compareAndSet(current, value))
+                current = bound.get();
+        }
+
+        private static void raiseTo(AtomicInteger bound, int value)
+        {
+            int current = bound.get();
+            while (value > current && !bound.compareAndSet(current, value))
+                current = bound.get();
+        }
+    }
+}
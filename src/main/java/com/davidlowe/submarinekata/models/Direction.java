@@ -1,11 +1,11 @@
 package com.davidlowe.submarinekata.models;
 
 import lombok.AllArgsConstructor;
+import lombok.NonNull;
 import lombok.ToString;
-import org.apache.commons.lang3.StringUtils;
+import lombok.val;
 
 import java.io.Serializable;
-import java.util.Arrays;
 
 @AllArgsConstructor
 @ToString
@@ -15,16 +15,54 @@ public enum Direction implements Serializable
     UP("up"),
     DOWN("down");
 
+    private static final Direction[] VALUES = values();
+
     private final String name;
 
+    /**
+     * @return The Direction whose ordinal() is 'ordinal', without the array copy values() makes.
+     */
+    public static Direction fromOrdinal(int ordinal)
+    {
+        return VALUES[ordinal];
+    }
+
     public static Direction fromString(String directionString)
     {
-        if (StringUtils.isBlank(directionString))
+        if (directionString == null)
             return null;
 
-        return Arrays.stream(values())
-                     .filter(dir -> dir.name.equals(directionString))
-                     .findFirst()
-                     .orElse(null);
+        return fromCharSequence(directionString, 0, directionString.length());
+    }
+
+    /**
+     * Matches the direction keyword in chars[start, end) without creating any Strings.
+     * Candidates are picked by first character and length, then confirmed character by character.
+     *
+     * @return The matching Direction, or null if the characters are not exactly a direction keyword.
+     */
+    public static Direction fromCharSequence(@NonNull CharSequence chars, int start, int end)
+    {
+        if (end <= start)
+            return null;
+
+        val candidate = switch (chars.charAt(start))
+        {
+            case 'f' -> FORWARD;
+            case 'u' -> UP;
+            case 'd' -> DOWN;
+            default -> null;
+        };
+
+        if (candidate == null || candidate.name.length() != end - start)
+            return null;
+
+        for (int idx = 1; idx < candidate.name.length(); ++idx)
+        {
+            if (chars.charAt(start + idx) != candidate.name.charAt(idx))
+                return null;
+        }
+
+        return candidate;
     }
 }
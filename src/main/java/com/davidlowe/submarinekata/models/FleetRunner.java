@@ -0,0 +1,184 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs many command files ("routes") at once, one Submarine per route.
+ * Every route runs on its own virtual thread with its own Location and SonarDb, so routes share nothing mutable;
+ * all of them scan from one ScannedSonarDataDb, which must have been made read-only first.
+ * At most maxConcurrentRoutes routes run at the same time (by default one per available processor), since a route
+ * never blocks for long and more concurrent routes than carrier threads would only add contention.
+ */
+@Slf4j
+public final class FleetRunner
+{
+    private final ScannedSonarDataDb scannedSonarDataDb;
+    private final double horizontalStart;
+    private final double depthStart;
+    private final double aimStart;
+    private final int maxConcurrentRoutes;
+
+    /**
+     * @param scannedSonarDataDb Scanner data shared by every route. Must be read-only.
+     * @param horizontalStart    Starting horizontal location of every submarine.
+     * @param depthStart         Starting depth of every submarine.
+     * @param aimStart           Starting aim of every submarine.
+     */
+    public FleetRunner(@NonNull ScannedSonarDataDb scannedSonarDataDb, double horizontalStart, double depthStart, double aimStart)
+    {
+        this(scannedSonarDataDb, horizontalStart, depthStart, aimStart, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxConcurrentRoutes Largest number of routes run at the same time.
+     */
+    public FleetRunner(@NonNull ScannedSonarDataDb scannedSonarDataDb, double horizontalStart, double depthStart, double aimStart, int maxConcurrentRoutes)
+    {
+        if (!scannedSonarDataDb.isReadOnly())
+        {
+            val msg = "The fleet's ScannedSonarDataDb must be read-only.";
+            log.warn(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (maxConcurrentRoutes <= 0)
+            throw new IllegalArgumentException("Invalid number of concurrent routes %d".formatted(maxConcurrentRoutes));
+
+        this.scannedSonarDataDb = scannedSonarDataDb;
+        this.horizontalStart = horizontalStart;
+        this.depthStart = depthStart;
+        this.aimStart = aimStart;
+        this.maxConcurrentRoutes = maxConcurrentRoutes;
+    }
+
+
+    /**
+     * Runs every regular, non-hidden file in 'routeDirectory' as a route, in file name order.
+     *
+     * @return One result per route, in file name order.
+     * @throws IOException Thrown if 'routeDirectory' cannot be listed.
+     */
+    public List<RouteResult> run(@NonNull File routeDirectory)
+            throws IOException, InterruptedException
+    {
+        val files = routeDirectory.listFiles(file -> file.isFile() && !file.isHidden());
+        if (files == null)
+        {
+            val msg = "Cannot list route directory \"%s\"".formatted(routeDirectory.getAbsolutePath());
+            log.warn(msg);
+            throw new IOException(msg);
+        }
+
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        return run(Arrays.asList(files));
+    }
+
+    /**
+     * Runs every file in 'routeFiles' as a route. A route that fails (an unreadable file, an invalid command, or an
+     * error while applying its commands, such as scanner data that cannot be decoded) is reported in its result and
+     * does not affect the other routes.
+     *
+     * @return One result per route, in the order of 'routeFiles'.
+     */
+    public List<RouteResult> run(@NonNull List<File> routeFiles)
+            throws InterruptedException
+    {
+        val permits = new Semaphore(maxConcurrentRoutes);
+        val futures = new ArrayList<Future<RouteResult>>(routeFiles.size());
+        try (val executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            for (val routeFile : routeFiles)
+            {
+                futures.add(executor.submit(() ->
+                {
+                    permits.acquire();
+                    try
+                    {
+                        return runRoute(routeFile);
+                    }
+                    finally
+                    {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        val results = new ArrayList<RouteResult>(futures.size());
+        for (val future : futures)
+        {
+            try
+            {
+                results.add(future.get());
+            }
+            catch (ExecutionException e)
+            {
+                // runRoute(...) reports its own failures, so this is a bug.
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+
+    /**
+     * Reads commands until end of file or a "q" line, handing them to the route's Submarine in batches as
+     * CommandFactory does. Commands before an invalid line are applied and counted.
+     */
+    private RouteResult runRoute(File routeFile)
+    {
+        val location = new LocationImpl();
+        location.setConfigValue(horizontalStart, depthStart, aimStart);
+        val submarine = new Submarine(location, scannedSonarDataDb);
+
+        val reader = new CommandBatchReader();
+        String error = null;
+        try (val lines = new MappedLineReader(routeFile))
+        {
+            reader.read(lines::readLineSlice, submarine);
+        }
+        catch (IOException | ParseException e)
+        {
+            error = e.getMessage();
+            log.warn("Route \"{}\" failed: {}", routeFile.getName(), error);
+        }
+        catch (RuntimeException e)
+        {
+            // Not the route file's fault, so the stack trace is logged as well.
+            error = e.toString();
+            log.warn("Route \"{}\" failed.", routeFile.getName(), e);
+        }
+
+        return new RouteResult(routeFile, reader.getCommandCount(), submarine, error);
+    }
+
+
+    /**
+     * Outcome of one route.
+     *
+     * @param routeFile    Command file of the route.
+     * @param commandCount Number of commands applied. The commands of a batch that failed to apply are not counted.
+     * @param submarine    Submarine that ran the route, with its final location and map.
+     * @param error        Why the route stopped early, or null if it ran to completion.
+     */
+    public record RouteResult(File routeFile, long commandCount, Submarine submarine, String error)
+    {
+        public boolean isSuccessful()
+        {
+            return error == null;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.val;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only ScannerDataStore over a scanner-data JSON file that only decodes the entries that are looked up.
+ * Opening the store memory-maps the file and makes one pass over its bytes, parsing each "(x,y)" key and recording
+ * where its cell array is; the cell arrays are only skipped over. get(...) decodes an entry's cells the first time
+ * it is looked up and caches the ScannerData for later lookups.
+ * The index is a LongKeyTable of packed keys with parallel cell array spans and cached ScannerData, about 20 bytes per
+ * slot whatever the route, and only the entries that have been looked up cost a ScannerData on top of that. The file
+ * itself is paged in by the OS rather than held on the heap. Files must be smaller than 2 GiB; convert larger ones
+ * to a BinaryScannerDataFile.
+ * The JSON structure and keys are checked when the store is opened, but each cell array is only checked when it is
+ * decoded, so a malformed one makes get(...) throw IllegalArgumentException.
+ * Lookups only race to cache the same immutable ScannerData, so an open store can be shared between threads.
+ * The mapping belongs to the store's own Arena, which close() closes, as MappedScannerDataStore's does.
+ */
+public class LazyJsonScannerDataStore implements ScannerDataStore
+{
+    private static final int CELL_COUNT = ScannerData.ARRAY_ROW_MAX_SIZE * ScannerData.ARRAY_COL_MAX_SIZE;
+    // Longest key, in chars, that can still be a valid "(x,y)" key once surrounding whitespace is allowed for.
+    private static final int MAX_KEY_LENGTH = 64;
+
+    // Bytes of the file parsed at a time while indexing, and the longest entry (key and cell array) allowed.
+    private static final int WINDOW_SIZE = 1 << 20;
+    private static final int MAX_ENTRY_SIZE = 1 << 16;
+
+    private final Arena arena;
+    private final MemorySegment json;
+
+    private final SpanIndex index = new SpanIndex();
+
+    private LazyJsonScannerDataStore(Arena arena, MemorySegment json)
+    {
+        this.arena = arena;
+        this.json = json;
+        buildIndex();
+    }
+
+
+    /**
+     * Memory-maps a scanner-data JSON file and indexes its entries.
+     *
+     * @param jsonFile Scanner-data JSON file.
+     *
+     * @return Store backed by the mapped file, which must be closed to unmap it.
+     * @throws IOException              Thrown if the file cannot be read.
+     * @throws IllegalArgumentException Thrown if the file is not in the scanner-data format, or is 2 GiB or larger.
+     */
+    public static LazyJsonScannerDataStore open(@NonNull File jsonFile)
+            throws IOException, IllegalArgumentException
+    {
+        val arena = Arena.ofShared();
+        try (val channel = FileChannel.open(jsonFile.toPath(), StandardOpenOption.READ))
+        {
+            if (channel.size() >= Integer.MAX_VALUE)
+                throw new IllegalArgumentException("\"%s\" is too large to load lazily; convert it to a binary scanner-data file instead".formatted(jsonFile.getAbsolutePath()));
+
+            // The mapping stays valid after the channel is closed, until the arena is.
+            return new LazyJsonScannerDataStore(arena, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            arena.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * @throws IllegalArgumentException Thrown if the entry's cell array, decoded for the first time, is not a valid grid.
+     */
+    @Override
+    public ScannerData get(int horizontalPos, int depthPos)
+    {
+        val slot = index.slotOf(LongOpenHashMap.packKey(horizontalPos, depthPos));
+        if (slot < 0)
+            return null;
+
+        var scannerData = index.decoded[slot];
+        if (scannerData == null)
+        {
+            val span = index.spans[slot];
+            scannerData = decodeCells((int) (span >>> 32), (int) span);
+            index.decoded[slot] = scannerData;
+        }
+        return scannerData;
+    }
+
+    /**
+     * Decodes the entry ahead of its lookup.
+     */
+    @Override
+    public void prefetch(int horizontalPos, int depthPos)
+    {
+        try
+        {
+            get(horizontalPos, depthPos);
+        }
+        catch (IllegalArgumentException | IllegalStateException e)
+        {
+            // Left for the lookup to report.
+        }
+    }
+
+    @Override
+    public long size()
+    {
+        return index.size();
+    }
+
+    /**
+     * Unmaps the file. Entries already decoded are still found, but decoding any other throws IllegalStateException,
+     * so only close a store once it is no longer used.
+     */
+    @Override
+    public void close()
+    {
+        if (arena.scope().isAlive())
+            arena.close();
+    }
+
+    /**
+     * @return Number of entries decoded so far. Counts the whole index, so it is meant for reporting rather than for
+     * every lookup.
+     */
+    public long getDecodedCount()
+    {
+        long decodedCount = 0;
+        for (val scannerData : index.decoded)
+        {
+            if (scannerData != null)
+                ++decodedCount;
+        }
+        return decodedCount;
+    }
+
+
+    /**
+     * Parses the file a window at a time, copied out of the mapping: a heap array is much cheaper to read byte by
+     * byte than the mapping itself. The window slides on whenever less than MAX_ENTRY_SIZE bytes of it are left.
+     */
+    private void buildIndex()
+    {
+        val fileSize = (int) json.byteSize();
+        val window = new JsonBytes(new byte[Math.min(WINDOW_SIZE, fileSize)]);
+        window.load(json, 0, window.bytes.length, fileSize);
+        val keyChars = new char[MAX_KEY_LENGTH];
+
+        int pos = window.skipWhitespace(window.expect(window.skipWhitespace(0), '{'));
+        if (pos < window.end && window.bytes[pos] == '}')
+        {
+            window.checkEnd(pos + 1);
+            return;
+        }
+
+        while (true)
+        {
+            if (window.end - pos < MAX_ENTRY_SIZE && window.base + window.end < fileSize)
+            {
+                val base = window.base + pos;
+                window.load(json, base, (int) Math.min(window.bytes.length, fileSize - base), fileSize);
+                pos = 0;
+            }
+
+            window.checkAt(pos, '"');
+            val keyEnd = window.stringEnd(pos);
+            val keyLength = window.readString(pos, keyEnd, keyChars, 0);
+            if (keyLength < 0)
+                throw window.invalidFormat(pos);
+            val key = ScannerDataJsonReader.parseKey(keyChars, 0, keyLength);
+
+            pos = window.skipWhitespace(window.expect(window.skipWhitespace(keyEnd), ':'));
+            window.checkAt(pos, '[');
+            val arrayEnd = window.skipArray(pos);
+            val slot = index.addSlot(key);
+            index.spans[slot] = (window.base + pos) << 32 | (arrayEnd - pos);
+            pos = window.skipWhitespace(arrayEnd);
+
+            if (pos < window.end && window.bytes[pos] == ',')
+            {
+                pos = window.skipWhitespace(pos + 1);
+                continue;
+            }
+            window.checkEnd(window.expect(pos, '}'));
+            return;
+        }
+    }
+
+    private ScannerData decodeCells(int offset, int length)
+    {
+        // The array's structure was checked by skipArray(...) when the store was opened.
+        val array = new JsonBytes(new byte[length]);
+        array.load(json, offset, length, (int) json.byteSize());
+
+        val cells = new char[CELL_COUNT];
+        int cellCount = 0;
+        int pos = array.skipWhitespace(1);
+        while (array.bytes[pos] == '"')
+        {
+            val end = array.stringEnd(pos);
+            val cellLength = array.readString(pos, end, cells, cellCount);
+            if (cellLength < 0)
+                throw new IllegalArgumentException("Invalid data length at offset %d".formatted(offset + pos));
+            cellCount += cellLength;
+
+            pos = array.skipWhitespace(end);
+            if (array.bytes[pos] == ',')
+                pos = array.skipWhitespace(pos + 1);
+        }
+
+        if (cellCount != CELL_COUNT)
+            throw new IllegalArgumentException("Invalid data length: %d at offset %d".formatted(cellCount, offset));
+        return new ScannerData(new String(cells));
+    }
+
+
+    /**
+     * Packed keys, with each entry's cell array span and its ScannerData, once decoded, in parallel arrays.
+     */
+    private static final class SpanIndex extends LongKeyTable
+    {
+        // Each entry's cell array, as its offset in the file (upper 32 bits) and its length (lower 32 bits).
+        private long[] spans;
+        private ScannerData[] decoded;
+
+        SpanIndex()
+        {
+            super(DEFAULT_CAPACITY);
+            spans = new long[slotCount()];
+            decoded = new ScannerData[slotCount()];
+        }
+
+        @Override
+        void moveValues(int[] newSlots)
+        {
+            // Only called while indexing, before anything is decoded.
+            val oldSpans = spans;
+            spans = new long[slotCount()];
+            decoded = new ScannerData[slotCount()];
+            for (int oldIdx = 0; oldIdx < oldSpans.length; ++oldIdx)
+            {
+                if (newSlots[oldIdx] >= 0)
+                    spans[newSlots[oldIdx]] = oldSpans[oldIdx];
+            }
+        }
+    }
+
+
+    /**
+     * A run of the file's bytes copied onto the heap, starting at offset 'base', with the JSON scanning helpers that
+     * parse it. Positions are relative to 'base'; running off the end of the bytes is a format error.
+     */
+    private static final class JsonBytes
+    {
+        private final byte[] bytes;
+        private long base;
+        private int end;
+        private boolean endOfFile;
+
+        JsonBytes(byte[] bytes)
+        {
+            this.bytes = bytes;
+        }
+
+        void load(MemorySegment json, long base, int length, int fileSize)
+        {
+            MemorySegment.copy(json, ValueLayout.JAVA_BYTE, base, bytes, 0, length);
+            this.base = base;
+            end = length;
+            endOfFile = base + length == fileSize;
+        }
+
+        /**
+         * Skips a cell array, checking only that it is an array of strings.
+         *
+         * @return Position just past the array's ']'.
+         */
+        int skipArray(int pos)
+        {
+            pos = skipWhitespace(pos + 1);
+            if (pos < end && bytes[pos] == ']')
+                return pos + 1;
+
+            while (true)
+            {
+                checkAt(pos, '"');
+                pos = skipWhitespace(stringEnd(pos));
+                if (pos < end && bytes[pos] == ',')
+                {
+                    pos = skipWhitespace(pos + 1);
+                    continue;
+                }
+                return expect(pos, ']');
+            }
+        }
+
+        /**
+         * @param pos Position of a string's opening '"'.
+         *
+         * @return Position just past the string's closing '"'.
+         */
+        int stringEnd(int pos)
+        {
+            for (int idx = pos + 1; idx < end; ++idx)
+            {
+                val b = bytes[idx];
+                if (b == '"')
+                    return idx + 1;
+                if (b == '\\')
+                    ++idx;
+                else if (b >= 0 && b < ' ')
+                    throw invalidFormat(idx);
+            }
+            throw invalidFormat(pos);
+        }
+
+        /**
+         * Decodes the string between 'pos' (its opening '"') and 'stringEnd' (just past its closing '"') into 'dest'
+         * from 'destOffset'.
+         *
+         * @return Number of chars decoded, or -1 if they don't fit in 'dest'.
+         */
+        int readString(int pos, int stringEnd, char[] dest, int destOffset)
+        {
+            val length = stringEnd - pos - 2;
+            boolean plainAscii = length <= dest.length - destOffset;
+            for (int idx = 0; plainAscii && idx < length; ++idx)
+            {
+                val b = bytes[pos + 1 + idx];
+                if (b < 0 || b == '\\')
+                    plainAscii = false;
+                else
+                    dest[destOffset + idx] = (char) b;
+            }
+            if (plainAscii)
+                return length;
+
+            // UTF-8 or escaped: rare in scanner data, so decode through a String.
+            return unescape(new String(bytes, pos + 1, length, StandardCharsets.UTF_8), dest, destOffset, pos);
+        }
+
+        private int unescape(String text, char[] dest, int destOffset, int pos)
+        {
+            int destIdx = destOffset;
+            for (int idx = 0; idx < text.length(); ++idx)
+            {
+                if (destIdx == dest.length)
+                    return -1;
+
+                var ch = text.charAt(idx);
+                if (ch == '\\')
+                {
+                    if (++idx == text.length())
+                        throw invalidFormat(pos);
+                    ch = switch (text.charAt(idx))
+                    {
+                        case '"', '\\', '/' -> text.charAt(idx);
+                        case 'b' -> '\b';
+                        case 'f' -> '\f';
+                        case 'n' -> '\n';
+                        case 'r' -> '\r';
+                        case 't' -> '\t';
+                        case 'u' ->
+                        {
+                            if (idx + 4 >= text.length())
+                                throw invalidFormat(pos);
+                            try
+                            {
+                                val codeUnit = (char) Integer.parseInt(text, idx + 1, idx + 5, 16);
+                                idx += 4;
+                                yield codeUnit;
+                            }
+                            catch (NumberFormatException e)
+                            {
+                                throw invalidFormat(pos);
+                            }
+                        }
+                        default -> throw invalidFormat(pos);
+                    };
+                }
+                dest[destIdx++] = ch;
+            }
+            return destIdx - destOffset;
+        }
+
+        int skipWhitespace(int pos)
+        {
+            while (pos < end)
+            {
+                val b = bytes[pos];
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r')
+                    break;
+                ++pos;
+            }
+            return pos;
+        }
+
+        void checkAt(int pos, char expected)
+        {
+            if (pos >= end || bytes[pos] != expected)
+                throw invalidFormat(pos);
+        }
+
+        /**
+         * @return Position just past 'expected'.
+         */
+        int expect(int pos, char expected)
+        {
+            checkAt(pos, expected);
+            return pos + 1;
+        }
+
+        void checkEnd(int pos)
+        {
+            if (!endOfFile || skipWhitespace(pos) != end)
+                throw invalidFormat(pos);
+        }
+
+        IllegalArgumentException invalidFormat(int pos)
+        {
+            if (pos >= end && !endOfFile)
+                return new IllegalArgumentException("Scanner data entry at offset %d is longer than %d bytes.".formatted(base, MAX_ENTRY_SIZE));
+            return new IllegalArgumentException("Scanner data must be a JSON object of \"(x,y)\" keys to cell arrays; invalid JSON at offset %d.".formatted(base + pos));
+        }
+    }
+}
@@ -25,6 +25,24 @@ public interface Location
      */
     boolean processCommand(@NonNull Command command);
 
+    /**
+     * Processes every command in 'batch' in order, with the same result as calling processCommand(...) for each.
+     *
+     * @param batch Commands to process.
+     */
+    void processBatch(@NonNull CommandBatch batch);
+
+    /**
+     * Processes every command in 'batch' in order, with the same result as calling processCommand(...) for each,
+     * and calls 'listener' after each command for which processCommand(...) would have returned true.
+     * The listener must use the location it is passed; the getters are only guaranteed to be current once
+     * processBatch(...) returns.
+     *
+     * @param batch    Commands to process.
+     * @param listener Called after each command that changed the location.
+     */
+    void processBatch(@NonNull CommandBatch batch, @NonNull LocationChangeListener listener);
+
 
     double getHorizontalLocation();
 
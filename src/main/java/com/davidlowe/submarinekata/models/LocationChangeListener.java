@@ -0,0 +1,14 @@
+package com.davidlowe.submarinekata.models;
+
+/**
+ * Called by Location.processBatch(...) after each command in the batch that changed the location.
+ */
+@FunctionalInterface
+public interface LocationChangeListener
+{
+    /**
+     * @param horizontalLocation Horizontal location after the command.
+     * @param depth              Depth after the command.
+     */
+    void locationChanged(double horizontalLocation, double depth);
+}
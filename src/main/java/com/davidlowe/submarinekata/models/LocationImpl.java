@@ -13,6 +13,8 @@ import java.text.DecimalFormat;
 @Component
 public class LocationImpl implements Location
 {
+    private static final LocationChangeListener IGNORE_CHANGES = (horizontalLocation, depth) -> { };
+
     private double horizontalLocation;
     private double depth;
     private double aim;
@@ -32,33 +34,73 @@ public class LocationImpl implements Location
     public boolean processCommand(@NonNull Command command)
     {
         log.info("Processing command {}", command);
-        val currHorizontalLocation = horizontalLocation;
-        val currDepth = depth;
-        val currAim = aim;
-        switch (command.direction())
-        {
-            case FORWARD -> executeForwardCommand(command.distance());
-            case UP -> executeUpCommand(command.distance());
-            case DOWN -> executeDownCommand(command.distance());
-        }
+        val updatedEvent = new PipelineEvents.LocationUpdated();
+        updatedEvent.begin();
+        val changed = step(command.direction(), command.distance());
+        commitUpdated(updatedEvent, 1);
         log.info("New location ({},{}, {})", horizontalLocation, depth, aim);
-        return currHorizontalLocation != horizontalLocation || currDepth != depth || currAim != aim;
+        return changed;
     }
 
-    private void executeForwardCommand(double distance)
+    @Override
+    public void processBatch(@NonNull CommandBatch batch)
     {
-        horizontalLocation += distance;
-        depth += aim * distance;
+        processBatch(batch, IGNORE_CHANGES);
+    }
+
+    @Override
+    public void processBatch(@NonNull CommandBatch batch, @NonNull LocationChangeListener listener)
+    {
+        val directions = batch.directions();
+        val distances = batch.distances();
+        val size = batch.size();
+        val updatedEvent = new PipelineEvents.LocationUpdated();
+        updatedEvent.begin();
+
+        for (int idx = 0; idx < size; ++idx)
+        {
+            if (step(Direction.fromOrdinal(directions[idx]), distances[idx]))
+                listener.locationChanged(horizontalLocation, depth);
+        }
+        commitUpdated(updatedEvent, size);
+        log.debug("Processed batch of {} commands. New location ({},{}, {})", size, horizontalLocation, depth, aim);
     }
 
-    private void executeUpCommand(double distance)
+    /**
+     * Applies one command, without logging it or recording an event: the arithmetic every command goes through,
+     * also used on their own LocationImpls by the loops that replay or fold many commands.
+     *
+     * @return True if the location changed, as processCommand(...) returns.
+     */
+    boolean step(@NonNull Direction direction, double distance)
     {
-        aim -= distance;
+        val prevHorizontalLocation = horizontalLocation;
+        val prevDepth = depth;
+        val prevAim = aim;
+        switch (direction)
+        {
+            case FORWARD ->
+            {
+                horizontalLocation += distance;
+                depth += aim * distance;
+            }
+            case UP -> aim -= distance;
+            case DOWN -> aim += distance;
+        }
+        return prevHorizontalLocation != horizontalLocation || prevDepth != depth || prevAim != aim;
     }
 
-    private void executeDownCommand(double distance)
+    private void commitUpdated(PipelineEvents.LocationUpdated updatedEvent, int commandCount)
     {
-        aim += distance;
+        updatedEvent.end();
+        if (updatedEvent.shouldCommit())
+        {
+            updatedEvent.commandCount = commandCount;
+            updatedEvent.horizontalLocation = horizontalLocation;
+            updatedEvent.depth = depth;
+            updatedEvent.aim = aim;
+            updatedEvent.commit();
+        }
     }
 
     /**
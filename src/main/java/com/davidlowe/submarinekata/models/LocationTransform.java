@@ -0,0 +1,69 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+
+/**
+ * The effect of a sequence of commands on a Location, independent of where the sequence starts.
+ * Every command is an affine update of (horizontal, depth, aim), so any sequence of commands is too:
+ * <pre>
+ *   horizontal' = horizontal + forward
+ *   depth'      = depth + this.depth + aim * forward
+ *   aim'        = aim + this.aim
+ * </pre>
+ * where 'forward' is the sum of the sequence's FORWARD distances and 'this.depth' is the depth change the
+ * sequence would cause starting from an aim of 0. Transforms compose associatively with andThen(...), which is
+ * what lets a command file be split into chunks that are summarized independently and then combined.
+ *
+ * @param forward Sum of the FORWARD distances, which is also the horizontal change.
+ * @param depth   Depth change when starting from an aim of 0.
+ * @param aim     Aim change.
+ */
+public record LocationTransform(double forward, double depth, double aim)
+{
+    public static final LocationTransform IDENTITY = new LocationTransform(0.0, 0.0, 0.0);
+
+    /**
+     * @return The transform of a single command.
+     */
+    public static LocationTransform of(@NonNull Direction direction, double distance)
+    {
+        return switch (direction)
+        {
+            case FORWARD -> new LocationTransform(distance, 0.0, 0.0);
+            case UP -> new LocationTransform(0.0, 0.0, -distance);
+            case DOWN -> new LocationTransform(0.0, 0.0, distance);
+        };
+    }
+
+    /**
+     * @return The transform of the commands that took a location from (0, 0, 0) to 'location'.
+     */
+    public static LocationTransform fromOrigin(@NonNull Location location)
+    {
+        return new LocationTransform(location.getHorizontalLocation(), location.getDepth(), location.getAim());
+    }
+
+    /**
+     * @return The transform of this transform's commands followed by 'next''s commands.
+     */
+    public LocationTransform andThen(@NonNull LocationTransform next)
+    {
+        return new LocationTransform(forward + next.forward, depth + next.depth + aim * next.forward, aim + next.aim);
+    }
+
+
+    public double applyToHorizontal(double horizontalLocation)
+    {
+        return horizontalLocation + forward;
+    }
+
+    public double applyToDepth(double depth, double aim)
+    {
+        return depth + this.depth + aim * forward;
+    }
+
+    public double applyToAim(double aim)
+    {
+        return aim + this.aim;
+    }
+}
@@ -0,0 +1,194 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing (linear probing) table of distinct primitive long keys, shared by the hash tables keyed by packed
+ * positions: LongOpenHashMap, LongOpenHashSet and the scanner data stores.
+ * The table only holds the keys. Each subclass keeps its values in parallel arrays of slotCount() elements, indexed
+ * by the slot slotOf(...) or addSlot(...) returns, and moves them in moveValues(...) when the table grows.
+ * A 0 key marks an empty slot, so the key 0 (the packed position (0,0)) lives in one extra slot after the probed ones.
+ * This class is not thread-safe while it is being written.
+ */
+abstract class LongKeyTable
+{
+    static final int DEFAULT_CAPACITY = 16;
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private boolean containsZero;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * @param expectedSize Number of keys the table should hold without growing.
+     */
+    LongKeyTable(int expectedSize)
+    {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+
+    /**
+     * @return Length of each value array: one element per probed slot, plus the key 0's slot.
+     */
+    final int slotCount()
+    {
+        return keys.length + 1;
+    }
+
+    /**
+     * @return The slot holding 'key', or -1 if it is not in the table.
+     */
+    final int slotOf(long key)
+    {
+        if (key == 0)
+            return containsZero ? keys.length : -1;
+
+        int idx = slotFor(key);
+        long existing;
+        while ((existing = keys[idx]) != 0)
+        {
+            if (existing == key)
+                return idx;
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the slot holding 'key', adding the key if it is not in the table yet; size() tells which happened.
+     * Adding a key can grow the table, which moves every slot and reallocates the value arrays, so slots and value
+     * arrays read before this call are stale: 'values[addSlot(key)] = value' writes to the old array.
+     */
+    final int addSlot(long key)
+    {
+        if (key == 0)
+        {
+            if (!containsZero)
+            {
+                containsZero = true;
+                ++size;
+            }
+            return keys.length;
+        }
+
+        int idx = slotFor(key);
+        long existing;
+        while ((existing = keys[idx]) != 0)
+        {
+            if (existing == key)
+                return idx;
+            idx = (idx + 1) & mask;
+        }
+
+        if (size >= resizeThreshold)
+        {
+            grow();
+            idx = freeSlotFor(key);
+        }
+        keys[idx] = key;
+        ++size;
+        return idx;
+    }
+
+    /**
+     * Empties the table, keeping its capacity. Subclasses clear their own value arrays.
+     */
+    void clearKeys()
+    {
+        Arrays.fill(keys, 0);
+        containsZero = false;
+        size = 0;
+    }
+
+    /**
+     * Called once the table has grown, to reallocate each value array with slotCount() elements and move its
+     * values: the value in old slot 'idx' goes to slot newSlots[idx], or nowhere if that is -1 (an empty slot).
+     */
+    abstract void moveValues(int[] newSlots);
+
+
+    /**
+     * Murmur3 64-bit finalizer; packed coordinates are highly regular, so the bits need mixing
+     * before masking or neighbouring positions would all land in the same run of slots.
+     */
+    static long mix(long key)
+    {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+
+    private int slotFor(long key)
+    {
+        return (int) mix(key) & mask;
+    }
+
+    private int freeSlotFor(long key)
+    {
+        int idx = slotFor(key);
+        while (keys[idx] != 0)
+            idx = (idx + 1) & mask;
+        return idx;
+    }
+
+    private void grow()
+    {
+        val oldKeys = keys;
+        if (oldKeys.length == MAX_CAPACITY)
+            throw new IllegalStateException("%s cannot grow beyond %d slots".formatted(getClass().getSimpleName(), MAX_CAPACITY));
+        allocate(oldKeys.length * 2);
+
+        val newSlots = new int[oldKeys.length + 1];
+        for (int oldIdx = 0; oldIdx < oldKeys.length; ++oldIdx)
+        {
+            val key = oldKeys[oldIdx];
+            if (key == 0)
+            {
+                newSlots[oldIdx] = -1;
+                continue;
+            }
+
+            val idx = freeSlotFor(key);
+            keys[idx] = key;
+            newSlots[oldIdx] = idx;
+        }
+        newSlots[oldKeys.length] = containsZero ? keys.length : -1;
+        moveValues(newSlots);
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * MAX_LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize)
+    {
+        val minCapacity = (long) Math.ceil(Math.max(expectedSize, DEFAULT_CAPACITY) / (double) MAX_LOAD_FACTOR);
+        if (minCapacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Expected size too large: %d".formatted(expectedSize));
+        return Integer.highestOneBit((int) minCapacity - 1) << 1;
+    }
+}
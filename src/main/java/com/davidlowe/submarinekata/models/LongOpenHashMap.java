@@ -0,0 +1,105 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.val;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing (linear probing) hash map from primitive long keys to non-null values.
+ * Keys are stored by LongKeyTable and values in a parallel Object[], so neither lookups nor updates
+ * of existing keys allocate. A null value marks a slot whose key has no value yet, which is why null
+ * values are not allowed.
+ * (x,y) coordinates are stored by packing them into a single long with packKey(int, int).
+ * This class is not thread-safe.
+ *
+ * @param <V> Value type.
+ */
+public class LongOpenHashMap<V> extends LongKeyTable
+{
+    private Object[] values;
+
+    public LongOpenHashMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize Number of entries the map should hold without resizing.
+     */
+    public LongOpenHashMap(int expectedSize)
+    {
+        super(expectedSize);
+        values = new Object[slotCount()];
+    }
+
+
+    /**
+     * Packs an (x,y) coordinate into a single long key: x in the upper 32 bits, y in the lower 32 bits.
+     */
+    public static long packKey(int x, int y)
+    {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int unpackX(long key)
+    {
+        return (int) (key >> 32);
+    }
+
+    public static int unpackY(long key)
+    {
+        return (int) key;
+    }
+
+
+    public V get(int x, int y)
+    {
+        return get(packKey(x, y));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        val slot = slotOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+
+    public V put(int x, int y, @NonNull V value)
+    {
+        return put(packKey(x, y), value);
+    }
+
+    /**
+     * @return The value previously associated with 'key', or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, @NonNull V value)
+    {
+        val slot = addSlot(key);
+        val existing = values[slot];
+        values[slot] = value;
+        return (V) existing;
+    }
+
+
+    public void clear()
+    {
+        clearKeys();
+        Arrays.fill(values, null);
+    }
+
+
+    @Override
+    void moveValues(int[] newSlots)
+    {
+        val oldValues = values;
+        values = new Object[slotCount()];
+        for (int oldIdx = 0; oldIdx < oldValues.length; ++oldIdx)
+        {
+            if (newSlots[oldIdx] >= 0)
+                values[newSlots[oldIdx]] = oldValues[oldIdx];
+        }
+    }
+}
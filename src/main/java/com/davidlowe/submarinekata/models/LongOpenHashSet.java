@@ -0,0 +1,39 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+
+/**
+ * Open-addressing (linear probing) hash set of primitive longs, the set counterpart of LongOpenHashMap: a
+ * LongKeyTable with no values. Neither adding nor looking up a key allocates.
+ * This class is not thread-safe while it is being written.
+ */
+public class LongOpenHashSet extends LongKeyTable
+{
+    public LongOpenHashSet()
+    {
+        super(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * @return True if 'key' was not already in the set.
+     */
+    public boolean add(long key)
+    {
+        val sizeBefore = size();
+        addSlot(key);
+        return size() != sizeBefore;
+    }
+
+    public boolean contains(long key)
+    {
+        return slotOf(key) >= 0;
+    }
+
+
+    @Override
+    void moveValues(int[] newSlots)
+    {
+        // Only keys.
+    }
+}
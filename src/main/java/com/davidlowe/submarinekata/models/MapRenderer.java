@@ -0,0 +1,292 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Writes a SonarDb's map as text, one line per depth, the same as printing every row of getDepthIterator(), or just
+ * a rectangular viewport of it.
+ * renderParallel(...) renders the rows of a large map on a ForkJoinPool instead.
+ * Rows are rendered straight out of the map's tiles into one reusable buffer, which is written to the output
+ * channel whenever it fills up, so rendering allocates nothing per row and makes one write per buffer rather than
+ * per line. Rows wider than the buffer are rendered in pieces.
+ * Each cell is written as one ISO-8859-1 byte; a cell that is not an ISO-8859-1 character is written as '?' (see
+ * SonarDb.hasWideCells()).
+ * Not thread-safe: use one MapRenderer per thread.
+ */
+@Slf4j
+public final class MapRenderer
+{
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Largest array renderParallel(...) renders into at once; larger maps are rendered and written a region at a time.
+     */
+    static final int MAX_PARALLEL_REGION_SIZE = 1 << 28;
+    // Bytes of rows rendered by one fork-join task.
+    private static final int PARALLEL_TASK_SIZE = 1 << 18;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final SonarDb sonarDb;
+    private final byte[] buffer;
+    private final ByteBuffer byteBuffer;
+    private int bufferUsed;
+
+    public MapRenderer(@NonNull SonarDb sonarDb)
+    {
+        this(sonarDb, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize Size in bytes of the buffer rows are rendered into. Must be at least as long as a line separator.
+     */
+    public MapRenderer(@NonNull SonarDb sonarDb, int bufferSize)
+    {
+        if (bufferSize < LINE_SEPARATOR.length)
+            throw new IllegalArgumentException("Invalid buffer size %d".formatted(bufferSize));
+
+        this.sonarDb = sonarDb;
+        buffer = new byte[bufferSize];
+        byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+
+    /**
+     * Writes the whole map to 'out'.
+     *
+     * @return Number of rows written.
+     * @throws IOException Thrown if writing to 'out' fails.
+     */
+    public long render(@NonNull WritableByteChannel out)
+            throws IOException
+    {
+        return render(out, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Writes the map's rows from 'fromDepth' to 'toDepth' (both inclusive) to 'out'. Only rows within the map's
+     * depth bounds are written, each the full width of the map.
+     *
+     * @return Number of rows written.
+     * @throws IOException Thrown if writing to 'out' fails.
+     */
+    public long render(@NonNull WritableByteChannel out, int fromDepth, int toDepth)
+            throws IOException
+    {
+        val minDepth = sonarDb.getMinDepth();
+        if (minDepth == null)
+            return 0;
+
+        // Bounds are read once, so every row has the same width even if the map is still being written.
+        val minHorizontal = sonarDb.getMinHorizontalLocation();
+        val width = (long) sonarDb.getMaxHorizontalLocation() - minHorizontal + 1;
+        return renderArea(out, minHorizontal, width, Math.max(fromDepth, minDepth), Math.min(toDepth, sonarDb.getMaxDepth()));
+    }
+
+    /**
+     * Writes the rectangle from (xMin, yMin) to (xMax, yMax), all inclusive, to 'out', one line per depth, whether or
+     * not it lies within the map's bounds. As with SonarDb.render(...), the cost is proportional to the rectangle's
+     * area rather than to the size of the map.
+     *
+     * @return Number of rows written.
+     * @throws IOException              Thrown if writing to 'out' fails.
+     * @throws IllegalArgumentException Thrown if the rectangle is empty.
+     */
+    public long render(@NonNull WritableByteChannel out, int xMin, int yMin, int xMax, int yMax)
+            throws IOException
+    {
+        SonarDb.checkViewport(xMin, yMin, xMax, yMax);
+        return renderArea(out, xMin, (long) xMax - xMin + 1, yMin, yMax);
+    }
+
+    /**
+     * Writes the map's rows from 'fromDepth' to 'toDepth' (both inclusive) to 'mapFile', replacing anything it held.
+     *
+     * @return Number of rows written.
+     * @throws IOException Thrown if 'mapFile' cannot be written.
+     */
+    public long render(@NonNull Path mapFile, int fromDepth, int toDepth)
+            throws IOException
+    {
+        try (val channel = openMapFile(mapFile))
+        {
+            return render(channel, fromDepth, toDepth);
+        }
+    }
+
+    /**
+     * Writes the rectangle to 'mapFile', replacing anything it held; see render(WritableByteChannel, int, int, int, int).
+     */
+    public long render(@NonNull Path mapFile, int xMin, int yMin, int xMax, int yMax)
+            throws IOException
+    {
+        try (val channel = openMapFile(mapFile))
+        {
+            return render(channel, xMin, yMin, xMax, yMax);
+        }
+    }
+
+
+    /**
+     * Writes the map's rows from 'fromDepth' to 'toDepth' (both inclusive) to 'out', the same as
+     * render(out, fromDepth, toDepth), rendering rows in parallel on 'pool'.
+     * The whole map (or, beyond MAX_PARALLEL_REGION_SIZE bytes, each region of whole rows) is rendered into one
+     * array sized to hold it exactly, each task filling its own slice of rows, and then written with a single write.
+     * The map must not be written to while it is being rendered, unless it is a ConcurrentSonarDb.
+     *
+     * @return Number of rows written.
+     * @throws IOException Thrown if writing to 'out' fails.
+     */
+    public long renderParallel(@NonNull WritableByteChannel out, @NonNull ForkJoinPool pool, int fromDepth, int toDepth)
+            throws IOException
+    {
+        val minDepth = sonarDb.getMinDepth();
+        if (minDepth == null)
+            return 0;
+
+        val minHorizontal = sonarDb.getMinHorizontalLocation();
+        val width = (long) sonarDb.getMaxHorizontalLocation() - minHorizontal + 1;
+        val firstRow = Math.max(fromDepth, minDepth);
+        val lastRow = Math.min(toDepth, sonarDb.getMaxDepth());
+        val lineLength = width + LINE_SEPARATOR.length;
+        if (lineLength > MAX_PARALLEL_REGION_SIZE)
+            return renderArea(out, minHorizontal, width, firstRow, lastRow);
+
+        val rowsPerRegion = MAX_PARALLEL_REGION_SIZE / lineLength;
+        long rows = 0;
+        // long, so a range ending at Integer.MAX_VALUE terminates.
+        for (long regionStart = firstRow; regionStart <= lastRow; regionStart += rowsPerRegion)
+        {
+            val regionRows = (int) Math.min(rowsPerRegion, lastRow - regionStart + 1);
+            val region = new byte[(int) (regionRows * lineLength)];
+            pool.invoke(new RenderRowsTask(sonarDb, minHorizontal, (int) width, (int) regionStart, 0, regionRows, region));
+
+            val regionBuffer = ByteBuffer.wrap(region);
+            while (regionBuffer.hasRemaining())
+                out.write(regionBuffer);
+            rows += regionRows;
+        }
+
+        log.debug("Rendered {} map rows in parallel.", rows);
+        return rows;
+    }
+
+    /**
+     * Writes the map's rows from 'fromDepth' to 'toDepth' (both inclusive) to 'mapFile', replacing anything it held,
+     * rendering rows in parallel on 'pool'; see renderParallel(WritableByteChannel, ForkJoinPool, int, int).
+     */
+    public long renderParallel(@NonNull Path mapFile, @NonNull ForkJoinPool pool, int fromDepth, int toDepth)
+            throws IOException
+    {
+        try (val channel = openMapFile(mapFile))
+        {
+            return renderParallel(channel, pool, fromDepth, toDepth);
+        }
+    }
+
+
+    private long renderArea(WritableByteChannel out, int fromHorizontal, long width, int firstRow, int lastRow)
+            throws IOException
+    {
+        long rows = 0;
+        bufferUsed = 0;
+        // long, so a range ending at Integer.MAX_VALUE terminates.
+        for (long depth = firstRow; depth <= lastRow; ++depth, ++rows)
+        {
+            for (long rendered = 0; rendered < width; )
+            {
+                if (bufferUsed == buffer.length)
+                    flush(out);
+                val length = (int) Math.min(buffer.length - bufferUsed, width - rendered);
+                sonarDb.renderRow((int) depth, (int) (fromHorizontal + rendered), buffer, bufferUsed, length);
+                bufferUsed += length;
+                rendered += length;
+            }
+
+            if (buffer.length - bufferUsed < LINE_SEPARATOR.length)
+                flush(out);
+            System.arraycopy(LINE_SEPARATOR, 0, buffer, bufferUsed, LINE_SEPARATOR.length);
+            bufferUsed += LINE_SEPARATOR.length;
+        }
+        flush(out);
+
+        log.debug("Rendered {} map rows.", rows);
+        return rows;
+    }
+
+    private static FileChannel openMapFile(Path mapFile)
+            throws IOException
+    {
+        return FileChannel.open(mapFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private void flush(WritableByteChannel out)
+            throws IOException
+    {
+        byteBuffer.clear().limit(bufferUsed);
+        while (byteBuffer.hasRemaining())
+            out.write(byteBuffer);
+        bufferUsed = 0;
+    }
+
+
+    /**
+     * Renders rows [firstRow, firstRow + rowCount) of the region starting at depth 'regionFirstDepth' into their slice
+     * of 'region', splitting the rows in half until each task renders about PARALLEL_TASK_SIZE bytes.
+     * ForkJoinTask is Serializable, but these tasks are only ever run, never serialized.
+     */
+    @SuppressWarnings("serial")
+    private static final class RenderRowsTask extends RecursiveAction
+    {
+        private final SonarDb sonarDb;
+        private final int fromHorizontal;
+        private final int width;
+        private final int regionFirstDepth;
+        private final int firstRow;
+        private final int rowCount;
+        private final byte[] region;
+
+        RenderRowsTask(SonarDb sonarDb, int fromHorizontal, int width, int regionFirstDepth, int firstRow, int rowCount, byte[] region)
+        {
+            this.sonarDb = sonarDb;
+            this.fromHorizontal = fromHorizontal;
+            this.width = width;
+            this.regionFirstDepth = regionFirstDepth;
+            this.firstRow = firstRow;
+            this.rowCount = rowCount;
+            this.region = region;
+        }
+
+        @Override
+        protected void compute()
+        {
+            val lineLength = width + LINE_SEPARATOR.length;
+            if (rowCount > 1 && (long) rowCount * lineLength > PARALLEL_TASK_SIZE)
+            {
+                val half = rowCount / 2;
+                invokeAll(new RenderRowsTask(sonarDb, fromHorizontal, width, regionFirstDepth, firstRow, half, region),
+                          new RenderRowsTask(sonarDb, fromHorizontal, width, regionFirstDepth, firstRow + half, rowCount - half, region));
+                return;
+            }
+
+            for (int row = firstRow; row < firstRow + rowCount; ++row)
+            {
+                val offset = row * lineLength;
+                sonarDb.renderRow(regionFirstDepth + row, fromHorizontal, region, offset, width);
+                System.arraycopy(LINE_SEPARATOR, 0, region, offset + width, LINE_SEPARATOR.length);
+            }
+        }
+    }
+}
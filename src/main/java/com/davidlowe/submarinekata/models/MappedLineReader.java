@@ -0,0 +1,268 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.val;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Line reader over a memory-mapped file.
+ * The file is mapped in consecutive windows of up to windowSize bytes, so files of any size (including ones larger
+ * than the 2GB a single MappedByteBuffer can address) are read by remapping as the reader advances. Mapped bytes are
+ * bulk-copied into a small reused buffer, which is far cheaper than a bounds- and liveness-checked
+ * MappedByteBuffer.get(int) per character, and also stitches together lines that cross a window boundary.
+ * Lines are returned as a reusable CharSequence over that buffer, so reading a line neither decodes it nor allocates.
+ * Each byte is one character (ISO-8859-1), which is exact for the ASCII command files this reader is meant for.
+ * Lines end at "\n", "\r\n" or a lone "\r", as with BufferedReader.readLine().
+ * This class is not thread-safe.
+ */
+public final class MappedLineReader implements Closeable
+{
+    static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+    private static final int MAX_BUFFER_SIZE = 64 << 10;
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final long start;
+    private final long end;
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowPosition = 0;
+
+    // Bytes copied out of the window; [position, length) has not been returned yet.
+    private final byte[] buffer;
+    private int length = 0;
+    private int position = 0;
+    // Set when the previous line ended with a '\r' as the last buffered byte, so a '\n' at the start of the next
+    // buffer load still belongs to that line's terminator.
+    private boolean skipLineFeed = false;
+
+    private final LineSlice slice;
+
+    public MappedLineReader(@NonNull File file)
+            throws IOException
+    {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize Number of bytes mapped at a time. Lines must be shorter than the smaller of this and 64KB.
+     */
+    MappedLineReader(@NonNull File file, int windowSize)
+            throws IOException
+    {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.READ), true, 0, -1, windowSize);
+    }
+
+    /**
+     * Reads the lines in bytes [start, end) of an open channel, which is left open by close().
+     * 'start' must be the first byte of a line; a line that does not end before 'end' is returned up to 'end'.
+     * Several readers can share one channel, each reading its own range.
+     */
+    MappedLineReader(@NonNull FileChannel channel, long start, long end)
+            throws IOException
+    {
+        this(channel, false, start, end, DEFAULT_WINDOW_SIZE);
+    }
+
+    private MappedLineReader(FileChannel channel, boolean ownsChannel, long start, long end, int windowSize)
+            throws IOException
+    {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.start = start;
+        this.end = end < 0 ? channel.size() : end;
+        this.windowSize = windowSize;
+        this.buffer = new byte[Math.min(windowSize, MAX_BUFFER_SIZE)];
+        this.slice = new LineSlice(buffer);
+        this.windowStart = start;
+
+        if (windowSize < 2 || start < 0 || this.end < start || this.end > channel.size())
+        {
+            if (ownsChannel)
+                channel.close();
+            throw new IllegalArgumentException("Invalid window size %d or range [%d, %d)".formatted(windowSize, start, end));
+        }
+    }
+
+
+    /**
+     * Reads the next line without creating a String.
+     *
+     * @return The next line, without its line terminator, or null at end of file. The returned CharSequence
+     * is only valid until the next call to readLineSlice(), readLine() or close(); call toString() on it to keep it.
+     * @throws IOException Thrown if the file cannot be mapped, or a line is too long (see the constructor).
+     */
+    public CharSequence readLineSlice()
+            throws IOException
+    {
+        if (skipLineFeed)
+        {
+            skipLineFeed = false;
+            if (position == length)
+                fill();
+            if (position < length && buffer[position] == '\n')
+                ++position;
+        }
+
+        while (true)
+        {
+            int idx = position;
+            while (idx < length && buffer[idx] != '\n' && buffer[idx] != '\r')
+                ++idx;
+
+            if (idx == length && mappedBytesRemaining())
+            {
+                // The line continues past the buffered bytes.
+                fill();
+                continue;
+            }
+            if (position == length)
+                return null;
+
+            slice.set(position, idx - position);
+            if (idx == length)
+            {
+                position = idx;
+            }
+            else if (buffer[idx] == '\r')
+            {
+                if (idx + 1 < length)
+                    position = buffer[idx + 1] == '\n' ? idx + 2 : idx + 1;
+                else
+                {
+                    position = idx + 1;
+                    skipLineFeed = true;
+                }
+            }
+            else
+            {
+                position = idx + 1;
+            }
+            return slice;
+        }
+    }
+
+    /**
+     * @return The next line, without its line terminator, or null at end of file.
+     * @throws IOException Thrown if the file cannot be mapped, or a line is too long (see the constructor).
+     */
+    public String readLine()
+            throws IOException
+    {
+        val line = readLineSlice();
+        return line == null ? null : line.toString();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        // The mapping itself is released once the window buffer is garbage collected.
+        window = null;
+        if (ownsChannel)
+            channel.close();
+    }
+
+
+    private boolean mappedBytesRemaining()
+    {
+        return windowStart + windowPosition < end;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer and fills the rest from the mapped file,
+     * mapping the next window when the current one is used up.
+     */
+    private void fill()
+            throws IOException
+    {
+        if (position > 0)
+        {
+            System.arraycopy(buffer, position, buffer, 0, length - position);
+            length -= position;
+            position = 0;
+        }
+        else if (length == buffer.length)
+        {
+            val msg = "Line at offset %d is not shorter than %d bytes".formatted(windowStart + windowPosition - length, buffer.length);
+            throw new IOException(msg);
+        }
+
+        while (length < buffer.length && mappedBytesRemaining())
+        {
+            if (window == null || windowPosition == window.limit())
+                remap(window == null ? start : windowStart + window.limit());
+
+            val count = Math.min(buffer.length - length, window.limit() - windowPosition);
+            window.get(windowPosition, buffer, length, count);
+            windowPosition += count;
+            length += count;
+        }
+    }
+
+    private void remap(long from)
+            throws IOException
+    {
+        val size = (int) Math.min(windowSize, end - from);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, from, size);
+        windowStart = from;
+        windowPosition = 0;
+    }
+
+
+    /**
+     * Reusable CharSequence over a range of the reader's buffer.
+     */
+    private static final class LineSlice implements CharSequence
+    {
+        private final byte[] bytes;
+        private int offset;
+        private int length;
+
+        LineSlice(byte[] bytes)
+        {
+            this.bytes = bytes;
+        }
+
+        void set(int offset, int length)
+        {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length()
+        {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException(index);
+            return (char) (bytes[offset + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end)
+        {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString()
+        {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
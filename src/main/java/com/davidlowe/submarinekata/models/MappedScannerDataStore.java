@@ -0,0 +1,176 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.val;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only ScannerDataStore over a BinaryScannerDataFile.
+ * The key index and the cell data are memory-mapped rather than read, so opening a store costs the same
+ * no matter how large the file is, and lookups binary-search the sorted keys in place. Only the
+ * ScannerData returned for a hit is created on the heap: ASCII cells are packed straight from the mapping.
+ * The mapping belongs to the store's own Arena, so close() unmaps the file at once instead of leaving that to the
+ * garbage collector; a lookup racing with close() throws IllegalStateException rather than reading unmapped memory.
+ */
+public class MappedScannerDataStore implements ScannerDataStore
+{
+    // BinaryScannerDataFile writes through a ByteBuffer, which is big-endian.
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final Arena arena;
+    private final MemorySegment keys;
+    private final MemorySegment cells;
+    private final int entryCount;
+
+    private MappedScannerDataStore(Arena arena, MemorySegment keys, MemorySegment cells, int entryCount)
+    {
+        this.arena = arena;
+        this.keys = keys;
+        this.cells = cells;
+        this.entryCount = entryCount;
+    }
+
+
+    /**
+     * Memory-maps a binary scanner-data file.
+     *
+     * @param binaryFile File written by BinaryScannerDataFile.convert(...).
+     *
+     * @return Store backed by the mapped file, which must be closed to unmap it.
+     * @throws IOException              Thrown if the file cannot be read.
+     * @throws IllegalArgumentException Thrown if the file is not a binary scanner-data file this version can read.
+     */
+    public static MappedScannerDataStore open(@NonNull File binaryFile)
+            throws IOException, IllegalArgumentException
+    {
+        val arena = Arena.ofShared();
+        try (val channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ))
+        {
+            if (channel.size() < BinaryScannerDataFile.HEADER_SIZE)
+                throw new IllegalArgumentException("\"%s\" is not a binary scanner-data file".formatted(binaryFile.getAbsolutePath()));
+
+            // The mapping stays valid after the channel is closed, until the arena is.
+            val file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            if (file.get(INT, 0) != BinaryScannerDataFile.MAGIC)
+                throw new IllegalArgumentException("\"%s\" is not a binary scanner-data file".formatted(binaryFile.getAbsolutePath()));
+
+            val version = file.get(INT, Integer.BYTES);
+            if (version != BinaryScannerDataFile.VERSION)
+                throw new IllegalArgumentException("Unsupported binary scanner-data version %d".formatted(version));
+
+            val entryCount = file.get(LONG, 2 * Integer.BYTES);
+            val keysSize = entryCount * Long.BYTES;
+            val cellsSize = entryCount * BinaryScannerDataFile.CELL_COUNT;
+            if (entryCount < 0 || cellsSize > Integer.MAX_VALUE
+                    || file.byteSize() != BinaryScannerDataFile.HEADER_SIZE + keysSize + cellsSize)
+                throw new IllegalArgumentException("Corrupt binary scanner-data file \"%s\"".formatted(binaryFile.getAbsolutePath()));
+
+            val keys = file.asSlice(BinaryScannerDataFile.HEADER_SIZE, keysSize);
+            val cells = file.asSlice(BinaryScannerDataFile.HEADER_SIZE + keysSize, cellsSize);
+            return new MappedScannerDataStore(arena, keys, cells, (int) entryCount);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            arena.close();
+            throw e;
+        }
+    }
+
+
+    @Override
+    public ScannerData get(int horizontalPos, int depthPos)
+    {
+        val entryIdx = indexOf(LongOpenHashMap.packKey(horizontalPos, depthPos));
+        if (entryIdx < 0)
+            return null;
+
+        // Each ASCII byte is its own code in ScannerSymbols.ASCII, so the cells are packed as they are read.
+        val offset = (long) entryIdx * BinaryScannerDataFile.CELL_COUNT;
+        long packedCells = 0;
+        for (int cellIdx = 0; cellIdx < BinaryScannerDataFile.CELL_COUNT; ++cellIdx)
+        {
+            val cell = cells.get(ValueLayout.JAVA_BYTE, offset + cellIdx);
+            if (cell < 0)
+                return decodeLatin1(offset);
+            packedCells |= (long) cell << (cellIdx * ScannerSymbols.CODE_BITS);
+        }
+        return new ScannerData(packedCells, ScannerSymbols.ASCII);
+    }
+
+    /**
+     * Touches the entry's cells, so the lookup does not have to fault their page (or the index pages leading to it) in.
+     * Does nothing once the store has been closed.
+     */
+    @Override
+    public void prefetch(int horizontalPos, int depthPos)
+    {
+        try
+        {
+            val entryIdx = indexOf(LongOpenHashMap.packKey(horizontalPos, depthPos));
+            if (entryIdx >= 0)
+                cells.get(ValueLayout.JAVA_BYTE, (long) entryIdx * BinaryScannerDataFile.CELL_COUNT);
+        }
+        catch (IllegalStateException e)
+        {
+            // The store has been closed.
+        }
+    }
+
+    @Override
+    public long size()
+    {
+        return entryCount;
+    }
+
+    /**
+     * Unmaps the file. Later lookups throw IllegalStateException, so only close a store once it is no longer used.
+     */
+    @Override
+    public void close()
+    {
+        if (arena.scope().isAlive())
+            arena.close();
+    }
+
+
+    /**
+     * @return The cells at 'offset', which include an ISO-8859-1 character beyond ASCII.
+     */
+    private ScannerData decodeLatin1(long offset)
+    {
+        val cellBytes = new byte[BinaryScannerDataFile.CELL_COUNT];
+        MemorySegment.copy(cells, ValueLayout.JAVA_BYTE, offset, cellBytes, 0, cellBytes.length);
+        return new ScannerData(new String(cellBytes, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * @return Index of 'key' in the sorted key index, or -1 if it is not present.
+     */
+    private int indexOf(long key)
+    {
+        int lo = 0;
+        int hi = entryCount - 1;
+        while (lo <= hi)
+        {
+            val mid = (lo + hi) >>> 1;
+            val midKey = keys.getAtIndex(LONG, mid);
+            if (midKey < key)
+                lo = mid + 1;
+            else if (midKey > key)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,187 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.Arrays;
+
+/**
+ * Writable ScannerDataStore that keeps every grid packed into a long (see ScannerSymbols), interned: each distinct
+ * packed grid is stored once, and a LongKeyTable of packed positions (as LongOpenHashMap.packKey(...)) holds each
+ * position's grid id in a parallel int[]. Scans repeat a small alphabet and most grids (clear water, solid rock, ...)
+ * occur many times, so that is about 12 bytes per slot plus about 40 per distinct grid, and no object per entry, instead of
+ * a table slot plus a ScannerData, a String and its bytes.
+ * The symbol dictionary is built as grids are added, and holds at most ScannerSymbols.MAX_SYMBOLS symbols.
+ * get(...) decodes and allocates nothing: each distinct grid has one ScannerData over the packed grid and this
+ * store's dictionary, created when the grid is first added, which every lookup of that grid returns.
+ * This class is not thread-safe while it is being written.
+ */
+@Slf4j
+public class PackedScannerDataStore implements ScannerDataStore
+{
+    private final ScannerSymbols symbols = new ScannerSymbols();
+    private final GridIds positions = new GridIds();
+
+    // Each distinct packed grid, by grid id.
+    private long[] distinctGrids = new long[LongKeyTable.DEFAULT_CAPACITY];
+    // The ScannerData of each distinct grid, by grid id; parallel to distinctGrids.
+    private ScannerData[] gridData = new ScannerData[LongKeyTable.DEFAULT_CAPACITY];
+    private int distinctCount = 0;
+    // Grid id of each packed grid, only needed to add grids; see compact().
+    private GridIds gridIndex = null;
+    private long putCount = 0;
+
+
+    @Override
+    public ScannerData get(int horizontalPos, int depthPos)
+    {
+        val slot = positions.slotOf(LongOpenHashMap.packKey(horizontalPos, depthPos));
+        return slot < 0 ? null : gridData[positions.ids[slot]];
+    }
+
+    /**
+     * Adds or replaces the grid at a position.
+     *
+     * @param gridCells Grid cells in row order; only read, so the caller may reuse the array.
+     *
+     * @throws IllegalArgumentException Thrown if 'gridCells' is not a 9-cell grid, or holds a symbol that no longer
+     *                                  fits the dictionary.
+     */
+    public void put(int horizontalPos, int depthPos, @NonNull char[] gridCells)
+    {
+        if (gridCells.length != ScannerSymbols.CELL_COUNT)
+        {
+            val msg = "Invalid data length: %d".formatted(gridCells.length);
+            log.warn(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        putPacked(horizontalPos, depthPos, symbols.pack(gridCells));
+    }
+
+    /**
+     * Adds or replaces the grid at a position.
+     *
+     * @throws IllegalArgumentException Thrown if 'scannerData' holds a symbol that no longer fits the dictionary.
+     */
+    public void put(int horizontalPos, int depthPos, @NonNull ScannerData scannerData)
+    {
+        putPacked(horizontalPos, depthPos, symbols.pack(scannerData.getData()));
+    }
+
+    /**
+     * Frees what is only needed to add grids, e.g. once a file has been loaded. A later put(...) rebuilds it.
+     */
+    public void compact()
+    {
+        gridIndex = null;
+        distinctGrids = Arrays.copyOf(distinctGrids, Math.max(distinctCount, 1));
+        gridData = Arrays.copyOf(gridData, distinctGrids.length);
+    }
+
+    @Override
+    public long size()
+    {
+        return positions.size();
+    }
+
+    /**
+     * @return Number of distinct symbols in this store's grids.
+     */
+    public int getSymbolCount()
+    {
+        return symbols.size();
+    }
+
+    /**
+     * @return Number of distinct grids stored, including any only held by positions whose grid was since replaced.
+     */
+    public int getDistinctGridCount()
+    {
+        return distinctCount;
+    }
+
+    /**
+     * @return put(...) calls per distinct grid, e.g. 4.0 when each stored grid is shared by four entries on average;
+     * 1.0 if nothing has been put.
+     */
+    public double getDeduplicationRatio()
+    {
+        return distinctCount == 0 ? 1.0 : (double) putCount / distinctCount;
+    }
+
+
+    private void putPacked(int horizontalPos, int depthPos, long packedCells)
+    {
+        if (packedCells == ScannerSymbols.NOT_PACKED)
+        {
+            val msg = "Scanner data has more than %d distinct symbols.".formatted(ScannerSymbols.MAX_SYMBOLS);
+            log.warn(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        val gridId = gridIdOf(packedCells);
+        val slot = positions.addSlot(LongOpenHashMap.packKey(horizontalPos, depthPos));
+        positions.ids[slot] = gridId;
+        ++putCount;
+    }
+
+    /**
+     * @return The id of 'packedCells', which is stored first if it is a new grid.
+     */
+    private int gridIdOf(long packedCells)
+    {
+        if (gridIndex == null)
+        {
+            gridIndex = new GridIds();
+            for (int gridId = 0; gridId < distinctCount; ++gridId)
+            {
+                val slot = gridIndex.addSlot(distinctGrids[gridId]);
+                gridIndex.ids[slot] = gridId;
+            }
+        }
+
+        val sizeBefore = gridIndex.size();
+        val slot = gridIndex.addSlot(packedCells);
+        if (gridIndex.size() == sizeBefore)
+            return gridIndex.ids[slot];
+
+        if (distinctCount == distinctGrids.length)
+        {
+            distinctGrids = Arrays.copyOf(distinctGrids, distinctCount * 2);
+            gridData = Arrays.copyOf(gridData, distinctGrids.length);
+        }
+        distinctGrids[distinctCount] = packedCells;
+        gridData[distinctCount] = new ScannerData(packedCells, symbols);
+        gridIndex.ids[slot] = distinctCount;
+        return distinctCount++;
+    }
+
+
+    /**
+     * Long keys (packed positions, or packed grids), with an int id for each in a parallel int[].
+     */
+    private static final class GridIds extends LongKeyTable
+    {
+        private int[] ids;
+
+        GridIds()
+        {
+            super(DEFAULT_CAPACITY);
+            ids = new int[slotCount()];
+        }
+
+        @Override
+        void moveValues(int[] newSlots)
+        {
+            val oldIds = ids;
+            ids = new int[slotCount()];
+            for (int oldIdx = 0; oldIdx < oldIds.length; ++oldIdx)
+            {
+                if (newSlots[oldIdx] >= 0)
+                    ids[newSlots[oldIdx]] = oldIds[oldIdx];
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.davidlowe.submarinekata.models;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events for each stage of the command pipeline, from reading a command to scanning at the
+ * location it leads to.
+ * Commands read from a file are handled in batches, and so are their events: every stage commits one event per
+ * batch of up to CommandFactory.BATCH_SIZE commands, with the batch's size in commandCount. Only commands typed at
+ * the terminal (and Command.create(...)) commit one event per command. While no recording has the events enabled,
+ * begin(), end() and shouldCommit() cost next to nothing, and nothing else is computed.
+ * <p>
+ * On the batch path a line is parsed as soon as it has been read, so CommandRead covers reading and parsing the
+ * whole batch, and no CommandParsed event is committed for it.
+ */
+@Slf4j
+public final class PipelineEvents
+{
+    static final String CATEGORY = "Submarine Kata";
+
+    /**
+     * Every event type in this class.
+     */
+    static final List<Class<? extends Event>> EVENT_TYPES = List.of(CommandRead.class, CommandParsed.class, CommandDispatched.class, LocationUpdated.class, ScanApplied.class);
+
+    private PipelineEvents()
+    {
+    }
+
+
+    /**
+     * Starts recording the JDK's default events and every pipeline event. The recording is written to 'destination'
+     * when the JVM exits.
+     *
+     * @return The running recording, which can also be stopped (and written) earlier.
+     * @throws IOException Thrown if 'destination' cannot be written to.
+     */
+    public static Recording startRecording(@NonNull Path destination)
+            throws IOException
+    {
+        Recording recording;
+        try
+        {
+            recording = new Recording(Configuration.getConfiguration("default"));
+        }
+        catch (ParseException e)
+        {
+            // The JDK's own configuration; this should never happen.
+            throw new IllegalStateException(e);
+        }
+
+        for (val eventType : EVENT_TYPES)
+            recording.enable(eventType).withoutStackTrace();
+        recording.setName("submarine");
+        recording.setDestination(destination);
+        recording.setDumpOnExit(true);
+        recording.start();
+        log.info("Recording flight data to \"{}\".", destination.toAbsolutePath());
+        return recording;
+    }
+
+
+    @Name("submarine.CommandRead")
+    @Label("Command Read")
+    @Description("Commands read from the CommandStream: one line typed at the terminal, or one batch of a command file (read and parsed)")
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    static final class CommandRead extends Event
+    {
+        @Label("Command Count")
+        int commandCount;
+
+        @Label("First Line")
+        long firstLine;
+    }
+
+
+    @Name("submarine.CommandParsed")
+    @Label("Command Parsed")
+    @Description("One command line parsed into a command")
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    static final class CommandParsed extends Event
+    {
+        @Label("Direction")
+        String direction;
+
+        @Label("Distance")
+        double distance;
+    }
+
+
+    @Name("submarine.CommandDispatched")
+    @Label("Command Dispatched")
+    @Description("A command published as a CommandAvailableEvent, or a batch of commands handed to every CommandBatchListener")
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    static final class CommandDispatched extends Event
+    {
+        @Label("Mode")
+        String mode;
+
+        @Label("Command Count")
+        int commandCount;
+    }
+
+
+    @Name("submarine.LocationUpdated")
+    @Label("Location Updated")
+    @Description("A command or a batch of commands applied to a LocationImpl")
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    static final class LocationUpdated extends Event
+    {
+        @Label("Command Count")
+        int commandCount;
+
+        @Label("Horizontal Location")
+        double horizontalLocation;
+
+        @Label("Depth")
+        double depth;
+
+        @Label("Aim")
+        double aim;
+    }
+
+
+    @Name("submarine.ScanApplied")
+    @Label("Scan Applied")
+    @Description("A command or a batch of commands processed by a Submarine, including the scans made along the way")
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    static final class ScanApplied extends Event
+    {
+        @Label("Command Count")
+        int commandCount;
+
+        @Label("Scanner Lookups")
+        long lookups;
+
+        @Label("Scanner Hits")
+        long hits;
+    }
+}
@@ -0,0 +1,158 @@
+package com.davidlowe.submarinekata.models;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.Getter;
+import lombok.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for the command pipeline, from reading commands to filling the sonar map.
+ * Every meter is created up front, so recording a value never looks a meter up or allocates: counters are
+ * incremented, and timers record durations the caller measured with System.nanoTime().
+ * Batched paths record once per batch rather than once per command.
+ * NOOP records nothing, and is used wherever no registry has been provided (tests, benchmarks, FleetRunner routes).
+ */
+@Component
+public class PipelineMetrics
+{
+    public static final PipelineMetrics NOOP = new PipelineMetrics(new CompositeMeterRegistry());
+
+    @Getter
+    private final MeterRegistry registry;
+
+    private final Counter commandsParsed;
+    private final Counter parseFailures;
+    private final Timer eventDispatch;
+    private final Timer batchDispatch;
+    private final Timer commandProcessing;
+    private final Timer batchProcessing;
+    private final Counter scannerHits;
+    private final Counter scannerMisses;
+    private final Counter prefetchHits;
+    private final Counter prefetchMisses;
+    private final Timer scannerLoad;
+
+    public PipelineMetrics(@NonNull MeterRegistry registry)
+    {
+        this.registry = registry;
+
+        commandsParsed = Counter.builder("submarine.commands.parsed")
+                                .description("Commands parsed from the command input")
+                                .baseUnit("commands")
+                                .register(registry);
+        parseFailures = Counter.builder("submarine.commands.parse.failures")
+                               .description("Command lines that could not be parsed")
+                               .register(registry);
+
+        eventDispatch = dispatchTimer("event", registry);
+        batchDispatch = dispatchTimer("batch", registry);
+
+        commandProcessing = Timer.builder("submarine.location.process")
+                                 .description("Time to apply one command to the submarine's location and scan")
+                                 .tag("mode", "command")
+                                 .register(registry);
+        batchProcessing = Timer.builder("submarine.location.process")
+                               .description("Time to apply one batch of commands to the submarine's location and scan")
+                               .tag("mode", "batch")
+                               .register(registry);
+
+        scannerHits = Counter.builder("submarine.scanner.lookups")
+                             .description("Scanner data lookups")
+                             .tag("result", "hit")
+                             .register(registry);
+        scannerMisses = Counter.builder("submarine.scanner.lookups")
+                               .description("Scanner data lookups")
+                               .tag("result", "miss")
+                               .register(registry);
+
+        prefetchHits = Counter.builder("submarine.scanner.prefetch")
+                              .description("Scans whose scanner entry was prefetched before its batch was applied")
+                              .tag("result", "hit")
+                              .register(registry);
+        prefetchMisses = Counter.builder("submarine.scanner.prefetch")
+                                .description("Scans whose scanner entry was prefetched before its batch was applied")
+                                .tag("result", "miss")
+                                .register(registry);
+
+        scannerLoad = Timer.builder("submarine.scanner.load")
+                           .description("Time to load a scanner data file")
+                           .register(registry);
+    }
+
+
+    /**
+     * Publishes the cell and tile counts of 'sonarDb' as gauges.
+     */
+    public void monitor(@NonNull SonarDb sonarDb)
+    {
+        Gauge.builder("submarine.sonar.cells", sonarDb, SonarDb::getCellCount)
+             .description("Sonar map cells holding data")
+             .register(registry);
+        Gauge.builder("submarine.sonar.tiles", sonarDb, SonarDb::getTileCount)
+             .description("Sonar map tiles allocated")
+             .register(registry);
+    }
+
+
+    void commandsParsed(int count)
+    {
+        commandsParsed.increment(count);
+    }
+
+    void parseFailed()
+    {
+        parseFailures.increment();
+    }
+
+    void eventDispatched(long nanos)
+    {
+        eventDispatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void batchDispatched(long nanos)
+    {
+        batchDispatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void commandProcessed(long nanos)
+    {
+        commandProcessing.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void batchProcessed(long nanos)
+    {
+        batchProcessing.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void scannerLookup(boolean hit)
+    {
+        (hit ? scannerHits : scannerMisses).increment();
+    }
+
+    void scannerPrefetched(long hits, long misses)
+    {
+        prefetchHits.increment(hits);
+        prefetchMisses.increment(misses);
+    }
+
+    void scannerLoaded(long nanos)
+    {
+        scannerLoad.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+
+    private static Timer dispatchTimer(String mode, MeterRegistry registry)
+    {
+        return Timer.builder("submarine.command.dispatch")
+                    .description("Time to hand a command (event) or a batch of commands to its listeners")
+                    .tag("mode", mode)
+                    .publishPercentileHistogram()
+                    .register(registry);
+    }
+}
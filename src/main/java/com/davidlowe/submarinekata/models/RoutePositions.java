@@ -0,0 +1,56 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Finds the positions a command file's route scans at, so only their scanner data needs to be loaded (see
+ * ScannedSonarDataDb.loadData(File, LongOpenHashSet)).
+ * The commands are run through a LocationImpl in batches, exactly as a batch-mode run processes them, and every
+ * position the submarine scans at is recorded with the rounding ScannedSonarDataDb applies to lookups. A run that
+ * starts from the same location therefore scans at no position missing from the set. Parallel replay
+ * (TrajectoryEngine) can round differently, so it is not covered.
+ */
+@Slf4j
+public final class RoutePositions
+{
+    private RoutePositions()
+    {
+    }
+
+
+    /**
+     * Collects the positions a batch-mode run of 'commandFile' scans at. Like the run, it stops at a quit command or
+     * at the first line that is not a valid command.
+     *
+     * @return Each position, packed as by LongOpenHashMap.packKey(...).
+     * @throws IOException Thrown if the command file cannot be read.
+     */
+    public static LongOpenHashSet collect(@NonNull File commandFile, double horizontalStart, double depthStart, double aimStart)
+            throws IOException
+    {
+        val location = new LocationImpl();
+        location.setConfigValue(horizontalStart, depthStart, aimStart);
+        val positions = new LongOpenHashSet();
+        LocationChangeListener recordPosition = (horizontalLocation, depth) ->
+                positions.add(ScannedSonarDataDb.positionKey(horizontalLocation, depth));
+
+        val reader = new CommandBatchReader();
+        try (val lines = new MappedLineReader(commandFile))
+        {
+            reader.read(lines::readLineSlice, batch -> location.processBatch(batch, recordPosition));
+        }
+        catch (ParseException e)
+        {
+            log.debug("Route ends at invalid line {}.", reader.getLineNumber());
+        }
+
+        log.info("Route of {} commands scans at {} distinct positions.", reader.getCommandCount(), positions.size());
+        return positions;
+    }
+}
@@ -1,107 +1,263 @@
 package com.davidlowe.submarinekata.models;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.NoArgsConstructor;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Scanner data, by scan position.
+ * Once makeReadOnly() has been called the db can no longer change, and it is then safe to share between threads
+ * (for example every Submarine of a FleetRunner), provided the threads are started, or otherwise synchronized with
+ * the loading thread, after makeReadOnly() returns.
+ */
 @Slf4j
-@NoArgsConstructor
 @Component
 public class ScannedSonarDataDb
 {
-    private final Map<ScannerKey, ScannerData> scannerKey2ScannerData = new java.util.HashMap<>();
+    /**
+     * A PackedScannerDataStore (data set programmatically or loaded from JSON), or a read-only MappedScannerDataStore
+     * or LazyJsonScannerDataStore (data loaded from a binary scanner-data file, or lazily from JSON).
+     */
+    @Getter
+    private ScannerDataStore scannerDataStore = new PackedScannerDataStore();
+
+    @Getter
+    private volatile boolean readOnly = false;
+
+    private final PipelineMetrics metrics;
+
+    public ScannedSonarDataDb()
+    {
+        this(PipelineMetrics.NOOP);
+    }
+
+    /**
+     * @param metrics Records how long loadData(...) takes.
+     */
+    @Autowired
+    public ScannedSonarDataDb(@NonNull PipelineMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
 
 
     public ScannerData getScannerKey2ScannerData(@NonNull ScannerKey scannerKey)
     {
-        return scannerKey2ScannerData.get(scannerKey);
+        return getScannerKey2ScannerData(scannerKey.getHorizontalPos(), scannerKey.getDepthPos());
     }
 
+    /**
+     * @return The grid scanned at the position, or null if there is none. Identical grids set or loaded into the
+     * PackedScannerDataStore are the same ScannerData instance.
+     */
     public ScannerData getScannerKey2ScannerData(int horizontalLocation, int depthLocation)
     {
-        return getScannerKey2ScannerData(new ScannerKey(horizontalLocation, depthLocation));
+        return scannerDataStore.get(horizontalLocation, depthLocation);
     }
 
     public ScannerData getScannerKey2ScannerData(double horizontalLocation, double depthLocation)
     {
-        return getScannerKey2ScannerData(new ScannerKey((int) Math.round(horizontalLocation), (int) Math.round(depthLocation)));
+        return getScannerKey2ScannerData((int) Math.round(horizontalLocation), (int) Math.round(depthLocation));
+    }
+
+    /**
+     * @return The scan position looked up for a location by getScannerKey2ScannerData(double, double), packed as by
+     * LongOpenHashMap.packKey(...).
+     */
+    public static long positionKey(double horizontalLocation, double depthLocation)
+    {
+        return LongOpenHashMap.packKey((int) Math.round(horizontalLocation), (int) Math.round(depthLocation));
+    }
+
+    /**
+     * Warms the scanner data at the specified position ahead of its lookup (see ScannerDataStore.prefetch(...)).
+     */
+    public void prefetch(int horizontalLocation, int depthLocation)
+    {
+        scannerDataStore.prefetch(horizontalLocation, depthLocation);
     }
 
 
     public void setScannerKey2ScannerData(@NonNull ScannerKey scannerKey, @NonNull ScannerData scannerData)
     {
-        scannerKey2ScannerData.put(scannerKey, scannerData);
+        setScannerKey2ScannerData(scannerKey.getHorizontalPos(), scannerKey.getDepthPos(), scannerData);
     }
 
+    /**
+     * @throws IllegalArgumentException Thrown if 'scannerData' would take this db's grids past
+     *                                  ScannerSymbols.MAX_SYMBOLS distinct symbols.
+     * @throws IllegalStateException    Thrown if this db is read-only, or its data was loaded from a binary file or
+     *                                  lazily.
+     */
     public void setScannerKey2ScannerData(int horizontalLocation, int depthLocation, @NonNull ScannerData scannerData)
     {
-        scannerKey2ScannerData.put(new ScannerKey(horizontalLocation, depthLocation), scannerData);
+        packedStore().put(horizontalLocation, depthLocation, scannerData);
     }
 
 
+    public long size()
+    {
+        return scannerDataStore.size();
+    }
+
+
+    /**
+     * Empties this db, closing its store (which unmaps a file loaded from).
+     */
     public void clear()
     {
-        scannerKey2ScannerData.clear();
+        checkWritable();
+        replaceStore(new PackedScannerDataStore());
+    }
+
+    /**
+     * Prevents any further change to this db: set, clear and load calls throw IllegalStateException from now on.
+     * Lookups only read the store, so a read-only db can be used by many threads at once.
+     */
+    public void makeReadOnly()
+    {
+        readOnly = true;
+    }
+
+
+    private void checkWritable()
+    {
+        if (readOnly)
+        {
+            val msg = "ScannedSonarDataDb is read-only.";
+            log.warn(msg);
+            throw new IllegalStateException(msg);
+        }
+    }
+
+    /**
+     * Makes 'store' this db's store, closing the one it replaces.
+     */
+    private void replaceStore(ScannerDataStore store)
+    {
+        val oldStore = scannerDataStore;
+        scannerDataStore = store;
+        if (oldStore != store)
+            oldStore.close();
     }
 
+    private PackedScannerDataStore packedStore()
+    {
+        checkWritable();
+        if (scannerDataStore instanceof PackedScannerDataStore packedScannerDataStore)
+            return packedScannerDataStore;
+
+        val msg = "Scanner data loaded from a binary file or lazily is read-only.";
+        log.warn(msg);
+        throw new IllegalStateException(msg);
+    }
+
+
+    /**
+     * Loads the scanner data from either a scanner-data JSON file or a binary scanner-data file
+     * (see BinaryScannerDataFile); the format is detected from the file's contents.
+     * JSON entries are added to this db's PackedScannerDataStore as soon as they have been parsed, alongside any grids
+     * set programmatically, with identical grids stored once. A binary file is memory-mapped and replaces any data
+     * already in this db. A store this replaces, such as a file mapped by an earlier load, is closed.
+     *
+     * @param scannerFile Scanner-data JSON or binary file.
+     *
+     * @throws IOException              Thrown if the file cannot be read or is not valid JSON.
+     * @throws IllegalArgumentException Thrown if the file is not in either scanner-data format, or its grids use more
+     *                                  than ScannerSymbols.MAX_SYMBOLS distinct symbols.
+     * @throws IllegalStateException    Thrown if this db is read-only.
+     */
+    public void loadData(@NonNull File scannerFile)
+            throws IOException, IllegalArgumentException
+    {
+        loadData(scannerFile, null);
+    }
 
-    public void loadData(@NonNull File jsonFile)
+    /**
+     * Loads the scanner data as loadData(File) does, except that only the JSON entries at 'positions' are kept, e.g.
+     * the positions a route scans at (see RoutePositions). A binary file is memory-mapped whole, as it takes no heap.
+     *
+     * @param positions Positions to keep, packed as by LongOpenHashMap.packKey(...), or null to keep every entry.
+     */
+    public void loadData(@NonNull File scannerFile, LongOpenHashSet positions)
             throws IOException, IllegalArgumentException
     {
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNode = objectMapper.readTree(jsonFile);
+        checkWritable();
+        val startNanos = System.nanoTime();
 
-        // If the JSON is a simple object, you can directly convert it to a Map
-        if (rootNode.isObject())
+        if (BinaryScannerDataFile.isBinary(scannerFile))
         {
-            Map<String, Object> jsonMap = objectMapper.readValue(jsonFile, Map.class);
-            jsonMap.forEach((key, value) ->
-            {
-                String cleanedString = key.replace("(", "").replace(")", "");
-
-                // 2. Split the string by comma
-                String[] parts = cleanedString.split(",");
-
-                // Ensure there are exactly two parts
-                if (parts.length != 2)
-                {
-                    throw new IllegalArgumentException("Invalid format: " + key);
-                }
-
-                // 3. Trim whitespace and convert to integers
-                int horizontalPosition = Integer.parseInt(parts[0].trim());
-                int depthPosition = Integer.parseInt(parts[1].trim());
-
-                final ArrayList<String> valueList = (ArrayList<String>) value;
-                String scannerData = "";
-                for (int idx = 0; idx < valueList.size(); idx++)
-                {
-                    scannerData += valueList.get(idx);
-                }
-
-                scannerKey2ScannerData.put(new ScannerKey(horizontalPosition, depthPosition), new ScannerData(scannerData));
-            });
+            replaceStore(MappedScannerDataStore.open(scannerFile));
         }
         else
         {
-            System.out.println("JSON is not a simple object or contains nested structures.");
-            // You would need to iterate and handle nested objects/arrays if present
-            // Example for iterating through top-level fields:
-            Iterator<Map.Entry<String, JsonNode>> fields = rootNode.fields();
-            while (fields.hasNext())
+            val store = scannerDataStore instanceof PackedScannerDataStore packedScannerDataStore ? packedScannerDataStore : new PackedScannerDataStore();
+            readJson(scannerFile, positions, store::put);
+            store.compact();
+            replaceStore(store);
+            log.info("Packed scanner entries into {} distinct grids ({} entries per grid) using {} distinct symbols.",
+                     store.getDistinctGridCount(), "%.1f".formatted(store.getDeduplicationRatio()), store.getSymbolCount());
+        }
+
+        val elapsedNanos = System.nanoTime() - startNanos;
+        metrics.scannerLoaded(elapsedNanos);
+        log.info("Loaded {} scanner entries from \"{}\" in {} ms.",
+                 scannerDataStore.size(), scannerFile.getAbsolutePath(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+    }
+
+    private static void readJson(File scannerFile, LongOpenHashSet positions, ScannerDataJsonReader.EntryConsumer consumer)
+            throws IOException
+    {
+        if (positions == null)
+        {
+            ScannerDataJsonReader.read(scannerFile, consumer);
+            return;
+        }
+
+        val entriesKept = new long[1];
+        val entriesRead = ScannerDataJsonReader.read(scannerFile, (horizontalPos, depthPos, cells) ->
+        {
+            if (positions.contains(LongOpenHashMap.packKey(horizontalPos, depthPos)))
             {
-                Map.Entry<String, JsonNode> field = fields.next();
-                System.out.println("Key: " + field.getKey() + ", Value: " + field.getValue().asText());
+                consumer.accept(horizontalPos, depthPos, cells);
+                ++entriesKept[0];
             }
-        }
+        });
+        log.info("Kept {} of {} scanner entries for {} positions.", entriesKept[0], entriesRead, positions.size());
+    }
+
+    /**
+     * Loads the scanner data without decoding it up front: a JSON file is indexed by LazyJsonScannerDataStore, which
+     * only decodes the entries that are looked up, and a binary file is memory-mapped as by loadData(...). Either way
+     * the file replaces any data already in this db, closing its store, and the db can no longer be set.
+     *
+     * @param scannerFile Scanner-data JSON or binary file.
+     *
+     * @throws IOException              Thrown if the file cannot be read.
+     * @throws IllegalArgumentException Thrown if the file is not in either scanner-data format.
+     * @throws IllegalStateException    Thrown if this db is read-only.
+     */
+    public void loadDataLazily(@NonNull File scannerFile)
+            throws IOException, IllegalArgumentException
+    {
+        checkWritable();
+        val startNanos = System.nanoTime();
+
+        if (BinaryScannerDataFile.isBinary(scannerFile))
+            replaceStore(MappedScannerDataStore.open(scannerFile));
+        else
+            replaceStore(LazyJsonScannerDataStore.open(scannerFile));
+
+        val elapsedNanos = System.nanoTime() - startNanos;
+        metrics.scannerLoaded(elapsedNanos);
+        log.info("Indexed {} scanner entries from \"{}\" in {} ms.",
+                 scannerDataStore.size(), scannerFile.getAbsolutePath(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
     }
 }
@@ -1,7 +1,6 @@
 package com.davidlowe.submarinekata.models;
 
 
-import lombok.Getter;
 import lombok.NonNull;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -11,9 +10,15 @@ import org.springframework.context.ApplicationContextException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+/**
+ * One 3x3 scan grid, 9 cells in row order.
+ * The cells are packed into a single long, 7 bits per cell, as codes into a ScannerSymbols dictionary: ASCII for
+ * grids created from ASCII Strings, or the dictionary of the store the grid was loaded into. getCell(...) decodes
+ * a cell without allocating; getData(), getRow(...) and getColumn(...) build Strings.
+ * Instances are immutable, and equality compares the grids' contents, whatever dictionary they are encoded with.
+ */
 @Slf4j
-@Getter
-public class ScannerData
+public final class ScannerData
 {
     public static final int X_Y_MAX_SIZE = 3;
     // Since the sub is centered for these, both of the following
@@ -21,7 +26,10 @@ public class ScannerData
     public static final int ARRAY_ROW_MAX_SIZE = X_Y_MAX_SIZE;
     public static final int ARRAY_COL_MAX_SIZE = X_Y_MAX_SIZE;
 
-    private String data;
+    private static final int CELL_COUNT = ARRAY_ROW_MAX_SIZE * ARRAY_COL_MAX_SIZE;
+
+    private final long packedCells;
+    private final ScannerSymbols symbols;
 
     public ScannerData()
     {
@@ -31,7 +39,8 @@ public class ScannerData
         if (ARRAY_ROW_MAX_SIZE % 1 == 1 || ARRAY_COL_MAX_SIZE % 1 == 1)
             throw new ApplicationContextException("Array dimensions must be odd");
 
-        data = " ".repeat(ARRAY_ROW_MAX_SIZE * ARRAY_COL_MAX_SIZE);
+        symbols = ScannerSymbols.ASCII;
+        packedCells = symbols.pack(" ".repeat(CELL_COUNT));
     }
 
     @SneakyThrows
@@ -44,7 +53,17 @@ public class ScannerData
             log.warn(msg);
             throw new IllegalArgumentException(msg);
         }
-        this.data = data;
+        symbols = ScannerSymbols.forGrid(data);
+        packedCells = symbols.pack(data);
+    }
+
+    /**
+     * @param packedCells Grid packed with 'symbols'.
+     */
+    ScannerData(long packedCells, @NonNull ScannerSymbols symbols)
+    {
+        this.packedCells = packedCells;
+        this.symbols = symbols;
     }
 
     public static int getGridSize()
@@ -52,6 +71,17 @@ public class ScannerData
         return X_Y_MAX_SIZE;
     }
 
+    /**
+     * @return The grid's 9 cells in row order.
+     */
+    public String getData()
+    {
+        val cells = new char[CELL_COUNT];
+        for (int cellIdx = 0; cellIdx < CELL_COUNT; ++cellIdx)
+            cells[cellIdx] = cellAt(cellIdx);
+        return new String(cells);
+    }
+
     public Iterator<String> getRowIterator()
     {
         return new RowIterator();
@@ -72,8 +102,32 @@ public class ScannerData
             throw new IllegalArgumentException(msg);
         }
 
-        final int startIdx = rowNbr * ARRAY_COL_MAX_SIZE;
-        return data.substring(startIdx, startIdx + ARRAY_COL_MAX_SIZE);
+        val row = new char[ARRAY_COL_MAX_SIZE];
+        for (int colNbr = 0; colNbr < ARRAY_COL_MAX_SIZE; ++colNbr)
+            row[colNbr] = cellAt(rowNbr * ARRAY_COL_MAX_SIZE + colNbr);
+        return new String(row);
+    }
+
+    /**
+     * Gets a single grid cell without creating any intermediate Strings.
+     *
+     * @param rowNbr Row of the cell, 0 being the top row.
+     * @param colNbr Column of the cell, 0 being the leftmost column.
+     *
+     * @return The cell's map data.
+     * @throws IllegalArgumentException Thrown if 'rowNbr' or 'colNbr' is outside the grid.
+     */
+    public char getCell(int rowNbr, int colNbr)
+            throws IllegalArgumentException
+    {
+        if (rowNbr < 0 || rowNbr >= ARRAY_ROW_MAX_SIZE || colNbr < 0 || colNbr >= ARRAY_COL_MAX_SIZE)
+        {
+            val msg = "Invalid cell (%d,%d)".formatted(rowNbr, colNbr);
+            log.warn(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        return cellAt(rowNbr * ARRAY_COL_MAX_SIZE + colNbr);
     }
 
     public String getColumn(int colNbr)
@@ -86,13 +140,51 @@ public class ScannerData
             throw new IllegalArgumentException(msg);
         }
 
-        StringBuilder col = new StringBuilder();
-        for (int idx = colNbr; idx < ARRAY_ROW_MAX_SIZE * ARRAY_COL_MAX_SIZE; idx += ARRAY_ROW_MAX_SIZE)
+        val col = new char[ARRAY_ROW_MAX_SIZE];
+        for (int rowNbr = 0; rowNbr < ARRAY_ROW_MAX_SIZE; ++rowNbr)
+            col[rowNbr] = cellAt(rowNbr * ARRAY_COL_MAX_SIZE + colNbr);
+        return new String(col);
+    }
+
+    /**
+     * Compares the grids' cells, so grids encoded with different dictionaries are equal if their cells are.
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        if (this == other)
+            return true;
+        if (!(other instanceof ScannerData otherData))
+            return false;
+        if (symbols == otherData.symbols)
+            return packedCells == otherData.packedCells;
+
+        for (int cellIdx = 0; cellIdx < CELL_COUNT; ++cellIdx)
         {
-            col.append(data.charAt(idx));
+            if (cellAt(cellIdx) != otherData.cellAt(cellIdx))
+                return false;
         }
+        return true;
+    }
+
+    /**
+     * @return The same hash as getData().hashCode(), computed without building the String.
+     */
+    @Override
+    public int hashCode()
+    {
+        int hash = 0;
+        for (int cellIdx = 0; cellIdx < CELL_COUNT; ++cellIdx)
+            hash = 31 * hash + cellAt(cellIdx);
+        return hash;
+    }
 
-        return col.toString();
+    /**
+     * @return Cell 'cellIdx' in row order, unchecked.
+     */
+    char cellAt(int cellIdx)
+    {
+        return symbols.symbolOf(ScannerSymbols.codeAt(packedCells, cellIdx));
     }
 
     private class RowIterator implements Iterator<String>
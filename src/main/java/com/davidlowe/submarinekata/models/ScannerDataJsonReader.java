@@ -0,0 +1,196 @@
+package com.davidlowe.submarinekata.models;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.NonNull;
+import lombok.val;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads a scanner-data JSON file in a single streaming pass using Jackson's JsonParser.
+ * The file is expected to be a single JSON object whose keys are "(x,y)" coordinates and whose
+ * values are arrays of single-character strings (the 3x3 scan grid in row order).
+ * Neither the keys nor the cell values are materialized as Strings; each entry is handed to an
+ * EntryConsumer as soon as it has been read.
+ */
+public final class ScannerDataJsonReader
+{
+    /**
+     * Receives each entry read from the scanner-data file.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer
+    {
+        /**
+         * @param horizontalPos Horizontal position parsed from the entry's key.
+         * @param depthPos      Depth parsed from the entry's key.
+         * @param cells         The entry's grid cells in row order. This array is reused for every entry,
+         *                      so implementations must copy anything they want to keep.
+         */
+        void accept(int horizontalPos, int depthPos, char[] cells);
+    }
+
+    private static final int CELL_COUNT = ScannerData.ARRAY_ROW_MAX_SIZE * ScannerData.ARRAY_COL_MAX_SIZE;
+
+    // Every key in a scanner file is unique, so canonicalizing field names would only grow Jackson's
+    // symbol table by one entry per scan position.
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+                                                               .disable(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES)
+                                                               .disable(JsonFactory.Feature.INTERN_FIELD_NAMES)
+                                                               .build();
+
+    private ScannerDataJsonReader()
+    {
+    }
+
+
+    /**
+     * Streams every entry of 'jsonFile' into 'consumer'.
+     *
+     * @param jsonFile Scanner-data JSON file.
+     * @param consumer Receives each entry as it is read.
+     *
+     * @return Number of entries read.
+     * @throws IOException              Thrown if the file cannot be read or is not valid JSON.
+     * @throws IllegalArgumentException Thrown if the file is valid JSON but not in the scanner-data format.
+     */
+    public static long read(@NonNull File jsonFile, @NonNull EntryConsumer consumer)
+            throws IOException, IllegalArgumentException
+    {
+        try (val parser = JSON_FACTORY.createParser(jsonFile))
+        {
+            return read(parser, consumer);
+        }
+    }
+
+
+    private static long read(JsonParser parser, EntryConsumer consumer)
+            throws IOException
+    {
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+            throw new IllegalArgumentException("Scanner data must be a JSON object of \"(x,y)\" keys to cell arrays.");
+
+        val cells = new char[CELL_COUNT];
+        long entriesRead = 0;
+
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME)
+        {
+            val key = parser.getTextCharacters();
+            val keyOffset = parser.getTextOffset();
+            val keyLength = parser.getTextLength();
+            val packedKey = parseKey(key, keyOffset, keyLength);
+
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new IllegalArgumentException("Invalid value for key: " + new String(key, keyOffset, keyLength));
+
+            int cellCount = 0;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY)
+            {
+                if (token != JsonToken.VALUE_STRING)
+                    throw new IllegalArgumentException("Invalid cell value %s at %s".formatted(token, parser.currentLocation()));
+
+                val cellLength = parser.getTextLength();
+                if (cellCount + cellLength > CELL_COUNT)
+                    throw new IllegalArgumentException("Invalid data length at %s".formatted(parser.currentLocation()));
+
+                System.arraycopy(parser.getTextCharacters(), parser.getTextOffset(), cells, cellCount, cellLength);
+                cellCount += cellLength;
+            }
+
+            if (cellCount != CELL_COUNT)
+                throw new IllegalArgumentException("Invalid data length: %d at %s".formatted(cellCount, parser.currentLocation()));
+
+            consumer.accept((int) (packedKey >> 32), (int) packedKey, cells);
+            ++entriesRead;
+        }
+
+        if (token != JsonToken.END_OBJECT)
+            throw new IllegalArgumentException("Scanner data must be a JSON object of \"(x,y)\" keys to cell arrays.");
+
+        return entriesRead;
+    }
+
+
+    /**
+     * Parses a "(x,y)" key (whitespace around either number is allowed) without creating any Strings.
+     *
+     * @return x in the upper 32 bits, y in the lower 32 bits.
+     */
+    static long parseKey(char[] key, int offset, int length)
+    {
+        val end = offset + length;
+        int idx = skipWhitespace(key, offset, end);
+        if (idx == end || key[idx] != '(')
+            throw invalidKey(key, offset, length);
+
+        val horizontal = parseInt(key, idx + 1, end);
+        idx = (int) (horizontal >> 32);
+        if (idx < 0 || idx == end || key[idx] != ',')
+            throw invalidKey(key, offset, length);
+
+        val depth = parseInt(key, idx + 1, end);
+        idx = (int) (depth >> 32);
+        if (idx < 0 || idx == end || key[idx] != ')')
+            throw invalidKey(key, offset, length);
+
+        if (skipWhitespace(key, idx + 1, end) != end)
+            throw invalidKey(key, offset, length);
+
+        return (horizontal << 32) | (depth & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * Parses an optionally signed int surrounded by optional whitespace.
+     *
+     * @return The index just past the trailing whitespace in the upper 32 bits and the parsed value in the
+     * lower 32 bits, or -1 if no valid int was found.
+     */
+    private static long parseInt(char[] chars, int idx, int end)
+    {
+        idx = skipWhitespace(chars, idx, end);
+
+        boolean negative = false;
+        if (idx < end && (chars[idx] == '-' || chars[idx] == '+'))
+        {
+            negative = chars[idx] == '-';
+            ++idx;
+        }
+
+        val digitsStart = idx;
+        long value = 0;
+        while (idx < end && chars[idx] >= '0' && chars[idx] <= '9')
+        {
+            value = value * 10 + (chars[idx++] - '0');
+            if (value > (long) Integer.MAX_VALUE + 1)
+                return -1;
+        }
+
+        if (idx == digitsStart)
+            return -1;
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE)
+            return -1;
+
+        return ((long) skipWhitespace(chars, idx, end) << 32) | (value & 0xFFFFFFFFL);
+    }
+
+
+    private static int skipWhitespace(char[] chars, int idx, int end)
+    {
+        while (idx < end && Character.isWhitespace(chars[idx]))
+            ++idx;
+        return idx;
+    }
+
+
+    private static IllegalArgumentException invalidKey(char[] key, int offset, int length)
+    {
+        return new IllegalArgumentException("Invalid format: " + new String(key, offset, length));
+    }
+}
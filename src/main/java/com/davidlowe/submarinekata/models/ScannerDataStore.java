@@ -0,0 +1,34 @@
+package com.davidlowe.submarinekata.models;
+
+/**
+ * Storage engine behind ScannedSonarDataDb, mapping (horizontal, depth) scan positions to ScannerData.
+ */
+public interface ScannerDataStore extends AutoCloseable
+{
+    /**
+     * @return The scanner data recorded at the specified position, or null if there is none.
+     */
+    ScannerData get(int horizontalPos, int depthPos);
+
+    /**
+     * Hints that the specified position is about to be looked up, so a store that reads or decodes entries on demand
+     * can do that work ahead of the lookup. May be called from another thread than get(...); it must not fail.
+     */
+    default void prefetch(int horizontalPos, int depthPos)
+    {
+    }
+
+    /**
+     * @return Number of positions held by the store.
+     */
+    long size();
+
+    /**
+     * Releases what the store holds outside the heap, such as a file mapping. The store must not be used afterwards;
+     * closing it again does nothing.
+     */
+    @Override
+    default void close()
+    {
+    }
+}
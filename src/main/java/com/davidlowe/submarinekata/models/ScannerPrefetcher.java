@@ -0,0 +1,227 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Warms a ScannedSonarDataDb's entries a batch of commands ahead of a submarine, for scanner data stores that read or
+ * decode entries on demand (see ScannerDataStore.prefetch(...)).
+ * Each batch is held back until the next one arrives or finish() is called. When a batch arrives, the positions it
+ * will scan at are predicted by running it through a shadow LocationImpl, which follows the submarine's own
+ * arithmetic exactly, and are warmed on a virtual thread while the held batch is applied. Batches are still applied
+ * one at a time and in order, just one batch later; the two batches in flight live in two reused buffers.
+ * A scan is a prefetch hit if its position had been warmed by the time its batch was applied, and a miss otherwise.
+ * Warming runs on a virtual-thread executor that is started by the first batch and shut down by close(), which also
+ * applies the held batch; a closed prefetcher starts a new executor if more batches arrive.
+ * Not thread-safe: batches must come from one thread, as they do from CommandFactory.
+ */
+@Slf4j
+public final class ScannerPrefetcher implements AutoCloseable
+{
+    private final ScannedSonarDataDb scannedSonarDataDb;
+    private final Location location;
+    private final CommandBatchListener applyBatch;
+    private final PipelineMetrics metrics;
+
+    // Null until the first batch arrives, and again once closed.
+    private ExecutorService executor = null;
+    private final LocationImpl shadowLocation = new LocationImpl();
+
+    // The batch waiting to be applied, or null if there is none, and the buffer the next batch is copied into.
+    private PrefetchBuffer held = null;
+    private PrefetchBuffer spare = null;
+
+    @Getter
+    private long hitCount = 0;
+    @Getter
+    private long missCount = 0;
+
+    /**
+     * @param location   The submarine's location, which 'applyBatch' moves.
+     * @param applyBatch Applies a batch to the submarine.
+     */
+    ScannerPrefetcher(@NonNull ScannedSonarDataDb scannedSonarDataDb, @NonNull Location location, @NonNull CommandBatchListener applyBatch, @NonNull PipelineMetrics metrics)
+    {
+        this.scannedSonarDataDb = scannedSonarDataDb;
+        this.location = location;
+        this.applyBatch = applyBatch;
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Starts warming the positions 'commands' will scan at, then applies the batch held back before it.
+     *
+     * @param commands Commands to process. They are copied, so the batch can be refilled once this method returns.
+     */
+    void commandsAvailable(@NonNull CommandBatch commands)
+    {
+        if (held == null)
+            // Nothing is in flight, so the submarine's location is where the next batch starts.
+            shadowLocation.setConfigValue(location.getHorizontalLocation(), location.getDepth(), location.getAim());
+
+        var incoming = spare;
+        if (incoming == null || incoming.batch.capacity() < commands.size())
+            incoming = new PrefetchBuffer(Math.max(commands.size(), CommandFactory.BATCH_SIZE));
+        spare = null;
+
+        incoming.fill(commands, shadowLocation);
+        if (executor == null)
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+        val warmedBuffer = incoming;
+        incoming.warming = executor.submit(() -> warmedBuffer.warm(scannedSonarDataDb));
+
+        val previous = held;
+        // Cleared first, so a batch that fails to apply is never applied again by finish().
+        held = null;
+        if (previous != null)
+        {
+            try
+            {
+                apply(previous);
+            }
+            catch (RuntimeException e)
+            {
+                // The batches after a failed one are dropped, like the commands after an invalid line.
+                incoming.stopWarming = true;
+                throw e;
+            }
+        }
+        held = incoming;
+    }
+
+    /**
+     * Applies the batch held back, if any. Called once the last batch has arrived, and before the submarine is moved
+     * any other way.
+     */
+    void finish()
+    {
+        val previous = held;
+        if (previous == null)
+            return;
+
+        held = null;
+        apply(previous);
+        log.debug("Scanner prefetch totals: {} hits, {} misses.", hitCount, missCount);
+    }
+
+    /**
+     * Applies the batch held back, as finish() does, then shuts down the executor the positions are warmed on.
+     */
+    @Override
+    public void close()
+    {
+        try
+        {
+            finish();
+        }
+        finally
+        {
+            if (executor != null)
+            {
+                // Waits for any warming still running, which stops early once its batch has been applied.
+                executor.close();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * @return True if no executor is running, either because no batch has arrived yet or since close().
+     */
+    boolean isClosed()
+    {
+        return executor == null;
+    }
+
+
+    private void apply(PrefetchBuffer buffer)
+    {
+        val warmedCount = buffer.warmedCount;
+        // Scans past this point are made by the batch itself, so warming them as well would only compete with it.
+        buffer.stopWarming = true;
+        applyBatch.commandsAvailable(buffer.batch);
+        awaitWarming(buffer);
+
+        val misses = buffer.positionCount - warmedCount;
+        hitCount += warmedCount;
+        missCount += misses;
+        metrics.scannerPrefetched(warmedCount, misses);
+        spare = buffer;
+    }
+
+    private static void awaitWarming(PrefetchBuffer buffer)
+    {
+        try
+        {
+            buffer.warming.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            // Only a hint: the batch's own lookups have already run into whatever failed.
+            log.debug("Scanner prefetch failed.", e.getCause());
+        }
+    }
+
+
+    /**
+     * A copy of one batch, and the packed positions (see LongOpenHashMap.packKey(...)) it scans at, in order.
+     */
+    private static final class PrefetchBuffer implements LocationChangeListener
+    {
+        private final CommandBatch batch;
+        private final long[] positions;
+        private int positionCount;
+
+        // Written by the warming thread.
+        private volatile int warmedCount;
+        private volatile boolean stopWarming;
+        private Future<?> warming;
+
+        PrefetchBuffer(int capacity)
+        {
+            batch = new CommandBatch(capacity);
+            // A command scans at most once.
+            positions = new long[capacity];
+        }
+
+        void fill(CommandBatch commands, LocationImpl shadowLocation)
+        {
+            batch.clear();
+            for (int idx = 0; idx < commands.size(); ++idx)
+                batch.add(commands.getDirection(idx), commands.getDistance(idx));
+
+            positionCount = 0;
+            warmedCount = 0;
+            stopWarming = false;
+            shadowLocation.processBatch(batch, this);
+        }
+
+        @Override
+        public void locationChanged(double horizontalLocation, double depth)
+        {
+            positions[positionCount++] = ScannedSonarDataDb.positionKey(horizontalLocation, depth);
+        }
+
+        void warm(ScannedSonarDataDb scannedSonarDataDb)
+        {
+            for (int idx = 0; idx < positionCount && !stopWarming; ++idx)
+            {
+                val position = positions[idx];
+                scannedSonarDataDb.prefetch(LongOpenHashMap.unpackX(position), LongOpenHashMap.unpackY(position));
+                warmedCount = idx + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+
+/**
+ * Dictionary of the symbols ScannerData grids are encoded with. Each distinct symbol is given a CODE_BITS-bit
+ * code the first time it is seen, so the nine cells of a grid pack into the low 63 bits of a single long, cell 0
+ * in the lowest bits.
+ * ASCII is a fixed dictionary in which every code is its own ASCII character; other dictionaries are built up
+ * while scanner data is loaded, and hold at most MAX_SYMBOLS symbols.
+ * Adding symbols is not thread-safe; decoding only reads, so a dictionary that is no longer growing can be shared.
+ */
+final class ScannerSymbols
+{
+    static final int CODE_BITS = 7;
+    static final int MAX_SYMBOLS = 1 << CODE_BITS;
+    static final long CODE_MASK = MAX_SYMBOLS - 1;
+    static final int CELL_COUNT = ScannerData.ARRAY_ROW_MAX_SIZE * ScannerData.ARRAY_COL_MAX_SIZE;
+
+    /**
+     * Returned by pack(...) for a grid that does not fit the dictionary. Never a valid grid, which has bit 63 clear.
+     */
+    static final long NOT_PACKED = -1L;
+
+    static final ScannerSymbols ASCII = new ScannerSymbols();
+
+    static
+    {
+        for (char symbol = 0; symbol < MAX_SYMBOLS; ++symbol)
+            ASCII.codeOf(symbol);
+    }
+
+    private final char[] symbols = new char[MAX_SYMBOLS];
+    private int size = 0;
+
+    // Code + 1 of each ISO-8859-1 symbol, or 0 if it has no code yet; other symbols are looked up in 'symbols'.
+    private final byte[] latin1Codes = new byte[256];
+
+
+    /**
+     * @return Dictionary that 'data' packs with: ASCII if it can, otherwise a new dictionary of its own symbols.
+     */
+    static ScannerSymbols forGrid(CharSequence data)
+    {
+        if (ASCII.pack(data) != NOT_PACKED)
+            return ASCII;
+
+        val symbols = new ScannerSymbols();
+        symbols.pack(data);
+        return symbols;
+    }
+
+    static int codeAt(long packedCells, int cellIdx)
+    {
+        return (int) (packedCells >>> (cellIdx * CODE_BITS) & CODE_MASK);
+    }
+
+
+    /**
+     * @return The code of 'symbol', which is added to the dictionary if it is new, or -1 if the dictionary is full.
+     */
+    int codeOf(char symbol)
+    {
+        if (symbol < latin1Codes.length)
+        {
+            val code = (latin1Codes[symbol] & 0xFF) - 1;
+            if (code >= 0)
+                return code;
+        }
+        else
+        {
+            for (int code = 0; code < size; ++code)
+            {
+                if (symbols[code] == symbol)
+                    return code;
+            }
+        }
+
+        if (size == MAX_SYMBOLS)
+            return -1;
+
+        symbols[size] = symbol;
+        if (symbol < latin1Codes.length)
+            latin1Codes[symbol] = (byte) (size + 1);
+        return size++;
+    }
+
+    char symbolOf(int code)
+    {
+        return symbols[code];
+    }
+
+    /**
+     * Packs a 9-cell grid, adding any new symbols to the dictionary.
+     *
+     * @return The packed grid, or NOT_PACKED if a symbol does not fit the dictionary.
+     */
+    long pack(CharSequence cells)
+    {
+        long packedCells = 0;
+        for (int cellIdx = 0; cellIdx < CELL_COUNT; ++cellIdx)
+        {
+            val code = codeOf(cells.charAt(cellIdx));
+            if (code < 0)
+                return NOT_PACKED;
+            packedCells |= (long) code << (cellIdx * CODE_BITS);
+        }
+        return packedCells;
+    }
+
+    /**
+     * Packs a 9-cell grid, adding any new symbols to the dictionary.
+     *
+     * @return The packed grid, or NOT_PACKED if a symbol does not fit the dictionary.
+     */
+    long pack(char[] cells)
+    {
+        long packedCells = 0;
+        for (int cellIdx = 0; cellIdx < CELL_COUNT; ++cellIdx)
+        {
+            val code = codeOf(cells[cellIdx]);
+            if (code < 0)
+                return NOT_PACKED;
+            packedCells |= (long) code << (cellIdx * CODE_BITS);
+        }
+        return packedCells;
+    }
+
+    int size()
+    {
+        return size;
+    }
+}
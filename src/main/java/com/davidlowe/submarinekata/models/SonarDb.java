@@ -1,51 +1,53 @@
 package com.davidlowe.submarinekata.models;
 
-import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.TreeMap;
 
 /**
  * SonarDb represents a map of all areas scanned by a submarine sonar.
+ * This class is not thread-safe; ConcurrentSonarDb can be written by many threads at once.
  */
 @Slf4j
-@Getter
 public class SonarDb
 {
+    // Largest array most JVMs can allocate.
+    static final int MAX_ROW_WIDTH = Integer.MAX_VALUE - 8;
+
     /**
-     * Map will contain the data for the submarine's sonar scan
-     * Since we have allowed for a negative horizontal position we CANNOT use
-     * a simple String to save all the map data. In particular, what would the
-     * first character of a String represent? Horizontal position 0 or -1 or 1??
-     * Here, we have a map of (x,y) coordinates pointing to a Character that represents
-     * map data.
-     * We have NO idea how large this can get, so this data structure will ONLY contain
-     * map data (any (x,y) that does not have data is NOT inserted as a null Character,
-     * or anything else).
+     * Map data for the submarine's sonar scan.
+     * Since we have allowed for negative positions we CANNOT use a simple String or array to save all the
+     * map data, and we have NO idea how large the map can get. Instead, the map is split into fixed-size
+     * SonarTile blocks, and a tile is only allocated once a cell inside it is scanned, so large unscanned
+     * areas cost nothing. The store keeps the tiles, keyed by tile coordinate (see SonarTileStore), along with
+     * the cell count and the map's bounds.
      */
-    private final Map<Integer, Map<Integer, Character>> depth2HorizontalLocation2SonarData;
-
-    private Integer minHorizontalLocation = null;
-    private Integer minDepth = null;
-
-    private Integer maxHorizontalLocation = null;
-    private Integer maxDepth = null;
+    private final SonarTileStore store;
 
     public SonarDb()
     {
-        // Using TreeMap to ensure we can correctly retrieve data to generate a map
-        // in order from the smallest positions to the largest (HashMap itself doesn't guarantee this).
-        depth2HorizontalLocation2SonarData = new TreeMap<>();
+        this(new LocalTileStore());
+    }
+
+    /**
+     * @param store Where the map is kept, e.g. ConcurrentSonarDb's thread-safe store.
+     */
+    SonarDb(@NonNull SonarTileStore store)
+    {
+        this.store = store;
     }
 
 
     /**
-     * Inserts the specified map data into the sonar db.
+     * Inserts the specified map data into the sonar db. If the position already has data, the existing
+     * data is kept.
      *
      * @param horizontalPosition Where on the X-axis the mapData is going to be placed.
      * @param depth              Where on the Y-axis the mapData is going to be placed.
@@ -53,27 +55,58 @@ public class SonarDb
      */
     public void addScannedData(@NonNull Integer horizontalPosition, @NonNull Integer depth, char mapData)
     {
-        if (!depth2HorizontalLocation2SonarData.containsKey(depth))
-        {
-            depth2HorizontalLocation2SonarData.put(depth, new TreeMap<>());
-        }
+        store.writeCell(store.getOrCreateTile(horizontalPosition >> SonarTile.SHIFT, depth >> SonarTile.SHIFT), horizontalPosition, depth, mapData);
+        store.extendBounds(horizontalPosition, depth, horizontalPosition, depth);
+    }
 
-        val horizontalLocation2MapData = depth2HorizontalLocation2SonarData.get(depth);
+    /**
+     * Inserts a whole scan grid into the sonar db in one operation. As with addScannedData, positions that
+     * already have data keep their existing data.
+     *
+     * @param centerX     Horizontal position of the grid's center cell.
+     * @param centerY     Depth of the grid's center cell.
+     * @param scannerData Grid to insert.
+     */
+    public void addScannedBlock(int centerX, int centerY, @NonNull ScannerData scannerData)
+    {
+        // The center cell is gridSize / 2 cells right of and below the grid's top-left cell,
+        // e.g. 1 for a 3x3 grid.
+        val gridSize = ScannerData.getGridSize();
+        val startX = centerX - gridSize / 2;
+        val startY = centerY - gridSize / 2;
 
-        if (!horizontalLocation2MapData.containsKey(horizontalPosition))
+        SonarTile tile = null;
+        int tileX = 0;
+        int tileY = 0;
+        for (int row = 0; row < gridSize; ++row)
         {
-            horizontalLocation2MapData.put(horizontalPosition, mapData);
+            val y = startY + row;
+            for (int col = 0; col < gridSize; ++col)
+            {
+                val x = startX + col;
+                if (tile == null || x >> SonarTile.SHIFT != tileX || y >> SonarTile.SHIFT != tileY)
+                {
+                    tileX = x >> SonarTile.SHIFT;
+                    tileY = y >> SonarTile.SHIFT;
+                    tile = store.getOrCreateTile(tileX, tileY);
+                }
+                store.writeCell(tile, x, y, scannerData.getCell(row, col));
+            }
         }
 
-        // Update the min/max horizontal/depth positions if necessary.
-        if (minHorizontalLocation == null || horizontalPosition < minHorizontalLocation)
-            minHorizontalLocation = horizontalPosition;
-        if (minDepth == null || depth < minDepth)
-            minDepth = depth;
-        if (maxHorizontalLocation == null || horizontalPosition > maxHorizontalLocation)
-            maxHorizontalLocation = horizontalPosition;
-        if (maxDepth == null || depth > maxDepth)
-            maxDepth = depth;
+        store.extendBounds(startX, startY, startX + gridSize - 1, startY + gridSize - 1);
+    }
+
+    /**
+     * @return The map data at the specified position, or null if that position has not been scanned.
+     */
+    public Character getScannedData(int horizontalPosition, int depth)
+    {
+        val tile = store.findTile(horizontalPosition >> SonarTile.SHIFT, depth >> SonarTile.SHIFT);
+        if (tile == null)
+            return null;
+        val cell = store.readCell(tile, horizontalPosition & SonarTile.MASK, depth & SonarTile.MASK);
+        return cell < 0 ? null : (char) cell;
     }
 
     /**
@@ -81,38 +114,171 @@ public class SonarDb
      *
      * @param depth Depth of interest.
      *
-     * @return String the full horizontal size of the map, with any X coordinates
-     * that do not have data set to spaces.
+     * @return String the full horizontal size of the map (minHorizontalLocation to maxHorizontalLocation),
+     * with any X coordinates that do not have data set to spaces. Empty if nothing has been scanned.
      */
     public String getHorizontalMapDataForDepth(int depth)
     {
-        // -5 to -1 would be 6 spaces.
-        // -1 to 0 would be 2 spaces.
-        // -1 to 1 would be 3 spaces.
-        val totalSpaces = Math.abs(minHorizontalLocation) + Math.abs(maxHorizontalLocation)
-                + (minHorizontalLocation < 0 && maxHorizontalLocation >= 0 ? 1 : 0);
+        val minHorizontal = getMinHorizontalLocation();
+        val maxHorizontal = getMaxHorizontalLocation();
+        if (minHorizontal == null)
+            return "";
+
+        val mapRow = new byte[maxHorizontal - minHorizontal + 1];
+        renderRow(depth, minHorizontal, mapRow, 0, mapRow.length);
+        return toRowString(depth, minHorizontal, mapRow);
+    }
+
+    /**
+     * @return True if the map holds a cell that is not an ISO-8859-1 character. MapRenderer, which writes the map
+     * as ISO-8859-1 bytes, writes such cells as '?'; the strings returned by this class hold them as they are.
+     */
+    public boolean hasWideCells()
+    {
+        return store.hasWideCells();
+    }
 
-        val mapRow = new StringBuilder(" ".repeat(totalSpaces));
 
-        // If depth requested is not in our map at all, we'll return a string of spaces
-        // for each available horizontal position.
-        val horizontalLocation2MapData = depth2HorizontalLocation2SonarData.get(depth);
-        if (depth >= minDepth && depth <= maxDepth && horizontalLocation2MapData != null)
+    /**
+     * Renders the rectangle from (xMin, yMin) to (xMax, yMax), all inclusive, whether or not it lies within the
+     * map's bounds. Only the tiles the rectangle overlaps are looked up, so the cost is proportional to its area
+     * rather than to the size of the map.
+     *
+     * @return One string per depth from yMin to yMax, each with the cells from xMin to xMax; cells that have not
+     * been scanned are spaces.
+     * @throws IllegalArgumentException Thrown if the rectangle is empty, or too wide for a String.
+     */
+    public List<String> render(int xMin, int yMin, int xMax, int yMax)
+    {
+        checkViewport(xMin, yMin, xMax, yMax);
+
+        val rowCount = (int) Math.min((long) yMax - yMin + 1, Integer.MAX_VALUE);
+        val rows = new ArrayList<String>(Math.min(rowCount, 1024));
+        val mapRow = new byte[xMax - xMin + 1];
+        // long, so a viewport ending at Integer.MAX_VALUE terminates.
+        for (long depth = yMin; depth <= yMax; ++depth)
         {
-            // We simply go from minHorizontalLocation to maxHorizontalLocation and return the
-            // map data at that (x,y) position.
-            for (int outputIdx = 0, x = minHorizontalLocation; x <= maxHorizontalLocation; ++outputIdx, ++x)
-            {
-                val mapDataForHorizontalPosition = horizontalLocation2MapData.get(x);
-                if (mapDataForHorizontalPosition != null)
-                    mapRow.setCharAt(outputIdx, mapDataForHorizontalPosition);
-            }
+            renderRow((int) depth, xMin, mapRow, 0, mapRow.length);
+            rows.add(toRowString((int) depth, xMin, mapRow));
         }
+        return rows;
+    }
+
+    /**
+     * @throws IllegalArgumentException Thrown if the rectangle from (xMin, yMin) to (xMax, yMax) is empty, or if its
+     *                                  rows are too wide for a String.
+     */
+    static void checkViewport(int xMin, int yMin, int xMax, int yMax)
+    {
+        if (xMin > xMax || yMin > yMax || (long) xMax - xMin + 1 > MAX_ROW_WIDTH)
+        {
+            val msg = "Invalid viewport (%d,%d) to (%d,%d)".formatted(xMin, yMin, xMax, yMax);
+            log.warn(msg);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /**
+     * Copies the map cells of row 'depth', from horizontal position 'fromHorizontal' onwards, into 'destination'.
+     * Cells that have not been scanned, including any outside the map's bounds, are rendered as spaces, and cells
+     * that are not ISO-8859-1 characters as SonarTile.WIDE_CELL.
+     *
+     * @param length Number of cells to render.
+     */
+    void renderRow(int depth, int fromHorizontal, byte[] destination, int destinationOffset, int length)
+    {
+        // Copy the row out of each tile the range spans.
+        val tileY = depth >> SonarTile.SHIFT;
+        val tileRowOffset = (depth & SonarTile.MASK) << SonarTile.SHIFT;
+        // long, so a range ending at Integer.MAX_VALUE terminates.
+        long x = fromHorizontal;
+        for (int outputIdx = destinationOffset, end = destinationOffset + length; outputIdx < end; )
+        {
+            val localX = (int) x & SonarTile.MASK;
+            val tileLength = Math.min(SonarTile.SIZE - localX, end - outputIdx);
+
+            val tile = store.findTile((int) x >> SonarTile.SHIFT, tileY);
+            if (tile != null)
+                store.copyCells(tile, tileRowOffset + localX, destination, outputIdx, tileLength);
+            else
+                Arrays.fill(destination, outputIdx, outputIdx + tileLength, (byte) ' ');
+
+            x += tileLength;
+            outputIdx += tileLength;
+        }
+    }
+
+    /**
+     * @return 'mapRow', rendered by renderRow(depth, fromHorizontal, ...), as a string, with the cells it rendered as
+     * SonarTile.WIDE_CELL replaced by their characters.
+     */
+    private String toRowString(int depth, int fromHorizontal, byte[] mapRow)
+    {
+        if (!store.hasWideCells())
+            return new String(mapRow, StandardCharsets.ISO_8859_1);
+
+        val chars = new char[mapRow.length];
+        for (int idx = 0; idx < mapRow.length; ++idx)
+            chars[idx] = (char) (mapRow[idx] & 0xFF);
+
+        val tileY = depth >> SonarTile.SHIFT;
+        val tileRowOffset = (depth & SonarTile.MASK) << SonarTile.SHIFT;
+        long x = fromHorizontal;
+        for (int outputIdx = 0; outputIdx < chars.length; )
+        {
+            val localX = (int) x & SonarTile.MASK;
+            val tileLength = Math.min(SonarTile.SIZE - localX, chars.length - outputIdx);
+
+            val tile = store.findTile((int) x >> SonarTile.SHIFT, tileY);
+            if (tile != null)
+                store.copyWideCells(tile, tileRowOffset + localX, chars, outputIdx, tileLength);
+
+            x += tileLength;
+            outputIdx += tileLength;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return Number of map cells holding data.
+     */
+    public long getCellCount()
+    {
+        return store.getCellCount();
+    }
+
+    /**
+     * @return Number of tiles allocated to hold map data.
+     */
+    public int getTileCount()
+    {
+        return store.getTileCount();
+    }
+
+    public Integer getMinHorizontalLocation()
+    {
+        return store.getMinHorizontalLocation();
+    }
 
-        return mapRow.toString();
+    public Integer getMinDepth()
+    {
+        return store.getMinDepth();
     }
 
+    public Integer getMaxHorizontalLocation()
+    {
+        return store.getMaxHorizontalLocation();
+    }
 
+    public Integer getMaxDepth()
+    {
+        return store.getMaxDepth();
+    }
+
+
+    /**
+     * @return Iterator over every map row, from minDepth to maxDepth.
+     */
     public Iterator<String> getDepthIterator()
     {
         return new SonarDb.DepthIterator();
@@ -121,12 +287,14 @@ public class SonarDb
 
     private class DepthIterator implements Iterator<String>
     {
-        private int currentIndex = 0;
+        // long, so iterating up to a maxDepth of Integer.MAX_VALUE terminates.
+        private long currentDepth = getMinDepth() == null ? 0 : getMinDepth();
 
         @Override
         public boolean hasNext()
         {
-            return currentIndex < depth2HorizontalLocation2SonarData.size();
+            val maxDepthValue = getMaxDepth();
+            return maxDepthValue != null && currentDepth <= maxDepthValue;
         }
 
         @Override
@@ -136,7 +304,7 @@ public class SonarDb
             {
                 throw new NoSuchElementException();
             }
-            return getHorizontalMapDataForDepth(currentIndex++);
+            return getHorizontalMapDataForDepth((int) currentDepth++);
         }
 
         @Override
@@ -146,4 +314,111 @@ public class SonarDb
         }
     }
 
+
+    /**
+     * SonarDb's own store, for one thread at a time.
+     */
+    private static final class LocalTileStore implements SonarTileStore
+    {
+        private final LongOpenHashMap<SonarTile> tiles = new LongOpenHashMap<>();
+        private long cellCount = 0;
+        private boolean wideCells = false;
+
+        private boolean empty = true;
+        private int minHorizontalLocation;
+        private int minDepth;
+        private int maxHorizontalLocation;
+        private int maxDepth;
+
+
+        @Override
+        public SonarTile findTile(int tileX, int tileY)
+        {
+            return tiles.get(tileX, tileY);
+        }
+
+        @Override
+        public SonarTile getOrCreateTile(int tileX, int tileY)
+        {
+            var tile = tiles.get(tileX, tileY);
+            if (tile == null)
+            {
+                tile = new SonarTile();
+                tiles.put(tileX, tileY, tile);
+            }
+            return tile;
+        }
+
+        @Override
+        public void writeCell(SonarTile tile, int horizontalPosition, int depth, char mapData)
+        {
+            if (tile.setIfAbsent(horizontalPosition & SonarTile.MASK, depth & SonarTile.MASK, mapData))
+            {
+                ++cellCount;
+                wideCells |= mapData > 0xFF;
+            }
+        }
+
+        @Override
+        public boolean hasWideCells()
+        {
+            return wideCells;
+        }
+
+        @Override
+        public void extendBounds(int fromHorizontalPosition, int fromDepth, int toHorizontalPosition, int toDepth)
+        {
+            if (empty)
+            {
+                minHorizontalLocation = fromHorizontalPosition;
+                minDepth = fromDepth;
+                maxHorizontalLocation = toHorizontalPosition;
+                maxDepth = toDepth;
+                empty = false;
+            }
+            else
+            {
+                minHorizontalLocation = Math.min(minHorizontalLocation, fromHorizontalPosition);
+                minDepth = Math.min(minDepth, fromDepth);
+                maxHorizontalLocation = Math.max(maxHorizontalLocation, toHorizontalPosition);
+                maxDepth = Math.max(maxDepth, toDepth);
+            }
+        }
+
+        @Override
+        public long getCellCount()
+        {
+            return cellCount;
+        }
+
+        @Override
+        public int getTileCount()
+        {
+            return tiles.size();
+        }
+
+        @Override
+        public Integer getMinHorizontalLocation()
+        {
+            return empty ? null : minHorizontalLocation;
+        }
+
+        @Override
+        public Integer getMinDepth()
+        {
+            return empty ? null : minDepth;
+        }
+
+        @Override
+        public Integer getMaxHorizontalLocation()
+        {
+            return empty ? null : maxHorizontalLocation;
+        }
+
+        @Override
+        public Integer getMaxDepth()
+        {
+            return empty ? null : maxDepth;
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package com.davidlowe.submarinekata.models;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size square block of SonarDb map cells.
+ * Cells are stored one byte per cell in row order and start out as spaces, so a tile row can be copied
+ * straight into a rendered map row. Which cells have actually been scanned is tracked separately, one
+ * bit per cell, because a scan can legitimately contain spaces.
+ * A cell that is not an ISO-8859-1 character doesn't fit in a byte: its byte holds WIDE_CELL instead, and the
+ * character itself is kept in wideCells, which is only allocated for tiles that hold such a cell.
+ */
+final class SonarTile
+{
+    static final int SHIFT = 6;
+    static final int SIZE = 1 << SHIFT;
+    static final int MASK = SIZE - 1;
+
+    /**
+     * What a cell beyond ISO-8859-1 reads as in 'cells', as String.getBytes(ISO_8859_1) would encode it.
+     */
+    static final byte WIDE_CELL = '?';
+
+    final byte[] cells = new byte[SIZE * SIZE];
+
+    // One long per tile row; bit N is set once column N of that row has been scanned.
+    final long[] scannedRows = new long[SIZE];
+
+    // Laid out like 'cells'; 0 for every cell that fits in its byte. Null until the tile holds a wider cell.
+    char[] wideCells = null;
+
+    SonarTile()
+    {
+        Arrays.fill(cells, (byte) ' ');
+    }
+
+
+    /**
+     * Stores 'mapData' at the specified tile-local position unless that cell already holds data.
+     *
+     * @return True if the cell was empty and now holds 'mapData'.
+     */
+    boolean setIfAbsent(int localX, int localY, char mapData)
+    {
+        final long bit = 1L << localX;
+        if ((scannedRows[localY] & bit) != 0)
+            return false;
+
+        scannedRows[localY] |= bit;
+        final int idx = (localY << SHIFT) + localX;
+        if (mapData > 0xFF)
+        {
+            if (wideCells == null)
+                wideCells = new char[SIZE * SIZE];
+            wideCells[idx] = mapData;
+            cells[idx] = WIDE_CELL;
+        }
+        else
+            cells[idx] = (byte) mapData;
+        return true;
+    }
+
+    boolean isScanned(int localX, int localY)
+    {
+        return (scannedRows[localY] & (1L << localX)) != 0;
+    }
+
+    char get(int localX, int localY)
+    {
+        final int idx = (localY << SHIFT) + localX;
+        if (wideCells != null && wideCells[idx] != 0)
+            return wideCells[idx];
+        return (char) (cells[idx] & 0xFF);
+    }
+}
@@ -0,0 +1,85 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+
+/**
+ * Where a SonarDb keeps its map: the SonarTiles, keyed by tile coordinate (a map coordinate shifted right by
+ * SonarTile.SHIFT), the number of cells holding data, and the map's bounds.
+ * SonarDb does the map arithmetic and calls these hooks for every tile, cell and bounds access, so a store decides
+ * how they are shared: SonarDb's own store is not thread-safe, ConcurrentSonarDb's can be used by many threads at once.
+ */
+interface SonarTileStore
+{
+    /**
+     * @return The tile at (tileX, tileY), or null if none has been allocated.
+     */
+    SonarTile findTile(int tileX, int tileY);
+
+    /**
+     * @return The tile at (tileX, tileY), allocated first if there is none yet.
+     */
+    SonarTile getOrCreateTile(int tileX, int tileY);
+
+    /**
+     * Sets the cell at the map position (horizontalPosition, depth), which lies in 'tile', unless it already has data.
+     */
+    void writeCell(SonarTile tile, int horizontalPosition, int depth, char mapData);
+
+    /**
+     * @return The cell's character, or -1 if the cell has not been scanned.
+     */
+    default int readCell(SonarTile tile, int localX, int localY)
+    {
+        return tile.isScanned(localX, localY) ? tile.get(localX, localY) : -1;
+    }
+
+    /**
+     * Copies cells as bytes; a cell that is not an ISO-8859-1 character is copied as SonarTile.WIDE_CELL.
+     */
+    default void copyCells(SonarTile tile, int tileOffset, byte[] destination, int destinationOffset, int length)
+    {
+        System.arraycopy(tile.cells, tileOffset, destination, destinationOffset, length);
+    }
+
+    /**
+     * Overwrites the characters in 'destination' of those cells copyCells(...) copied as SonarTile.WIDE_CELL
+     * because they are not ISO-8859-1 characters, leaving the others as they are.
+     */
+    default void copyWideCells(SonarTile tile, int tileOffset, char[] destination, int destinationOffset, int length)
+    {
+        val wideCells = tile.wideCells;
+        if (wideCells == null)
+            return;
+
+        for (int idx = 0; idx < length; ++idx)
+        {
+            if (wideCells[tileOffset + idx] != 0)
+                destination[destinationOffset + idx] = wideCells[tileOffset + idx];
+        }
+    }
+
+    /**
+     * @return True once a cell that is not an ISO-8859-1 character has been written.
+     */
+    boolean hasWideCells();
+
+    /**
+     * Updates the min/max horizontal/depth positions if necessary.
+     */
+    void extendBounds(int fromHorizontalPosition, int fromDepth, int toHorizontalPosition, int toDepth);
+
+    long getCellCount();
+
+    int getTileCount();
+
+    /**
+     * @return The bound, or null if nothing has been scanned; likewise for the other bounds.
+     */
+    Integer getMinHorizontalLocation();
+
+    Integer getMinDepth();
+
+    Integer getMaxHorizontalLocation();
+
+    Integer getMaxDepth();
+}
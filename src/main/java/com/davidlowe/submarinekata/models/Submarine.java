@@ -1,26 +1,109 @@
 package com.davidlowe.submarinekata.models;
 
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+
 /**
  * The Submarine class represents the submarine itself.
- * Its current location is updated via event processing of CommandAvailableEvent objects.
+ * Its current location is updated via event processing of CommandAvailableEvent objects, or via batches of
+ * commands when commands are read from a file.
  */
+@Slf4j
 @Getter
-@RequiredArgsConstructor
 @Component
-public class Submarine
+public class Submarine implements CommandBatchListener
 {
     private final Location currentLocation;
-    private final SonarDb sonarDb = new SonarDb();
+    private final SonarDb sonarDb;
+
+    private final ScannedSonarDataDb scannedSonarDataDb;
+
+    // Created once, so dispatching a batch does not allocate a new method reference.
+    @Getter(AccessLevel.NONE)
+    private final LocationChangeListener scanAtLocation = this::scanAt;
+
+    @Getter(AccessLevel.NONE)
+    private final PipelineMetrics metrics;
+
+    // Running totals of scanAt(...) calls, so a ScanApplied event can report the scans one batch made.
+    @Getter(AccessLevel.NONE)
+    private long scannerLookups;
+    @Getter(AccessLevel.NONE)
+    private long scannerHits;
+
+    /**
+     * Commands received since enableCommandHistory() was called, or null if the history is not enabled.
+     */
+    private CommandHistory commandHistory = null;
+    @Getter(AccessLevel.NONE)
+    private double historyStartHorizontal;
+    @Getter(AccessLevel.NONE)
+    private double historyStartDepth;
+    @Getter(AccessLevel.NONE)
+    private double historyStartAim;
+
+    /**
+     * Warms scanner data a batch ahead once enableScannerPrefetch() was called, or null if prefetching is not enabled.
+     */
+    private ScannerPrefetcher scannerPrefetcher = null;
+
+    /**
+     * Creates a submarine with its own, empty ScannedSonarDataDb.
+     */
+    public Submarine(@NonNull Location currentLocation)
+    {
+        this(currentLocation, new ScannedSonarDataDb());
+    }
+
+    /**
+     * Creates a submarine with its own, empty ScannedSonarDataDb, recording its work in 'metrics'.
+     */
+    @Autowired
+    public Submarine(@NonNull Location currentLocation, @NonNull PipelineMetrics metrics)
+    {
+        this(currentLocation, new ScannedSonarDataDb(metrics), new SonarDb(), metrics);
+    }
+
+    /**
+     * Creates a submarine that takes its scans from 'scannedSonarDataDb', which may be shared with other submarines
+     * (see ScannedSonarDataDb.makeReadOnly()).
+     */
+    public Submarine(@NonNull Location currentLocation, @NonNull ScannedSonarDataDb scannedSonarDataDb)
+    {
+        this(currentLocation, scannedSonarDataDb, new SonarDb());
+    }
+
+    /**
+     * Creates a submarine that adds its scans to 'sonarDb'. Submarines running on different threads can only share
+     * a ConcurrentSonarDb.
+     */
+    public Submarine(@NonNull Location currentLocation, @NonNull ScannedSonarDataDb scannedSonarDataDb, @NonNull SonarDb sonarDb)
+    {
+        this(currentLocation, scannedSonarDataDb, sonarDb, PipelineMetrics.NOOP);
+    }
 
-    private final ScannedSonarDataDb scannedSonarDataDb = new ScannedSonarDataDb();
+    public Submarine(@NonNull Location currentLocation, @NonNull ScannedSonarDataDb scannedSonarDataDb, @NonNull SonarDb sonarDb, @NonNull PipelineMetrics metrics)
+    {
+        this.currentLocation = currentLocation;
+        this.scannedSonarDataDb = scannedSonarDataDb;
+        this.sonarDb = sonarDb;
+        this.metrics = metrics;
+        metrics.monitor(sonarDb);
+    }
 
     /**
      * Processes a CommandAvailableEvent, which could change the submarine's current location.
@@ -30,46 +113,219 @@ public class Submarine
     @EventListener
     public void commandAvailable(@NonNull CommandAvailableEvent event)
     {
-        if (currentLocation.processCommand(event.getCommand()))
+        commandsFinished();
+        val scanEvent = new PipelineEvents.ScanApplied();
+        scanEvent.begin();
+        val lookupsBefore = scannerLookups;
+        val hitsBefore = scannerHits;
+        val startNanos = System.nanoTime();
+        processCommand(event.getCommand());
+        metrics.commandProcessed(System.nanoTime() - startNanos);
+        commitScan(scanEvent, 1, lookupsBefore, hitsBefore);
+    }
+
+    /**
+     * Processes a batch of commands in order, exactly as if each had arrived as a CommandAvailableEvent.
+     * With scanner prefetching enabled, the batch is processed once the next one arrives or commandsFinished() is
+     * called.
+     *
+     * @param commands Commands to process.
+     */
+    @Override
+    public void commandsAvailable(@NonNull CommandBatch commands)
+    {
+        if (scannerPrefetcher != null)
+            scannerPrefetcher.commandsAvailable(commands);
+        else
+            applyBatch(commands);
+    }
+
+    /**
+     * Processes the batch held back by scanner prefetching, if any, and stops the prefetcher's warming threads until
+     * more batches arrive.
+     */
+    @Override
+    public void commandsFinished()
+    {
+        if (scannerPrefetcher != null)
+            scannerPrefetcher.close();
+    }
+
+    /**
+     * Replays a whole command file with 'trajectoryEngine', with the same effect as receiving its commands
+     * through commandAvailable(...) or commandsAvailable(...).
+     *
+     * @return Number of commands replayed.
+     * @throws IOException    Thrown if the file cannot be read.
+     * @throws ParseException Thrown if the file contains an invalid command, in which case nothing is replayed.
+     */
+    public long replay(@NonNull TrajectoryEngine trajectoryEngine, @NonNull File commandFile)
+            throws IOException, ParseException
+    {
+        commandsFinished();
+        return trajectoryEngine.run(commandFile, currentLocation, scanAtLocation);
+    }
+
+    /**
+     * Starts warming the scanner data each batch passed to commandsAvailable(...) scans at, on a virtual thread
+     * while the batch before it is processed (see ScannerPrefetcher). Only pays off when the scanner data is read or
+     * decoded on demand, e.g. after ScannedSonarDataDb.loadDataLazily(...).
+     */
+    public void enableScannerPrefetch()
+    {
+        // Closes the prefetcher being replaced.
+        commandsFinished();
+        scannerPrefetcher = new ScannerPrefetcher(scannedSonarDataDb, currentLocation, this::applyBatch, metrics);
+    }
+
+    /**
+     * Starts recording every command received through commandAvailable(...) or commandsAvailable(...), so that
+     * getLocationAfter(...) and editCommand(...) can be used. Commands replayed with replay(...) are not recorded.
+     * Calling this again discards the recorded history and starts a new one from the current location.
+     */
+    public void enableCommandHistory()
+    {
+        commandsFinished();
+        commandHistory = new CommandHistory();
+        historyStartHorizontal = currentLocation.getHorizontalLocation();
+        historyStartDepth = currentLocation.getDepth();
+        historyStartAim = currentLocation.getAim();
+    }
+
+    /**
+     * @param commandIndex 0-based index of a recorded command, or -1 for the location the history started at.
+     *
+     * @return The submarine's location right after the command at 'commandIndex', found in O(log n) time.
+     * @throws IllegalStateException     Thrown if the command history is not enabled.
+     * @throws IndexOutOfBoundsException Thrown if there is no recorded command at 'commandIndex'.
+     */
+    public Location getLocationAfter(int commandIndex)
+    {
+        return applyHistory(requireCommandHistory().transformOf(commandIndex + 1));
+    }
+
+    /**
+     * Replaces a recorded command, in O(log n) time. Only the history changes: the submarine does not move, and
+     * the sonar map keeps the scans made along the original route.
+     *
+     * @param commandIndex 0-based index of the recorded command to replace.
+     * @param command      Replacement command.
+     *
+     * @return Where the submarine would be after all recorded commands, with the edit applied.
+     * @throws IllegalStateException     Thrown if the command history is not enabled.
+     * @throws IndexOutOfBoundsException Thrown if there is no recorded command at 'commandIndex'.
+     */
+    public Location editCommand(int commandIndex, @NonNull Command command)
+    {
+        val history = requireCommandHistory();
+        history.set(commandIndex, command.direction(), command.distance());
+        return applyHistory(history.transformOf(history.size()));
+    }
+
+    public void printMap()
+    {
+        printMap(System.out);
+    }
+
+    /**
+     * Prints the whole map to 'out', one line per depth, rendered with a MapRenderer, unless the map holds cells
+     * MapRenderer can't write as they are, which are printed through 'out''s charset.
+     */
+    public void printMap(@NonNull PrintStream out)
+    {
+        if (sonarDb.hasWideCells())
+        {
+            val depthItor = sonarDb.getDepthIterator();
+            while (depthItor.hasNext())
+                out.println(depthItor.next());
+            out.flush();
+            return;
+        }
+
+        try
+        {
+            new MapRenderer(sonarDb).render(Channels.newChannel(out));
+        }
+        catch (IOException e)
+        {
+            // PrintStream reports its own errors through checkError() rather than throwing.
+            throw new UncheckedIOException(e);
+        }
+        out.flush();
+    }
+
+
+    private void applyBatch(CommandBatch commands)
+    {
+        val scanEvent = new PipelineEvents.ScanApplied();
+        scanEvent.begin();
+        val lookupsBefore = scannerLookups;
+        val hitsBefore = scannerHits;
+        val startNanos = System.nanoTime();
+        currentLocation.processBatch(commands, scanAtLocation);
+        metrics.batchProcessed(System.nanoTime() - startNanos);
+        commitScan(scanEvent, commands.size(), lookupsBefore, hitsBefore);
+        if (commandHistory != null)
         {
-            // Command changed the submarine's location, so we fill in our map using
-            // the scanned sonar data.
-            val scannerData = scannedSonarDataDb.getScannerKey2ScannerData(currentLocation.getHorizontalLocation(), currentLocation.getDepth());
-            if (scannerData != null)
-            {
-                // subCenterLocation will contain sub's vertical and horizontal position at the center of the ScannerData.
-                val subCenterLocation = ScannerData.getGridSize() / 2;
-
-                // Sub is centered in the grid, so the starting real world depth is
-                // above the sub by subCenterLocation.
-                // Example:
-                //    Grid of 3 means the sub's center location is 3 / 2 = 1 for mapping purposes (which is ints for (x,y))
-                var realWorldDepth = ((int) currentLocation.getDepth()) - subCenterLocation;
-
-                val rowItor = scannerData.getRowIterator();
-                while (rowItor.hasNext())
-                {
-                    val row = rowItor.next();
-
-                    for (int idx = 0, realWorldHorizontalPos = ((int) currentLocation.getHorizontalLocation()) - subCenterLocation;
-                         idx < ScannerData.getGridSize();
-                         ++idx, ++realWorldHorizontalPos)
-                    {
-                        sonarDb.addScannedData(realWorldHorizontalPos, realWorldDepth, row.charAt(idx));
-                    }
-
-                    ++realWorldDepth;
-                }
-            }
+            for (int idx = 0; idx < commands.size(); ++idx)
+                commandHistory.add(commands.getDirection(idx), commands.getDistance(idx));
         }
     }
 
-    public void printMap()
+    private void processCommand(Command command)
+    {
+        if (currentLocation.processCommand(command))
+            scanAt(currentLocation.getHorizontalLocation(), currentLocation.getDepth());
+        if (commandHistory != null)
+            commandHistory.add(command.direction(), command.distance());
+    }
+
+    private void commitScan(PipelineEvents.ScanApplied scanEvent, int commandCount, long lookupsBefore, long hitsBefore)
+    {
+        scanEvent.end();
+        if (scanEvent.shouldCommit())
+        {
+            scanEvent.commandCount = commandCount;
+            scanEvent.lookups = scannerLookups - lookupsBefore;
+            scanEvent.hits = scannerHits - hitsBefore;
+            scanEvent.commit();
+        }
+    }
+
+    private CommandHistory requireCommandHistory()
+    {
+        if (commandHistory == null)
+        {
+            val msg = "Command history is not enabled.";
+            log.warn(msg);
+            throw new IllegalStateException(msg);
+        }
+        return commandHistory;
+    }
+
+    private Location applyHistory(LocationTransform transform)
+    {
+        val location = new LocationImpl();
+        location.setConfigValue(transform.applyToHorizontal(historyStartHorizontal),
+                                transform.applyToDepth(historyStartDepth, historyStartAim),
+                                transform.applyToAim(historyStartAim));
+        return location;
+    }
+
+    /**
+     * Called after a command changed the submarine's location, so we fill in our map using
+     * the scanned sonar data.
+     */
+    private void scanAt(double horizontalLocation, double depth)
     {
-        val depthItor = sonarDb.getDepthIterator();
-        while (depthItor.hasNext())
+        val scannerData = scannedSonarDataDb.getScannerKey2ScannerData(horizontalLocation, depth);
+        metrics.scannerLookup(scannerData != null);
+        ++scannerLookups;
+        if (scannerData != null)
         {
-            System.out.println(depthItor.next());
+            ++scannerHits;
+            // The sub is centered in the scanned grid.
+            sonarDb.addScannedBlock((int) horizontalLocation, (int) depth, scannerData);
         }
     }
 }
@@ -0,0 +1,336 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Replays a command file in parallel.
+ * The file is split into chunks of about chunkSize bytes at line boundaries, and every chunk is parsed and reduced
+ * to a LocationTransform on the ForkJoinPool. A sequential scan over the (few) chunk transforms then gives the
+ * Location at the start of every chunk, after which the chunks are replayed again in parallel to produce their
+ * visited positions, which are handed to the listener in file order.
+ * <p>
+ * Accuracy: a chunk's commands are replayed from a start Location computed by composing transforms rather than
+ * by applying every earlier command in turn, so the floating-point operations happen in a different order than in
+ * LocationImpl. When every distance is an integer and every intermediate value stays below 2^53 in magnitude, all
+ * of those operations are exact and the results are bit-for-bit identical to LocationImpl. Otherwise they can differ
+ * by rounding error only, which grows with the number of commands: for decimal distances tests hold results to a
+ * relative error of 1e-9 of the largest magnitude involved.
+ * <p>
+ * As with CommandFactory, a "q" line ends the replay. Unlike CommandFactory, the whole file is validated before
+ * anything is emitted, so an invalid line throws without calling the listener or changing the Location.
+ */
+@Slf4j
+public final class TrajectoryEngine
+{
+    static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+    // Longest line accepted when looking for a chunk boundary; matches MappedLineReader's limit.
+    private static final int MAX_LINE_LENGTH = 64 << 10;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public TrajectoryEngine(@NonNull ForkJoinPool pool)
+    {
+        this(pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    TrajectoryEngine(@NonNull ForkJoinPool pool, int chunkSize)
+    {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Invalid chunk size %d".formatted(chunkSize));
+
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+
+    /**
+     * Applies every command in 'commandFile' to 'location'. Only the transforms are computed, so this takes
+     * a single parallel pass over the file.
+     *
+     * @return Number of commands applied.
+     * @throws IOException    Thrown if the file cannot be read.
+     * @throws ParseException Thrown if the file contains an invalid command. 'location' is not changed.
+     */
+    public long run(@NonNull File commandFile, @NonNull Location location)
+            throws IOException, ParseException
+    {
+        return run(commandFile, location, null);
+    }
+
+    /**
+     * Applies every command in 'commandFile' to 'location', calling 'listener' in file order after every command
+     * that changed the location, exactly as Location.processBatch(...) does.
+     *
+     * @return Number of commands applied.
+     * @throws IOException    Thrown if the file cannot be read.
+     * @throws ParseException Thrown if the file contains an invalid command. 'location' is not changed and
+     *                        'listener' is not called.
+     */
+    public long run(@NonNull File commandFile, @NonNull Location location, LocationChangeListener listener)
+            throws IOException, ParseException
+    {
+        try (val channel = FileChannel.open(commandFile.toPath(), StandardOpenOption.READ))
+        {
+            val boundaries = findChunkBoundaries(channel);
+            val chunkCount = boundaries.length - 1;
+
+            // Pass 1: reduce every chunk to its transform.
+            val summaryTasks = new ArrayList<Callable<ChunkSummary>>(chunkCount);
+            for (int idx = 0; idx < chunkCount; ++idx)
+            {
+                val chunkStart = boundaries[idx];
+                val chunkEnd = boundaries[idx + 1];
+                summaryTasks.add(() -> summarize(channel, chunkStart, chunkEnd));
+            }
+            val summaries = invokeAll(summaryTasks);
+
+            // Scan: the Location at the start of every chunk, up to the first chunk that ends the replay.
+            val startHorizontal = new double[chunkCount + 1];
+            val startDepth = new double[chunkCount + 1];
+            val startAim = new double[chunkCount + 1];
+            startHorizontal[0] = location.getHorizontalLocation();
+            startDepth[0] = location.getDepth();
+            startAim[0] = location.getAim();
+            long lineCount = 0;
+            long commandCount = 0;
+            int usedChunks = 0;
+            while (usedChunks < chunkCount)
+            {
+                val summary = summaries.get(usedChunks);
+                if (summary.invalidLine != null)
+                    throw CommandParser.parseException(summary.invalidLine, lineCount + summary.lineCount);
+
+                val transform = summary.transform;
+                startHorizontal[usedChunks + 1] = transform.applyToHorizontal(startHorizontal[usedChunks]);
+                startDepth[usedChunks + 1] = transform.applyToDepth(startDepth[usedChunks], startAim[usedChunks]);
+                startAim[usedChunks + 1] = transform.applyToAim(startAim[usedChunks]);
+                lineCount += summary.lineCount;
+                commandCount += summary.commandCount;
+                ++usedChunks;
+                if (summary.quit)
+                    break;
+            }
+
+            // Pass 2: replay the chunks from their start Locations, a window of chunks at a time so only a
+            // bounded number of chunks' positions are held in memory.
+            if (listener != null)
+            {
+                val windowSize = Math.max(1, pool.getParallelism());
+                for (int windowStart = 0; windowStart < usedChunks; windowStart += windowSize)
+                {
+                    val replayTasks = new ArrayList<Callable<ChunkPositions>>(windowSize);
+                    for (int idx = windowStart; idx < Math.min(windowStart + windowSize, usedChunks); ++idx)
+                    {
+                        val chunk = idx;
+                        replayTasks.add(() -> replay(channel, boundaries[chunk], boundaries[chunk + 1],
+                                                     startHorizontal[chunk], startDepth[chunk], startAim[chunk]));
+                    }
+                    for (val positions : invokeAll(replayTasks))
+                    {
+                        for (int idx = 0; idx < positions.count; ++idx)
+                            listener.locationChanged(positions.horizontal[idx], positions.depth[idx]);
+                    }
+                }
+            }
+
+            location.setConfigValue(startHorizontal[usedChunks], startDepth[usedChunks], startAim[usedChunks]);
+            log.info("Replayed {} commands from \"{}\" in {} chunks.", commandCount, commandFile.getAbsolutePath(), usedChunks);
+            return commandCount;
+        }
+    }
+
+
+    /**
+     * @return Chunk start offsets, followed by the file size. Every chunk starts at the beginning of a line.
+     */
+    private long[] findChunkBoundaries(FileChannel channel)
+            throws IOException
+    {
+        val fileSize = channel.size();
+        var boundaries = new long[16];
+        int count = 0;
+        boundaries[count++] = 0;
+
+        val buffer = ByteBuffer.allocate(MAX_LINE_LENGTH + 1);
+        long position = 0;
+        while (position < fileSize)
+        {
+            position = position + chunkSize >= fileSize ? fileSize : nextLineStart(channel, buffer, position + chunkSize, fileSize);
+            if (count == boundaries.length)
+                boundaries = Arrays.copyOf(boundaries, count * 2);
+            boundaries[count++] = position;
+        }
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    /**
+     * @return Offset of the first line that starts after 'from'.
+     */
+    private static long nextLineStart(FileChannel channel, ByteBuffer buffer, long from, long fileSize)
+            throws IOException
+    {
+        buffer.clear();
+        while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) > 0)
+            ;
+        buffer.flip();
+
+        for (int idx = 0; idx < buffer.limit(); ++idx)
+        {
+            val ch = buffer.get(idx);
+            if (ch == '\n')
+                return from + idx + 1;
+            if (ch == '\r')
+                return from + idx + (idx + 1 < buffer.limit() && buffer.get(idx + 1) == '\n' ? 2 : 1);
+        }
+
+        if (from + buffer.limit() >= fileSize)
+            return fileSize;
+        val msg = "Line at offset %d is longer than %d bytes".formatted(from, MAX_LINE_LENGTH);
+        log.warn(msg);
+        throw new IOException(msg);
+    }
+
+
+    private static ChunkSummary summarize(FileChannel channel, long chunkStart, long chunkEnd)
+            throws IOException
+    {
+        val summary = new ChunkSummary();
+        val parser = new CommandParser();
+        // Folded from the origin, so where the chunk's commands take it is their transform.
+        val fold = new LocationImpl();
+        try (val reader = new MappedLineReader(channel, chunkStart, chunkEnd))
+        {
+            CharSequence line;
+            while ((line = reader.readLineSlice()) != null)
+            {
+                ++summary.lineCount;
+                if (CommandFactory.isQuitCommand(line))
+                {
+                    summary.quit = true;
+                    break;
+                }
+
+                try
+                {
+                    parser.parse(line, 0);
+                }
+                catch (ParseException e)
+                {
+                    // Reported with its line number once the line counts of the earlier chunks are known.
+                    summary.invalidLine = line.toString();
+                    break;
+                }
+
+                fold.step(parser.getDirection(), parser.getDistance());
+                ++summary.commandCount;
+            }
+        }
+        summary.transform = LocationTransform.fromOrigin(fold);
+        return summary;
+    }
+
+    private static ChunkPositions replay(FileChannel channel, long chunkStart, long chunkEnd,
+                                         double horizontal, double depth, double aim)
+            throws IOException, ParseException
+    {
+        // A short command line is about 8 bytes, so this rarely has to grow.
+        val positions = new ChunkPositions((int) Math.min(Integer.MAX_VALUE - 8, (chunkEnd - chunkStart) / 8 + 16));
+        val parser = new CommandParser();
+        val location = new LocationImpl();
+        location.setConfigValue(horizontal, depth, aim);
+        try (val reader = new MappedLineReader(channel, chunkStart, chunkEnd))
+        {
+            CharSequence line;
+            while ((line = reader.readLineSlice()) != null && !CommandFactory.isQuitCommand(line))
+            {
+                parser.parse(line, 0);
+                if (location.step(parser.getDirection(), parser.getDistance()))
+                    positions.add(location.getHorizontalLocation(), location.getDepth());
+            }
+        }
+        return positions;
+    }
+
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks)
+            throws IOException, ParseException
+    {
+        val results = new ArrayList<T>(tasks.size());
+        try
+        {
+            for (val future : pool.invokeAll(tasks))
+                results.add(future.get());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying commands", e);
+        }
+        catch (ExecutionException e)
+        {
+            switch (e.getCause())
+            {
+                case IOException ioException -> throw ioException;
+                case ParseException parseException -> throw parseException;
+                case RuntimeException runtimeException -> throw runtimeException;
+                case Error error -> throw error;
+                default -> throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+
+    private static class ChunkSummary
+    {
+        LocationTransform transform;
+        long lineCount;
+        long commandCount;
+        boolean quit;
+        String invalidLine;
+    }
+
+    /**
+     * Growable (horizontal, depth) pairs of the positions visited in a chunk.
+     */
+    private static class ChunkPositions
+    {
+        double[] horizontal;
+        double[] depth;
+        int count;
+
+        ChunkPositions(int initialCapacity)
+        {
+            horizontal = new double[initialCapacity];
+            depth = new double[initialCapacity];
+        }
+
+        void add(double horizontalLocation, double depthLocation)
+        {
+            if (count == horizontal.length)
+            {
+                horizontal = Arrays.copyOf(horizontal, count * 2);
+                depth = Arrays.copyOf(depth, count * 2);
+            }
+            horizontal[count] = horizontalLocation;
+            depth[count] = depthLocation;
+            ++count;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.davidlowe.submarinekata;
+
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.logging.LoggingMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsConfigurationTest
+{
+    private final MetricsConfiguration configuration = new MetricsConfiguration();
+
+    @Test
+    void meterRegistry_logging_logsMetrics()
+    {
+        val registry = configuration.meterRegistry("logging", Duration.ofMinutes(1));
+        assertInstanceOf(LoggingMeterRegistry.class, registry);
+        registry.close();
+    }
+
+    @Test
+    void meterRegistry_none_recordsNothing()
+    {
+        val registry = configuration.meterRegistry("none", Duration.ofMinutes(1));
+        assertInstanceOf(CompositeMeterRegistry.class, registry);
+        registry.counter("test").increment();
+        assertEquals(0.0, registry.counter("test").count());
+    }
+
+    @Test
+    void meterRegistry_unknownBackend_throws()
+    {
+        assertThrows(IllegalArgumentException.class, () -> configuration.meterRegistry("prometheus", Duration.ofMinutes(1)));
+    }
+}
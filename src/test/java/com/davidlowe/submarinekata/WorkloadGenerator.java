@@ -0,0 +1,292 @@
+package com.davidlowe.submarinekata;
+
+import com.davidlowe.submarinekata.models.LongOpenHashMap;
+import lombok.Getter;
+import lombok.val;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates reproducible, arbitrarily large workloads: a command file, and scanner-data JSON that covers the
+ * route those commands steer. Everything generated is a function of the constructor arguments only, so the same
+ * seed always gives byte-identical files, and writeScannerData(...) matches writeCommands(...) without reading it.
+ * <p>
+ * Routes sweep back and forth across a box 'width' wide and 'depthRange' deep (overshooting it by at most one
+ * command), so however many commands are generated, the map and scanner data stay bounded by the box's area.
+ * Distances are integers, so every position is exact. Scanner cells are a fixed terrain pattern, so overlapping
+ * scans agree.
+ * <p>
+ * From the command line, with the test classpath:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.davidlowe.submarinekata.WorkloadGenerator \
+ *       -Dexec.args="commands.txt scanner-data.json 100000000 42"
+ * </pre>
+ */
+@Getter
+public class WorkloadGenerator
+{
+    public static final int DEFAULT_WIDTH = 1000;
+    public static final int DEFAULT_DEPTH_RANGE = 500;
+
+    private static final int MAX_DISTANCE = 9;
+    private static final int MAX_AIM = 3;
+    private static final String TERRAIN = "-+*.#=%.: ";
+
+    private final long seed;
+    private final int width;
+    private final int depthRange;
+    /**
+     * Fraction (0 to 1) of the route's scan positions that have scanner data.
+     */
+    private final double density;
+    /**
+     * Number of extra scanner entries placed off the route, as a fraction of the entries on it.
+     */
+    private final double noise;
+
+    public WorkloadGenerator(long seed)
+    {
+        this(seed, DEFAULT_WIDTH, DEFAULT_DEPTH_RANGE, 1.0, 0.0);
+    }
+
+    public WorkloadGenerator(long seed, int width, int depthRange, double density, double noise)
+    {
+        if (width <= 0 || depthRange <= 0 || density < 0 || density > 1 || noise < 0)
+            throw new IllegalArgumentException("Invalid workload width %d, depth range %d, density %f or noise %f".formatted(width, depthRange, density, noise));
+
+        this.seed = seed;
+        this.width = width;
+        this.depthRange = depthRange;
+        this.density = density;
+        this.noise = noise;
+    }
+
+
+    /**
+     * Writes 'commandCount' commands, one per line, starting from location (0, 0) with aim 0.
+     */
+    public void writeCommands(Path commandFile, long commandCount)
+            throws IOException
+    {
+        // Every line is one of a few dozen, so render them all once.
+        val forwardLines = new byte[2 * MAX_DISTANCE + 1][];
+        for (int distance = -MAX_DISTANCE; distance <= MAX_DISTANCE; ++distance)
+            forwardLines[distance + MAX_DISTANCE] = ("forward " + distance + "\n").getBytes(StandardCharsets.US_ASCII);
+        val upLine = "up 1\n".getBytes(StandardCharsets.US_ASCII);
+        val downLine = "down 1\n".getBytes(StandardCharsets.US_ASCII);
+
+        val route = new Route();
+        try (val out = new BufferedOutputStream(Files.newOutputStream(commandFile), 1 << 16))
+        {
+            for (long idx = 0; idx < commandCount; ++idx)
+            {
+                route.next();
+                if (route.forward != 0)
+                    out.write(forwardLines[route.forward + MAX_DISTANCE]);
+                else
+                    out.write(route.aimChange > 0 ? downLine : upLine);
+            }
+        }
+    }
+
+    /**
+     * Writes scanner-data JSON for the route of the first 'commandCount' commands written by writeCommands(...).
+     *
+     * @return Number of scanner entries written.
+     */
+    public long writeScannerData(Path scannerFile, long commandCount)
+            throws IOException
+    {
+        val positions = routePositions(commandCount);
+        val random = new SplittableRandom(seed + 1);
+        val written = new LongOpenHashMap<Boolean>();
+        long entryCount = 0;
+        try (val out = Files.newBufferedWriter(scannerFile, StandardCharsets.US_ASCII))
+        {
+            out.write('{');
+            for (int idx = 0; idx < positions.size; ++idx)
+            {
+                if (random.nextDouble() < density)
+                {
+                    writeEntry(out, positions.keys[idx], entryCount++ == 0);
+                    written.put(positions.keys[idx], Boolean.TRUE);
+                }
+            }
+
+            // Decoys: scanner data the route never passes, around and inside the box.
+            val decoyCount = Math.round(entryCount * noise);
+            val maxAttempts = decoyCount * 20 + 100;
+            for (long decoys = 0, attempts = 0; decoys < decoyCount && attempts < maxAttempts; ++attempts)
+            {
+                val key = LongOpenHashMap.packKey(random.nextInt(-width / 2, width + width / 2), random.nextInt(-depthRange / 2, depthRange + depthRange / 2));
+                if (positions.visited.get(key) == null && written.get(key) == null)
+                {
+                    writeEntry(out, key, entryCount++ == 0);
+                    written.put(key, Boolean.TRUE);
+                    ++decoys;
+                }
+            }
+            out.write('}');
+        }
+        return entryCount;
+    }
+
+    /**
+     * @return Every distinct (horizontal, depth) position the submarine scans at while following the first
+     * 'commandCount' commands, as LongOpenHashMap.packKey(...) keys in the order they are first visited.
+     */
+    public long[] routeScanPositions(long commandCount)
+    {
+        val positions = routePositions(commandCount);
+        return Arrays.copyOf(positions.keys, positions.size);
+    }
+
+
+    private Positions routePositions(long commandCount)
+    {
+        val positions = new Positions();
+        val route = new Route();
+        for (long idx = 0; idx < commandCount; ++idx)
+        {
+            route.next();
+            // Every generated command changes the location, so the submarine scans after each one.
+            positions.add(LongOpenHashMap.packKey((int) route.horizontal, (int) route.depth));
+        }
+        return positions;
+    }
+
+    private static void writeEntry(BufferedWriter out, long key, boolean first)
+            throws IOException
+    {
+        val x = LongOpenHashMap.unpackX(key);
+        val y = LongOpenHashMap.unpackY(key);
+        if (!first)
+            out.write(',');
+        out.write("\"(" + x + "," + y + ")\":[");
+        for (int row = -1; row <= 1; ++row)
+        {
+            for (int col = -1; col <= 1; ++col)
+            {
+                if (row != -1 || col != -1)
+                    out.write(',');
+                out.write('"');
+                out.write(terrainAt(x + col, y + row));
+                out.write('"');
+            }
+        }
+        out.write(']');
+    }
+
+    private static char terrainAt(int x, int y)
+    {
+        var hash = x * 0x9E3779B9 + y * 0x85EBCA6B;
+        hash ^= hash >>> 15;
+        return TERRAIN.charAt(Math.floorMod(hash, TERRAIN.length()));
+    }
+
+
+    /**
+     * The generated route, one command at a time. Forward moves sweep the submarine back and forth across the box;
+     * aim changes steer it up or down towards whichever edge of the box it is heading for.
+     */
+    private class Route
+    {
+        private final SplittableRandom random = new SplittableRandom(seed);
+
+        long horizontal = 0;
+        long depth = 0;
+        int aim = 0;
+        private int heading = 1;
+        private int depthHeading = 1;
+
+        // The last command: a forward distance, or 0 with a +1/-1 aim change.
+        int forward;
+        int aimChange;
+
+        void next()
+        {
+            if (horizontal >= width)
+                heading = -1;
+            else if (horizontal <= 0)
+                heading = 1;
+            if (depth >= depthRange)
+                depthHeading = -1;
+            else if (depth <= 0)
+                depthHeading = 1;
+            else if (random.nextInt(100) == 0)
+                depthHeading = -depthHeading;
+
+            // Depth changes by aim * forward, so the aim that moves towards depthHeading depends on the heading.
+            val aimSign = depthHeading * heading;
+            // Outside the box, only steer until forward moves head back in.
+            val outsideBox = depth < 0 || depth > depthRange;
+            if (random.nextBoolean() && !(outsideBox && aim * aimSign < 0))
+            {
+                forward = heading * random.nextInt(1, MAX_DISTANCE + 1);
+                aimChange = 0;
+                horizontal += forward;
+                depth += (long) aim * forward;
+            }
+            else
+            {
+                val targetAim = aimSign * random.nextInt(outsideBox ? 1 : 0, MAX_AIM + 1);
+                forward = 0;
+                aimChange = aim < targetAim || (aim == targetAim && aim < MAX_AIM && random.nextBoolean()) ? 1 : -1;
+                if (aim + aimChange < -MAX_AIM)
+                    aimChange = 1;
+                aim += aimChange;
+            }
+        }
+    }
+
+    /**
+     * Distinct position keys in first-visit order.
+     */
+    private static class Positions
+    {
+        final LongOpenHashMap<Boolean> visited = new LongOpenHashMap<>();
+        long[] keys = new long[1024];
+        int size;
+
+        void add(long key)
+        {
+            if (visited.get(key) != null)
+                return;
+
+            visited.put(key, Boolean.TRUE);
+            if (size == keys.length)
+                keys = Arrays.copyOf(keys, size * 2);
+            keys[size++] = key;
+        }
+    }
+
+
+    /**
+     * Arguments: command file, scanner-data file, command count, and optionally seed, density and noise.
+     */
+    public static void main(String[] args)
+            throws IOException
+    {
+        if (args.length < 3)
+        {
+            System.err.println("Usage: WorkloadGenerator <command file> <scanner-data file> <command count> [seed] [density] [noise]");
+            return;
+        }
+
+        val commandCount = Long.parseLong(args[2]);
+        val generator = new WorkloadGenerator(args.length > 3 ? Long.parseLong(args[3]) : 0,
+                                              DEFAULT_WIDTH, DEFAULT_DEPTH_RANGE,
+                                              args.length > 4 ? Double.parseDouble(args[4]) : 1.0,
+                                              args.length > 5 ? Double.parseDouble(args[5]) : 0.0);
+        generator.writeCommands(Path.of(args[0]), commandCount);
+        val entryCount = generator.writeScannerData(Path.of(args[1]), commandCount);
+        System.out.printf("Wrote %d commands to %s and %d scanner entries to %s%n", commandCount, args[0], entryCount, args[1]);
+    }
+}
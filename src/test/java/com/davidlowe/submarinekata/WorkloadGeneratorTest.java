@@ -0,0 +1,147 @@
+package com.davidlowe.submarinekata;
+
+import com.davidlowe.submarinekata.models.Command;
+import com.davidlowe.submarinekata.models.LocationImpl;
+import com.davidlowe.submarinekata.models.LongOpenHashMap;
+import com.davidlowe.submarinekata.models.LongOpenHashSet;
+import com.davidlowe.submarinekata.models.ScannedSonarDataDb;
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkloadGeneratorTest
+{
+    private static final int COMMANDS = 50_000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writeCommands_sameSeedSameFile() throws IOException
+    {
+        new WorkloadGenerator(7).writeCommands(tempDir.resolve("a.txt"), COMMANDS);
+        new WorkloadGenerator(7).writeCommands(tempDir.resolve("b.txt"), COMMANDS);
+        new WorkloadGenerator(8).writeCommands(tempDir.resolve("c.txt"), COMMANDS);
+
+        assertEquals(-1, Files.mismatch(tempDir.resolve("a.txt"), tempDir.resolve("b.txt")));
+        assertNotEquals(-1, Files.mismatch(tempDir.resolve("a.txt"), tempDir.resolve("c.txt")));
+    }
+
+    @Test
+    void writeCommands_routeStaysNearTheBox() throws IOException, ParseException
+    {
+        val generator = new WorkloadGenerator(3, 200, 100, 1.0, 0.0);
+        val commandFile = tempDir.resolve("commands.txt");
+        generator.writeCommands(commandFile, COMMANDS);
+
+        val lines = Files.readAllLines(commandFile);
+        assertEquals(COMMANDS, lines.size());
+
+        val location = new LocationImpl();
+        val positions = new HashSet<Long>();
+        for (val line : lines)
+        {
+            assertTrue(location.processCommand(Command.create(line)));
+            val horizontal = location.getHorizontalLocation();
+            val depth = location.getDepth();
+            assertTrue(horizontal >= -9 && horizontal <= 209, line);
+            assertTrue(depth >= -27 && depth <= 127, line);
+            positions.add(LongOpenHashMap.packKey((int) horizontal, (int) depth));
+        }
+
+        val routePositions = generator.routeScanPositions(COMMANDS);
+        assertEquals(positions.size(), routePositions.length);
+        for (val key : routePositions)
+            assertTrue(positions.contains(key));
+    }
+
+    @Test
+    void writeScannerData_fullDensityCoversTheRoute() throws IOException
+    {
+        val generator = new WorkloadGenerator(5);
+        val scannerFile = tempDir.resolve("scanner-data.json");
+        val entryCount = generator.writeScannerData(scannerFile, COMMANDS);
+
+        val db = new ScannedSonarDataDb();
+        db.loadData(scannerFile.toFile());
+        val routePositions = generator.routeScanPositions(COMMANDS);
+        assertEquals(routePositions.length, entryCount);
+        assertEquals(entryCount, db.size());
+        for (val key : routePositions)
+            assertNotNull(db.getScannerKey2ScannerData(LongOpenHashMap.unpackX(key), LongOpenHashMap.unpackY(key)));
+    }
+
+    @Test
+    void writeScannerData_densityAndNoise() throws IOException
+    {
+        val generator = new WorkloadGenerator(5, WorkloadGenerator.DEFAULT_WIDTH, WorkloadGenerator.DEFAULT_DEPTH_RANGE, 0.5, 1.0);
+        val scannerFile = tempDir.resolve("scanner-data.json");
+        val entryCount = generator.writeScannerData(scannerFile, COMMANDS);
+
+        val db = new ScannedSonarDataDb();
+        db.loadData(scannerFile.toFile());
+        assertEquals(entryCount, db.size());
+
+        val routePositions = generator.routeScanPositions(COMMANDS);
+        long onRoute = 0;
+        for (val key : routePositions)
+        {
+            if (db.getScannerKey2ScannerData(LongOpenHashMap.unpackX(key), LongOpenHashMap.unpackY(key)) != null)
+                ++onRoute;
+        }
+        // Half the route is covered, and there are as many decoys as entries on the route.
+        assertEquals(0.5, onRoute / (double) routePositions.length, 0.05);
+        assertEquals(2 * onRoute, entryCount);
+    }
+
+    @Test
+    void writeScannerData_overlappingScansAgree() throws IOException
+    {
+        val generator = new WorkloadGenerator(9);
+        val scannerFile = tempDir.resolve("scanner-data.json");
+        generator.writeScannerData(scannerFile, COMMANDS);
+
+        val db = new ScannedSonarDataDb();
+        db.loadData(scannerFile.toFile());
+        val routePositions = generator.routeScanPositions(COMMANDS);
+        val onRoute = new LongOpenHashSet();
+        for (val key : routePositions)
+            onRoute.add(key);
+
+        // Full density: every route position has a grid, so each horizontally adjacent pair on the route is compared.
+        int pairCount = 0;
+        for (val key : routePositions)
+        {
+            val x = LongOpenHashMap.unpackX(key);
+            val y = LongOpenHashMap.unpackY(key);
+            if (!onRoute.contains(LongOpenHashMap.packKey(x + 1, y)))
+                continue;
+
+            val left = db.getScannerKey2ScannerData(x, y);
+            val right = db.getScannerKey2ScannerData(x + 1, y);
+            for (int row = 0; row < 3; ++row)
+            {
+                assertEquals(left.getCell(row, 1), right.getCell(row, 0));
+                assertEquals(left.getCell(row, 2), right.getCell(row, 1));
+            }
+            ++pairCount;
+        }
+        assertTrue(pairCount > 100, "only %d adjacent pairs".formatted(pairCount));
+    }
+
+    @Test
+    void constructor_invalidSettings_throws()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new WorkloadGenerator(1, 0, 10, 1.0, 0.0));
+        assertThrows(IllegalArgumentException.class, () -> new WorkloadGenerator(1, 10, 10, 1.5, 0.0));
+        assertThrows(IllegalArgumentException.class, () -> new WorkloadGenerator(1, 10, 10, 1.0, -1.0));
+    }
+}
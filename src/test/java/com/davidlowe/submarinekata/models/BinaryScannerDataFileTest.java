@@ -0,0 +1,141 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryScannerDataFileTest
+{
+    private static final File SCANNER_JSON_FILE = new File("docs/scanner-data.json");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void convert_mappedStoreMatchesJson() throws IOException
+    {
+        val binaryFile = tempDir.resolve("scanner-data.bin").toFile();
+        val entriesWritten = BinaryScannerDataFile.convert(SCANNER_JSON_FILE, binaryFile);
+
+        val jsonStore = new PackedScannerDataStore();
+        ScannerDataJsonReader.read(SCANNER_JSON_FILE, jsonStore::put);
+        val mappedStore = MappedScannerDataStore.open(binaryFile);
+
+        assertEquals(jsonStore.size(), entriesWritten);
+        assertEquals(jsonStore.size(), mappedStore.size());
+        for (int x = -5; x < 120; ++x)
+        {
+            for (int y = -5; y < 120; ++y)
+            {
+                val expected = jsonStore.get(x, y);
+                val actual = mappedStore.get(x, y);
+                if (expected == null)
+                    assertNull(actual);
+                else
+                    assertEquals(expected.getData(), actual.getData());
+            }
+        }
+    }
+
+    @Test
+    void convert_negativePositions() throws IOException
+    {
+        val jsonFile = Files.writeString(tempDir.resolve("scanner-data.json"),
+                                         "{\"(-1,-1)\":[\"a\",\"b\",\"c\",\"d\",\"e\",\"f\",\"g\",\"h\",\"i\"],\"(1,-1)\":[\"1\",\"2\",\"3\",\"4\",\"5\",\"6\",\"7\",\"8\",\"9\"]}").toFile();
+        val binaryFile = tempDir.resolve("scanner-data.bin").toFile();
+        BinaryScannerDataFile.convert(jsonFile, binaryFile);
+
+        val mappedStore = MappedScannerDataStore.open(binaryFile);
+        assertEquals("abcdefghi", mappedStore.get(-1, -1).getData());
+        assertEquals("123456789", mappedStore.get(1, -1).getData());
+        assertNull(mappedStore.get(-1, 1));
+    }
+
+    @Test
+    void convert_latin1Cells() throws IOException
+    {
+        val jsonFile = Files.writeString(tempDir.resolve("scanner-data.json"),
+                                         "{\"(0,0)\":[\"\u00E9\",\"b\",\"c\",\"d\",\"e\",\"f\",\"g\",\"h\",\"\u00FF\"],\"(1,0)\":[\"~\",\" \",\"#\",\".\",\".\",\".\",\".\",\".\",\"\u007F\"]}").toFile();
+        val binaryFile = tempDir.resolve("scanner-data.bin").toFile();
+        BinaryScannerDataFile.convert(jsonFile, binaryFile);
+
+        val mappedStore = MappedScannerDataStore.open(binaryFile);
+        assertEquals("\u00E9bcdefgh\u00FF", mappedStore.get(0, 0).getData());
+        assertEquals(new ScannerData("~ #.....\u007F"), mappedStore.get(1, 0));
+        mappedStore.close();
+    }
+
+    @Test
+    void mappedStore_close_unmapsTheFile() throws IOException
+    {
+        val binaryFile = tempDir.resolve("scanner-data.bin").toFile();
+        BinaryScannerDataFile.convert(SCANNER_JSON_FILE, binaryFile);
+        val mappedStore = MappedScannerDataStore.open(binaryFile);
+        assertNotNull(mappedStore.get(8, 17));
+
+        mappedStore.close();
+
+        assertThrows(IllegalStateException.class, () -> mappedStore.get(8, 17));
+        assertDoesNotThrow(() -> mappedStore.prefetch(8, 17));
+        assertDoesNotThrow(mappedStore::close);
+    }
+
+    @Test
+    void convert_duplicatePosition_throws() throws IOException
+    {
+        val jsonFile = Files.writeString(tempDir.resolve("scanner-data.json"),
+                                         "{\"(1,1)\":[\"a\",\"b\",\"c\",\"d\",\"e\",\"f\",\"g\",\"h\",\"i\"],\"( 1,1)\":[\"a\",\"b\",\"c\",\"d\",\"e\",\"f\",\"g\",\"h\",\"i\"]}").toFile();
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryScannerDataFile.convert(jsonFile, tempDir.resolve("scanner-data.bin").toFile()));
+    }
+
+    @Test
+    void isBinary() throws IOException
+    {
+        val binaryFile = tempDir.resolve("scanner-data.bin").toFile();
+        BinaryScannerDataFile.convert(SCANNER_JSON_FILE, binaryFile);
+
+        assertTrue(BinaryScannerDataFile.isBinary(binaryFile));
+        assertFalse(BinaryScannerDataFile.isBinary(SCANNER_JSON_FILE));
+    }
+
+    @Test
+    void scannedSonarDataDb_loadData_detectsBinaryFormat() throws IOException
+    {
+        val binaryFile = tempDir.resolve("scanner-data.bin").toFile();
+        BinaryScannerDataFile.convert(SCANNER_JSON_FILE, binaryFile);
+
+        val db = new ScannedSonarDataDb();
+        db.loadData(binaryFile);
+
+        assertInstanceOf(MappedScannerDataStore.class, db.getScannerDataStore());
+        assertEquals("-+*.#=%.:", db.getScannerKey2ScannerData(8, 17).getData());
+        assertThrows(IllegalStateException.class, () -> db.setScannerKey2ScannerData(0, 0, new ScannerData()));
+    }
+
+    @Test
+    void scannedSonarDataDb_reloadAndClear_closeTheMappedStore() throws IOException
+    {
+        val binaryFile = tempDir.resolve("scanner-data.bin").toFile();
+        BinaryScannerDataFile.convert(SCANNER_JSON_FILE, binaryFile);
+        val db = new ScannedSonarDataDb();
+        db.loadData(binaryFile);
+        val firstStore = db.getScannerDataStore();
+
+        db.loadDataLazily(binaryFile);
+        val secondStore = db.getScannerDataStore();
+        assertThrows(IllegalStateException.class, () -> firstStore.get(8, 17));
+        assertEquals("-+*.#=%.:", db.getScannerKey2ScannerData(8, 17).getData());
+
+        db.clear();
+        assertThrows(IllegalStateException.class, () -> secondStore.get(8, 17));
+        assertNull(db.getScannerKey2ScannerData(8, 17));
+    }
+}
@@ -0,0 +1,102 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandBatchReaderTest
+{
+    /**
+     * @return Every line of 'lines', then null.
+     */
+    private static CommandBatchReader.LineSource linesOf(List<String> lines)
+    {
+        Iterator<String> iterator = lines.iterator();
+        return () -> iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Copies each batch it receives, as the batch is cleared once it has been handed on.
+     */
+    private static final class BatchRecorder implements CommandBatchListener
+    {
+        private final List<List<Command>> batches = new ArrayList<>();
+
+        @Override
+        public void commandsAvailable(CommandBatch commands)
+        {
+            val batch = new ArrayList<Command>();
+            for (int idx = 0; idx < commands.size(); ++idx)
+                batch.add(commands.getCommand(idx));
+            batches.add(batch);
+        }
+    }
+
+
+    @Test
+    void read_manyLines_handsOnFullBatchesThenTheRest() throws Exception
+    {
+        val lines = new ArrayList<String>();
+        for (int idx = 0; idx < CommandFactory.BATCH_SIZE * 2 + 5; ++idx)
+            lines.add("forward " + idx);
+        val reader = new CommandBatchReader();
+        val recorder = new BatchRecorder();
+
+        reader.read(linesOf(lines), recorder);
+
+        assertEquals(List.of(CommandFactory.BATCH_SIZE, CommandFactory.BATCH_SIZE, 5), recorder.batches.stream().map(List::size).toList());
+        assertEquals(new Command(Direction.FORWARD, CommandFactory.BATCH_SIZE), recorder.batches.get(1).getFirst());
+        assertEquals(lines.size(), reader.getCommandCount());
+        assertEquals(lines.size(), reader.getLineNumber());
+    }
+
+    @Test
+    void read_quitCommand_stopsReading() throws Exception
+    {
+        val reader = new CommandBatchReader();
+        val recorder = new BatchRecorder();
+
+        reader.read(linesOf(List.of("down 2", "Q", "forward 3")), recorder);
+
+        assertEquals(List.of(List.of(new Command(Direction.DOWN, 2))), recorder.batches);
+        assertEquals(1, reader.getCommandCount());
+        assertEquals(2, reader.getLineNumber());
+    }
+
+    @Test
+    void read_invalidLine_handsOnEarlierCommandsThenThrows()
+    {
+        val reader = new CommandBatchReader();
+        val recorder = new BatchRecorder();
+
+        assertThrows(ParseException.class, () -> reader.read(linesOf(List.of("up 1", "sideways 1", "up 2")), recorder));
+        assertEquals(List.of(List.of(new Command(Direction.UP, 1))), recorder.batches);
+        assertEquals(1, reader.getCommandCount());
+        assertEquals(2, reader.getLineNumber());
+    }
+
+    @Test
+    void read_ioError_handsOnEarlierCommandsThenThrows()
+    {
+        val reader = new CommandBatchReader();
+        val recorder = new BatchRecorder();
+        val lines = linesOf(List.of("forward 4"));
+        CommandBatchReader.LineSource failing = () ->
+        {
+            val line = lines.readLineSlice();
+            if (line == null)
+                throw new IOException("Disk gone");
+            return line;
+        };
+
+        assertThrows(IOException.class, () -> reader.read(failing, recorder));
+        assertEquals(List.of(List.of(new Command(Direction.FORWARD, 4))), recorder.batches);
+    }
+}
@@ -0,0 +1,65 @@
+package com.davidlowe.submarinekata.models;
+
+import com.davidlowe.submarinekata.RandomValueUtils;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandBatchTest
+{
+    @Test
+    void add_storesCommandsInOrder()
+    {
+        val batch = new CommandBatch(3);
+        val distance = RandomValueUtils.randomPositiveSinglePrecisionDouble();
+        batch.add(Direction.DOWN, distance);
+        batch.add(Direction.FORWARD, -distance);
+
+        assertEquals(2, batch.size());
+        assertEquals(3, batch.capacity());
+        assertFalse(batch.isFull());
+        assertEquals(Direction.DOWN, batch.getDirection(0));
+        assertEquals(distance, batch.getDistance(0));
+        assertEquals(new Command(Direction.FORWARD, -distance), batch.getCommand(1));
+    }
+
+    @Test
+    void add_fullBatch_throws()
+    {
+        val batch = new CommandBatch(1);
+        batch.add(Direction.UP, 1.0);
+
+        assertTrue(batch.isFull());
+        assertThrows(IllegalStateException.class, () -> batch.add(Direction.UP, 2.0));
+    }
+
+    @Test
+    void clear_allowsRefill()
+    {
+        val batch = new CommandBatch(1);
+        batch.add(Direction.UP, 1.0);
+        batch.clear();
+
+        assertTrue(batch.isEmpty());
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.getDirection(0));
+        batch.add(Direction.FORWARD, 2.0);
+        assertEquals(new Command(Direction.FORWARD, 2.0), batch.getCommand(0));
+    }
+
+    @Test
+    void get_outOfRange_throws()
+    {
+        val batch = new CommandBatch(4);
+        batch.add(Direction.UP, 1.0);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.getDistance(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.getDistance(-1));
+    }
+
+    @Test
+    void constructor_invalidCapacity_throws()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new CommandBatch(0));
+    }
+}
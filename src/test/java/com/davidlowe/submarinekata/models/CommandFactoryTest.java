@@ -0,0 +1,96 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandFactoryTest
+{
+    @TempDir
+    Path tempDir;
+
+    private final List<Object> publishedEvents = new ArrayList<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+    private final List<Command> batchedCommands = new ArrayList<>();
+    private int finishedCount = 0;
+
+    private CommandFactory createFactory(String commands) throws IOException
+    {
+        val commandFile = Files.writeString(tempDir.resolve("commands.txt"), commands).toFile();
+        val commandStream = new CommandStream();
+        commandStream.setConfigValue(commandFile, true);
+
+        val listener = new CommandBatchListener()
+        {
+            @Override
+            public void commandsAvailable(CommandBatch batch)
+            {
+                batchSizes.add(batch.size());
+                for (int idx = 0; idx < batch.size(); ++idx)
+                    batchedCommands.add(batch.getCommand(idx));
+            }
+
+            @Override
+            public void commandsFinished()
+            {
+                ++finishedCount;
+            }
+        };
+        return new CommandFactory(publishedEvents::add, commandStream, List.of(listener));
+    }
+
+
+    @Test
+    void start_commandFile_dispatchesBatches() throws Exception
+    {
+        val commandCount = CommandFactory.BATCH_SIZE * 2 + 100;
+        val commands = new StringBuilder();
+        for (int idx = 0; idx < commandCount; ++idx)
+            commands.append(Direction.values()[idx % 3].name().toLowerCase()).append(' ').append(idx).append('\n');
+
+        val factory = createFactory(commands.toString());
+        val commandsRead = factory.start().get();
+        factory.stop();
+
+        assertEquals(commandCount, commandsRead);
+        assertEquals(List.of(CommandFactory.BATCH_SIZE, CommandFactory.BATCH_SIZE, 100), batchSizes);
+        assertEquals(1, finishedCount);
+        assertTrue(publishedEvents.isEmpty());
+        for (int idx = 0; idx < commandCount; ++idx)
+            assertEquals(new Command(Direction.values()[idx % 3], idx), batchedCommands.get(idx));
+    }
+
+    @Test
+    void start_quitCommand_stopsReading() throws Exception
+    {
+        val factory = createFactory("forward 5\ndown 2\nQ\nup 1\n");
+        val commandsRead = factory.start().get();
+        factory.stop();
+
+        assertEquals(2, commandsRead);
+        assertEquals(List.of(new Command(Direction.FORWARD, 5), new Command(Direction.DOWN, 2)), batchedCommands);
+    }
+
+    @Test
+    void start_invalidCommand_processesEarlierCommandsAndFails() throws IOException
+    {
+        val factory = createFactory("forward 5\ndown 2\nsideways 1\nup 1\n");
+        val exception = assertThrows(ExecutionException.class, () -> factory.start().get());
+        factory.stop();
+
+        assertInstanceOf(ParseException.class, exception.getCause());
+        assertEquals("Invalid command \"sideways 1\" at line 3", exception.getCause().getMessage());
+        assertEquals(List.of(new Command(Direction.FORWARD, 5), new Command(Direction.DOWN, 2)), batchedCommands);
+        assertEquals(1, finishedCount);
+    }
+}
@@ -0,0 +1,79 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandHistoryTest
+{
+    /**
+     * Fills a history with random integer-distance commands, so every result must match LocationImpl exactly.
+     */
+    private static CommandHistory randomHistory(int commandCount, Random random)
+    {
+        val history = new CommandHistory();
+        for (int idx = 0; idx < commandCount; ++idx)
+            history.add(Direction.fromOrdinal(random.nextInt(3)), random.nextInt(-3, 10));
+        return history;
+    }
+
+    private static void assertMatchesSequentialReplay(CommandHistory history)
+    {
+        val location = new LocationImpl();
+        assertEquals(LocationTransform.IDENTITY, history.transformOf(0));
+        for (int idx = 0; idx < history.size(); ++idx)
+        {
+            location.processCommand(history.get(idx));
+            val transform = history.transformOf(idx + 1);
+            assertEquals(location.getHorizontalLocation(), transform.applyToHorizontal(0.0), "after command " + idx);
+            assertEquals(location.getDepth(), transform.applyToDepth(0.0, 0.0), "after command " + idx);
+            assertEquals(location.getAim(), transform.applyToAim(0.0), "after command " + idx);
+        }
+    }
+
+
+    @Test
+    void transformOf_matchesSequentialReplay()
+    {
+        // Spans many blocks, several tree resizes, and a partial last block.
+        assertMatchesSequentialReplay(randomHistory(CommandHistory.BLOCK_SIZE * 40 + 7, new Random(11)));
+    }
+
+    @Test
+    void set_matchesSequentialReplay()
+    {
+        val random = new Random(12);
+        val history = randomHistory(CommandHistory.BLOCK_SIZE * 9 + 3, random);
+        for (int edit = 0; edit < 50; ++edit)
+            history.set(random.nextInt(history.size()), Direction.fromOrdinal(random.nextInt(3)), random.nextInt(-3, 10));
+        history.set(history.size() - 1, Direction.FORWARD, 4);
+
+        assertMatchesSequentialReplay(history);
+    }
+
+    @Test
+    void get_returnsStoredCommand()
+    {
+        val history = new CommandHistory();
+        history.add(Direction.DOWN, 2.5);
+        history.set(0, Direction.UP, 1.5);
+
+        assertEquals(1, history.size());
+        assertEquals(new Command(Direction.UP, 1.5), history.get(0));
+    }
+
+    @Test
+    void outOfRange_throws()
+    {
+        val history = new CommandHistory();
+        history.add(Direction.FORWARD, 1);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> history.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> history.set(-1, Direction.UP, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> history.transformOf(2));
+        assertTrue(new CommandHistory().isEmpty());
+    }
+}
@@ -0,0 +1,75 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandParserTest
+{
+    private final CommandParser parser = new CommandParser();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"forward 5", "up 0.5", "down 12.25", "forward -3.1", "forward +7", "up 10 ", "down 4   ",
+            "forward 1.", "forward .5", "forward 1e3", "up 0x1p3", "down 10\t", "forward 1.0d", "forward 00012.500",
+            "forward 12345678901234567890.5", "down 0.12345678901234567890123456789"})
+    void parse_validLines_matchDoubleParseDouble(String line) throws ParseException
+    {
+        parser.parse(line, 1);
+
+        val tokens = line.split(" ");
+        assertEquals(Direction.fromString(tokens[0]), parser.getDirection());
+        assertEquals(Double.parseDouble(tokens[1]), parser.getDistance());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", " ", "forward", "forward ", "forward  10", " forward 10", "forward 10 extra",
+            "backward 10", "Forward 10", "forward abc", "forward -", "forward .", "forward 1..2", "up\t10"})
+    void parse_invalidLines_throw(String line)
+    {
+        val exception = assertThrows(ParseException.class, () -> parser.parse(line, 0));
+
+        assertTrue(exception.getMessage().contains("Invalid command"));
+    }
+
+    @Test
+    void parse_invalidLine_reportsLineNumber()
+    {
+        val exception = assertThrows(ParseException.class, () -> parser.parse("sideways 3", 42));
+
+        assertEquals("Invalid command \"sideways 3\" at line 42", exception.getMessage());
+    }
+
+    @Test
+    void parse_charBufferWindow() throws ParseException
+    {
+        val buffer = CharBuffer.wrap("forward 5\ndown 2.5\n");
+
+        parser.parse(buffer.subSequence(10, 18), 2);
+
+        assertEquals(Direction.DOWN, parser.getDirection());
+        assertEquals(2.5, parser.getDistance());
+    }
+
+    @Test
+    void parse_fastPathIsExactlyRounded() throws ParseException
+    {
+        val random = new Random(20251018L);
+        for (int idx = 0; idx < 100_000; ++idx)
+        {
+            val integerPart = random.nextInt(1_000_000);
+            val fraction = Long.toString(Math.abs(random.nextLong()) % 10_000_000_000L);
+            val distance = (random.nextBoolean() ? "-" : "") + integerPart + "." + fraction;
+
+            parser.parse("forward " + distance, idx + 1);
+
+            assertEquals(Double.parseDouble(distance), parser.getDistance(), distance);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentSonarDbTest
+{
+    private static final int WRITERS = 8;
+    private static final int AREA = 300;
+
+    @Test
+    void emptyDb()
+    {
+        val sonarDb = new ConcurrentSonarDb();
+
+        assertNull(sonarDb.getMinHorizontalLocation());
+        assertNull(sonarDb.getMaxDepth());
+        assertEquals("", sonarDb.getHorizontalMapDataForDepth(0));
+        assertFalse(sonarDb.getDepthIterator().hasNext());
+        assertEquals(0, sonarDb.getCellCount());
+        assertEquals(0, sonarDb.getTileCount());
+    }
+
+    @Test
+    void singleWriter_matchesSonarDb()
+    {
+        val random = new Random(13);
+        val sonarDb = new SonarDb();
+        val concurrentDb = new ConcurrentSonarDb();
+        for (int idx = 0; idx < 2_000; ++idx)
+        {
+            val x = random.nextInt(-AREA, AREA);
+            val y = random.nextInt(-AREA, AREA);
+            if (idx % 2 == 0)
+            {
+                val mapData = (char) random.nextInt('a', 'z' + 1);
+                sonarDb.addScannedData(x, y, mapData);
+                concurrentDb.addScannedData(x, y, mapData);
+            }
+            else
+            {
+                val scannerData = new ScannerData("%09d".formatted(random.nextInt(1_000_000_000)));
+                sonarDb.addScannedBlock(x, y, scannerData);
+                concurrentDb.addScannedBlock(x, y, scannerData);
+            }
+        }
+
+        assertEquals(sonarDb.getCellCount(), concurrentDb.getCellCount());
+        assertEquals(sonarDb.getTileCount(), concurrentDb.getTileCount());
+        assertEquals(sonarDb.getMinHorizontalLocation(), concurrentDb.getMinHorizontalLocation());
+        assertEquals(sonarDb.getMaxHorizontalLocation(), concurrentDb.getMaxHorizontalLocation());
+        assertEquals(sonarDb.getMinDepth(), concurrentDb.getMinDepth());
+        assertEquals(sonarDb.getMaxDepth(), concurrentDb.getMaxDepth());
+
+        val rows = new ArrayList<String>();
+        sonarDb.getDepthIterator().forEachRemaining(rows::add);
+        val concurrentRows = new ArrayList<String>();
+        concurrentDb.getDepthIterator().forEachRemaining(concurrentRows::add);
+        assertEquals(rows, concurrentRows);
+    }
+
+    @Test
+    void nonLatin1Cells_matchSonarDb()
+    {
+        val sonarDb = new SonarDb();
+        val concurrentDb = new ConcurrentSonarDb();
+        for (val db : new SonarDb[]{sonarDb, concurrentDb})
+        {
+            db.addScannedBlock(0, 0, new ScannerData("\u2248 #\u2248\u00E9.abc"));
+            db.addScannedData(70, 1, '\u2588');
+        }
+
+        assertTrue(concurrentDb.hasWideCells());
+        assertEquals('\u2588', concurrentDb.getScannedData(70, 1));
+        for (int depth = -1; depth <= 1; ++depth)
+            assertEquals(sonarDb.getHorizontalMapDataForDepth(depth), concurrentDb.getHorizontalMapDataForDepth(depth));
+        assertEquals("abc" + " ".repeat(68) + "\u2588", concurrentDb.getHorizontalMapDataForDepth(1));
+    }
+
+    @Test
+    void concurrentWriters_exactlyOneWriterWinsEachCell() throws InterruptedException
+    {
+        val sonarDb = new ConcurrentSonarDb();
+        // Cells written before the race must never change.
+        sonarDb.addScannedData(0, 0, '#');
+        sonarDb.addScannedBlock(100, 100, new ScannerData("#########"));
+
+        // Every writer tries to write every cell of the same area, each with its own character, in its own order.
+        val start = new CountDownLatch(1);
+        val writers = new ArrayList<Thread>();
+        for (int writer = 0; writer < WRITERS; ++writer)
+        {
+            val mapData = (char) ('a' + writer);
+            val random = new Random(writer);
+            writers.add(Thread.ofPlatform().start(() ->
+            {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int idx = 0; idx < AREA * AREA; ++idx)
+                {
+                    val x = random.nextInt(-AREA / 2, AREA / 2);
+                    val y = random.nextInt(-AREA / 2, AREA / 2);
+                    sonarDb.addScannedData(x, y, mapData);
+                }
+                for (int y = -AREA / 2; y < AREA / 2; ++y)
+                    for (int x = -AREA / 2; x < AREA / 2; ++x)
+                        sonarDb.addScannedData(x, y, mapData);
+            }));
+        }
+        start.countDown();
+        for (val writer : writers)
+            writer.join();
+
+        // The cells written before the race are inside the area.
+        assertEquals((long) AREA * AREA, sonarDb.getCellCount());
+        assertEquals(-AREA / 2, sonarDb.getMinHorizontalLocation());
+        assertEquals(-AREA / 2, sonarDb.getMinDepth());
+        assertEquals(AREA / 2 - 1, sonarDb.getMaxHorizontalLocation());
+        assertEquals(AREA / 2 - 1, sonarDb.getMaxDepth());
+        assertEquals('#', sonarDb.getScannedData(0, 0));
+        assertEquals('#', sonarDb.getScannedData(100, 100));
+        for (int y = -AREA / 2; y < AREA / 2; ++y)
+        {
+            for (int x = -AREA / 2; x < AREA / 2; ++x)
+            {
+                val mapData = sonarDb.getScannedData(x, y);
+                assertNotNull(mapData);
+                assertTrue(mapData == '#' || (mapData >= 'a' && mapData < 'a' + WRITERS));
+            }
+        }
+    }
+
+    @Test
+    void sharedBySubmarines_containsEverySubmarinesScans() throws Exception
+    {
+        val scannedSonarDataDb = new ScannedSonarDataDb();
+        scannedSonarDataDb.loadData(new File("docs/scanner-data.json"));
+        scannedSonarDataDb.makeReadOnly();
+        val sharedDb = new ConcurrentSonarDb();
+
+        val ownDbs = new ArrayList<SonarDb>();
+        val threads = new ArrayList<Thread>();
+        for (int sub = 0; sub < 4; ++sub)
+        {
+            val aloneLocation = new LocationImpl();
+            aloneLocation.setConfigValue(sub, 0, 0);
+            val sharedLocation = new LocationImpl();
+            sharedLocation.setConfigValue(sub, 0, 0);
+            val alone = new Submarine(aloneLocation, scannedSonarDataDb);
+            val shared = new Submarine(sharedLocation, scannedSonarDataDb, sharedDb);
+            ownDbs.add(alone.getSonarDb());
+            threads.add(Thread.ofPlatform().start(() ->
+            {
+                for (val line : new String[]{"forward 5", "down 3", "forward 8", "up 1", "forward 10", "down 2", "forward 4"})
+                {
+                    try
+                    {
+                        val command = Command.create(line);
+                        alone.commandAvailable(new CommandAvailableEvent(line, command));
+                        shared.commandAvailable(new CommandAvailableEvent(line, command));
+                    }
+                    catch (Exception e)
+                    {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }));
+        }
+        for (val thread : threads)
+            thread.join();
+
+        for (val ownDb : ownDbs)
+        {
+            for (int depth = ownDb.getMinDepth(); depth <= ownDb.getMaxDepth(); ++depth)
+                for (int x = ownDb.getMinHorizontalLocation(); x <= ownDb.getMaxHorizontalLocation(); ++x)
+                    if (ownDb.getScannedData(x, depth) != null)
+                        assertNotNull(sharedDb.getScannedData(x, depth));
+        }
+    }
+}
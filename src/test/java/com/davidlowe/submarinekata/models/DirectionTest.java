@@ -78,4 +78,11 @@ class DirectionTest
         assertEquals(Direction.DOWN, down);
     }
 
+    @Test
+    void testFromOrdinal()
+    {
+        for (val direction : Direction.values())
+            assertEquals(direction, Direction.fromOrdinal(direction.ordinal()));
+    }
+
 }
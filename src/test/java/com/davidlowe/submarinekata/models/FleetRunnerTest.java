@@ -0,0 +1,152 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetRunnerTest
+{
+    private static ScannedSonarDataDb scannedSonarDataDb;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void loadScannerData() throws IOException
+    {
+        scannedSonarDataDb = new ScannedSonarDataDb();
+        scannedSonarDataDb.loadData(new File("docs/scanner-data.json"));
+        scannedSonarDataDb.makeReadOnly();
+    }
+
+    private File writeRoute(String name, int commandCount, int seed) throws IOException
+    {
+        val random = new Random(seed);
+        val commands = new StringBuilder();
+        for (int idx = 0; idx < commandCount; ++idx)
+        {
+            val direction = Direction.fromOrdinal(random.nextInt(3)).name().toLowerCase();
+            commands.append(direction).append(' ').append(random.nextInt(0, 4)).append('\n');
+        }
+        return Files.writeString(tempDir.resolve(name), commands).toFile();
+    }
+
+    /**
+     * @return The submarine after running 'routeFile' on its own, one command at a time.
+     */
+    private static Submarine runAlone(File routeFile) throws IOException, ParseException
+    {
+        val location = new LocationImpl();
+        location.setConfigValue(1, 2, 0);
+        val submarine = new Submarine(location, scannedSonarDataDb);
+        for (val line : Files.readAllLines(routeFile.toPath()))
+        {
+            if (line.equalsIgnoreCase("q"))
+                break;
+            submarine.commandAvailable(new CommandAvailableEvent(line, Command.create(line)));
+        }
+        return submarine;
+    }
+
+    private static String mapOf(Submarine submarine)
+    {
+        val out = new ByteArrayOutputStream();
+        submarine.printMap(new PrintStream(out, true));
+        return out.toString();
+    }
+
+    @Test
+    void run_eachRouteMatchesRunningItAlone() throws IOException, ParseException, InterruptedException
+    {
+        writeRoute("b.txt", 5_000, 2);
+        writeRoute("a.txt", 10_000, 1);
+        writeRoute("c.txt", 3, 3);
+        Files.writeString(tempDir.resolve(".hidden"), "forward x\n");
+
+        val results = new FleetRunner(scannedSonarDataDb, 1, 2, 0, 2).run(tempDir.toFile());
+
+        assertEquals(List.of("a.txt", "b.txt", "c.txt"), results.stream().map(result -> result.routeFile().getName()).toList());
+        for (val result : results)
+        {
+            assertTrue(result.isSuccessful());
+            val alone = runAlone(result.routeFile());
+            assertEquals(alone.getCurrentLocation().toString(), result.submarine().getCurrentLocation().toString());
+            assertEquals(mapOf(alone), mapOf(result.submarine()));
+            assertSame(scannedSonarDataDb, result.submarine().getScannedSonarDataDb());
+        }
+        assertEquals(15_003, results.stream().mapToLong(FleetRunner.RouteResult::commandCount).sum());
+    }
+
+    @Test
+    void run_failedRouteDoesNotStopTheOthers() throws IOException, InterruptedException
+    {
+        val good = writeRoute("good.txt", 100, 4);
+        val bad = Files.writeString(tempDir.resolve("bad.txt"), "forward 5\nup 2\nsideways 3\ndown 1\n").toFile();
+        val quit = Files.writeString(tempDir.resolve("quit.txt"), "forward 5\nQ\nsideways 3\n").toFile();
+
+        val results = new FleetRunner(scannedSonarDataDb, 1, 2, 0).run(List.of(bad, good, quit));
+
+        val badResult = results.get(0);
+        assertFalse(badResult.isSuccessful());
+        assertTrue(badResult.error().contains("line 3"));
+        assertEquals(2, badResult.commandCount());
+        assertEquals(6.0, badResult.submarine().getCurrentLocation().getHorizontalLocation());
+
+        assertTrue(results.get(1).isSuccessful());
+        assertEquals(100, results.get(1).commandCount());
+
+        assertTrue(results.get(2).isSuccessful());
+        assertEquals(1, results.get(2).commandCount());
+    }
+
+    @Test
+    void run_routeFailingWhileApplyingCommands_doesNotStopTheOthers() throws IOException, InterruptedException
+    {
+        // The grid at (1,1) has 2 cells, which the lazy store only finds out when a route scans there.
+        val scannerFile = Files.writeString(tempDir.resolve("scanner-data.json"), "{\"(1,1)\":[\"a\",\"b\"]}").toFile();
+        val lazyDb = new ScannedSonarDataDb();
+        lazyDb.loadDataLazily(scannerFile);
+        lazyDb.makeReadOnly();
+        val bad = Files.writeString(tempDir.resolve("bad.txt"), "down 1\nforward 1\nforward 1\n").toFile();
+        val good = Files.writeString(tempDir.resolve("good.txt"), "forward 3\ndown 2\n").toFile();
+
+        val results = new FleetRunner(lazyDb, 0, 0, 0).run(List.of(bad, good));
+
+        assertFalse(results.get(0).isSuccessful());
+        assertTrue(results.get(0).error().startsWith(IllegalArgumentException.class.getName()), results.get(0).error());
+        assertEquals(0, results.get(0).commandCount());
+
+        assertTrue(results.get(1).isSuccessful());
+        assertEquals(2, results.get(1).commandCount());
+        assertEquals(3.0, results.get(1).submarine().getCurrentLocation().getHorizontalLocation());
+    }
+
+    @Test
+    void run_missingRouteFile_isReported() throws InterruptedException
+    {
+        val results = new FleetRunner(scannedSonarDataDb, 0, 0, 0).run(List.of(tempDir.resolve("missing.txt").toFile()));
+
+        assertFalse(results.getFirst().isSuccessful());
+        assertEquals(0, results.getFirst().commandCount());
+    }
+
+    @Test
+    void constructor_writableDb_throws()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new FleetRunner(new ScannedSonarDataDb(), 0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new FleetRunner(scannedSonarDataDb, 0, 0, 0, 0));
+    }
+}
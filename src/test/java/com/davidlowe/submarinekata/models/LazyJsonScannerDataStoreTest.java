@@ -0,0 +1,103 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyJsonScannerDataStoreTest
+{
+    @TempDir
+    Path tempDir;
+
+    private File writeJson(String json) throws IOException
+    {
+        return Files.writeString(tempDir.resolve("scanner-data.json"), json, StandardCharsets.UTF_8).toFile();
+    }
+
+
+    @Test
+    void get_matchesJsonReader() throws IOException
+    {
+        val jsonFile = new File("docs/scanner-data.json");
+        val expected = new HashMap<Long, String>();
+        ScannerDataJsonReader.read(jsonFile, (horizontalPos, depthPos, cells) ->
+                expected.put(LongOpenHashMap.packKey(horizontalPos, depthPos), new String(cells)));
+
+        val store = LazyJsonScannerDataStore.open(jsonFile);
+
+        assertEquals(expected.size(), store.size());
+        for (val entry : expected.entrySet())
+            assertEquals(entry.getValue(), store.get(LongOpenHashMap.unpackX(entry.getKey()), LongOpenHashMap.unpackY(entry.getKey())).getData());
+        assertEquals(expected.size(), store.getDecodedCount());
+        assertNull(store.get(-1000, -1000));
+    }
+
+    @Test
+    void get_decodesWhitespaceEscapesAndUnicode() throws IOException
+    {
+        val store = LazyJsonScannerDataStore.open(writeJson(
+                "\n{ \"( -3 , -7 )\" : [ \"a\" , \"\\\"\", \"\\\\\",\"\\u0041\",\"é\",\"≈\",\"]\",\"\\/\",\" \"],\r\n"
+                + "\"(4,5)\":[\"abc\",\"def\",\"ghi\"],\t\"(\\u0036,6)\":[\"#\",\"#\",\"#\",\"#\",\"#\",\"#\",\"#\",\"#\",\"#\"] }\n"));
+
+        assertEquals(3, store.size());
+        assertEquals("a\"\\Aé≈]/ ", store.get(-3, -7).getData());
+        assertEquals("abcdefghi", store.get(4, 5).getData());
+        assertEquals("#########", store.get(6, 6).getData());
+    }
+
+    @Test
+    void close_keepsDecodedEntriesButDecodesNoMore() throws IOException
+    {
+        val store = LazyJsonScannerDataStore.open(writeJson("{\"(1,1)\":[\"aaaaaaaaa\"],\"(2,1)\":[\"bbbbbbbbb\"]}"));
+        val decoded = store.get(1, 1);
+
+        store.close();
+
+        assertSame(decoded, store.get(1, 1));
+        assertThrows(IllegalStateException.class, () -> store.get(2, 1));
+        assertDoesNotThrow(() -> store.prefetch(2, 1));
+        assertNull(store.get(3, 1));
+    }
+
+    @Test
+    void open_emptyObject() throws IOException
+    {
+        assertEquals(0, LazyJsonScannerDataStore.open(writeJson(" { } ")).size());
+    }
+
+    @Test
+    void open_laterDuplicateKeyWins() throws IOException
+    {
+        val store = LazyJsonScannerDataStore.open(writeJson("{\"(1,1)\":[\"aaaaaaaaa\"],\"(1,1)\":[\"bbbbbbbbb\"]}"));
+
+        assertEquals(1, store.size());
+        assertEquals("bbbbbbbbb", store.get(1, 1).getData());
+    }
+
+    @Test
+    void open_invalidStructureOrKey_throws() throws IOException
+    {
+        for (val json : new String[]{"[\"(1,2)\"]", "{\"(1,2)\":[\"a\",1]}", "{\"(1,2)\":[\"a\"]", "{\"(1;2)\":[\"a\"]}",
+                                     "{\"(1,2)\":[\"a\"]} x", "{\"(1,2)\":\"abcdefghi\"}", "{\"(1,2)\":[\"a]}"})
+            assertThrows(IllegalArgumentException.class, () -> LazyJsonScannerDataStore.open(writeJson(json)), json);
+    }
+
+    @Test
+    void get_invalidDataLength_throws() throws IOException
+    {
+        val store = LazyJsonScannerDataStore.open(writeJson("{\"(1,2)\":[\"a\",\"b\",\"c\"],\"(2,2)\":[\"abcdefghij\"],\"(3,2)\":[\"abcdefghi\"]}"));
+
+        assertThrows(IllegalArgumentException.class, () -> store.get(1, 2));
+        assertThrows(IllegalArgumentException.class, () -> store.get(2, 2));
+        assertEquals("abcdefghi", store.get(3, 2).getData());
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -292,4 +293,53 @@ class LocationTest
         assertTrue(result.contains(horizontalLocationResults) || result.contains("horizontalLocation"));
         assertTrue(result.contains(depthLocationResults) || result.contains("depth"));
     }
+
+    @Test
+    void testProcessBatch_MatchesProcessCommand()
+    {
+        val start = RandomValueUtils.randomPositiveSinglePrecisionDouble();
+        location.setConfigValue(start, start, start);
+        val batchLocation = new LocationImpl();
+        batchLocation.setConfigValue(start, start, start);
+
+        val batch = new CommandBatch(200);
+        val expectedChanges = new ArrayList<String>();
+        for (int idx = 0; idx < batch.capacity(); ++idx)
+        {
+            // Every fifth command has a zero distance, which does not change the location.
+            val direction = Direction.fromOrdinal(idx % 3);
+            val distance = idx % 5 == 0 ? 0.0 : RandomValueUtils.randomPositiveSinglePrecisionDouble();
+            batch.add(direction, distance);
+            if (location.processCommand(new Command(direction, distance)))
+                expectedChanges.add(location.getHorizontalLocation() + "," + location.getDepth());
+        }
+
+        val actualChanges = new ArrayList<String>();
+        batchLocation.processBatch(batch, (horizontalLocation, depth) -> actualChanges.add(horizontalLocation + "," + depth));
+
+        assertEquals(expectedChanges, actualChanges);
+        assertEquals(location.getHorizontalLocation(), batchLocation.getHorizontalLocation());
+        assertEquals(location.getDepth(), batchLocation.getDepth());
+        assertEquals(location.getAim(), batchLocation.getAim());
+
+        val listenerlessLocation = new LocationImpl();
+        listenerlessLocation.setConfigValue(start, start, start);
+        listenerlessLocation.processBatch(batch);
+        assertEquals(location.getHorizontalLocation(), listenerlessLocation.getHorizontalLocation());
+        assertEquals(location.getDepth(), listenerlessLocation.getDepth());
+        assertEquals(location.getAim(), listenerlessLocation.getAim());
+    }
+
+    @Test
+    void testProcessBatch_EmptyBatch()
+    {
+        val horizontalDistance = RandomValueUtils.randomPositiveSinglePrecisionDouble();
+        location.setConfigValue(horizontalDistance, horizontalDistance, horizontalDistance);
+
+        location.processBatch(new CommandBatch(4), (horizontalLocation, depth) -> fail("Location did not change"));
+
+        assertEquals(horizontalDistance, location.getHorizontalLocation());
+        assertEquals(horizontalDistance, location.getDepth());
+        assertEquals(horizontalDistance, location.getAim());
+    }
 }
@@ -0,0 +1,52 @@
+package com.davidlowe.submarinekata.models;
+
+import com.davidlowe.submarinekata.RandomValueUtils;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocationTransformTest
+{
+    @Test
+    void andThen_matchesProcessCommand()
+    {
+        val location = new LocationImpl();
+        // Integer start and distances keep every operation exact, so the results must be identical.
+        val start = (double) Math.round(RandomValueUtils.randomPositiveSinglePrecisionDouble());
+        location.setConfigValue(start, start, start);
+
+        var transform = LocationTransform.IDENTITY;
+        for (int idx = 0; idx < 30; ++idx)
+        {
+            val direction = Direction.fromOrdinal(idx % 3);
+            val distance = (double) (idx * 7 % 11);
+            location.processCommand(new Command(direction, distance));
+            transform = transform.andThen(LocationTransform.of(direction, distance));
+        }
+
+        assertEquals(location.getHorizontalLocation(), transform.applyToHorizontal(start));
+        assertEquals(location.getDepth(), transform.applyToDepth(start, start));
+        assertEquals(location.getAim(), transform.applyToAim(start));
+    }
+
+    @Test
+    void andThen_isAssociative()
+    {
+        val a = new LocationTransform(3.0, 5.0, -2.0);
+        val b = new LocationTransform(7.0, -1.0, 4.0);
+        val c = new LocationTransform(-2.0, 6.0, 1.0);
+
+        assertEquals(a.andThen(b).andThen(c), a.andThen(b.andThen(c)));
+        assertEquals(a, LocationTransform.IDENTITY.andThen(a));
+        assertEquals(a, a.andThen(LocationTransform.IDENTITY));
+    }
+
+    @Test
+    void of_singleCommands()
+    {
+        assertEquals(new LocationTransform(2.5, 0.0, 0.0), LocationTransform.of(Direction.FORWARD, 2.5));
+        assertEquals(new LocationTransform(0.0, 0.0, -2.5), LocationTransform.of(Direction.UP, 2.5));
+        assertEquals(new LocationTransform(0.0, 0.0, 2.5), LocationTransform.of(Direction.DOWN, 2.5));
+    }
+}
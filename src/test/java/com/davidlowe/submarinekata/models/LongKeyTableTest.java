@@ -0,0 +1,89 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongKeyTableTest
+{
+    /**
+     * Stores each key's own value next to it, so moved values can be checked against their keys.
+     */
+    private static final class EchoTable extends LongKeyTable
+    {
+        private long[] values;
+
+        EchoTable()
+        {
+            super(DEFAULT_CAPACITY);
+            values = new long[slotCount()];
+        }
+
+        void add(long key)
+        {
+            val slot = addSlot(key);
+            values[slot] = key;
+        }
+
+        @Override
+        void moveValues(int[] newSlots)
+        {
+            val oldValues = values;
+            values = new long[slotCount()];
+            for (int oldIdx = 0; oldIdx < oldValues.length; ++oldIdx)
+            {
+                if (newSlots[oldIdx] >= 0)
+                    values[newSlots[oldIdx]] = oldValues[oldIdx];
+            }
+        }
+    }
+
+
+    @Test
+    void addSlot_growing_movesValuesWithTheirKeys()
+    {
+        val random = new SplittableRandom(3);
+        val table = new EchoTable();
+        val keys = new long[10_000];
+        table.add(0);
+        for (int idx = 0; idx < keys.length; ++idx)
+        {
+            keys[idx] = LongOpenHashMap.packKey(random.nextInt(), random.nextInt());
+            table.add(keys[idx]);
+        }
+
+        assertEquals(keys.length + 1, table.size());
+        for (val key : keys)
+            assertEquals(key, table.values[table.slotOf(key)]);
+        assertEquals(table.slotCount() - 1, table.slotOf(0));
+    }
+
+    @Test
+    void addSlot_existingKey_returnsItsSlot()
+    {
+        val table = new EchoTable();
+        val slot = table.addSlot(42);
+
+        assertEquals(slot, table.addSlot(42));
+        assertEquals(slot, table.slotOf(42));
+        assertEquals(1, table.size());
+        assertEquals(-1, table.slotOf(0));
+        assertEquals(-1, table.slotOf(43));
+    }
+
+    @Test
+    void clearKeys_emptiesTheTable()
+    {
+        val table = new EchoTable();
+        table.add(0);
+        table.add(7);
+        table.clearKeys();
+
+        assertTrue(table.isEmpty());
+        assertEquals(-1, table.slotOf(0));
+        assertEquals(-1, table.slotOf(7));
+    }
+}
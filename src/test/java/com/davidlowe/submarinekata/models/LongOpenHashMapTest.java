@@ -0,0 +1,78 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongOpenHashMapTest
+{
+    @Test
+    void packKey_roundTrips()
+    {
+        val key = LongOpenHashMap.packKey(-7, Integer.MIN_VALUE);
+
+        assertEquals(-7, LongOpenHashMap.unpackX(key));
+        assertEquals(Integer.MIN_VALUE, LongOpenHashMap.unpackY(key));
+        assertNotEquals(LongOpenHashMap.packKey(1, 2), LongOpenHashMap.packKey(2, 1));
+    }
+
+    @Test
+    void putAndGet()
+    {
+        val map = new LongOpenHashMap<String>();
+
+        assertNull(map.put(3, -4, "a"));
+        assertNull(map.put(0, 0, "b"));
+
+        assertEquals("a", map.get(3, -4));
+        assertEquals("b", map.get(0, 0));
+        assertNull(map.get(-4, 3));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void put_existingKey_replacesValue()
+    {
+        val map = new LongOpenHashMap<String>();
+        map.put(1, 1, "old");
+
+        assertEquals("old", map.put(1, 1, "new"));
+        assertEquals("new", map.get(1, 1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void put_manyKeys_resizes()
+    {
+        val map = new LongOpenHashMap<Integer>();
+        for (int x = -200; x < 200; ++x)
+            for (int y = -50; y < 50; ++y)
+                map.put(x, y, x * 1000 + y);
+
+        assertEquals(400 * 100, map.size());
+        for (int x = -200; x < 200; ++x)
+            for (int y = -50; y < 50; ++y)
+                assertEquals(x * 1000 + y, map.get(x, y));
+        assertNull(map.get(200, 0));
+    }
+
+    @Test
+    void put_nullValue_throws()
+    {
+        val map = new LongOpenHashMap<String>();
+
+        assertThrows(NullPointerException.class, () -> map.put(1, 1, null));
+    }
+
+    @Test
+    void clear()
+    {
+        val map = new LongOpenHashMap<String>();
+        map.put(1, 2, "a");
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1, 2));
+    }
+}
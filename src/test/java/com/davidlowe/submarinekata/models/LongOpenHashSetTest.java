@@ -0,0 +1,59 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongOpenHashSetTest
+{
+    @Test
+    void addAndContains()
+    {
+        val set = new LongOpenHashSet();
+
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(LongOpenHashMap.packKey(3, -4)));
+        assertFalse(set.add(LongOpenHashMap.packKey(3, -4)));
+
+        assertTrue(set.contains(LongOpenHashMap.packKey(3, -4)));
+        assertFalse(set.contains(LongOpenHashMap.packKey(-4, 3)));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void add_zeroKey()
+    {
+        val set = new LongOpenHashSet();
+
+        assertFalse(set.contains(0));
+        assertTrue(set.add(LongOpenHashMap.packKey(0, 0)));
+        assertFalse(set.add(0));
+
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void add_manyKeys_matchesHashSet()
+    {
+        val random = new SplittableRandom(5);
+        val set = new LongOpenHashSet();
+        val expected = new HashSet<Long>();
+        for (int idx = 0; idx < 100_000; ++idx)
+        {
+            val key = LongOpenHashMap.packKey(random.nextInt(-300, 300), random.nextInt(-300, 300));
+            assertEquals(expected.add(key), set.add(key));
+        }
+
+        assertEquals(expected.size(), set.size());
+        for (int x = -310; x < 310; ++x)
+        {
+            for (int y = -310; y < 310; y += 7)
+                assertEquals(expected.contains(LongOpenHashMap.packKey(x, y)), set.contains(LongOpenHashMap.packKey(x, y)));
+        }
+    }
+}
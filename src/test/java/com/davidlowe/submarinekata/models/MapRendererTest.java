@@ -0,0 +1,211 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapRendererTest
+{
+    @TempDir
+    Path tempDir;
+
+    /**
+     * @return A map spanning several tiles in both directions, including negative positions, with unscanned gaps.
+     */
+    private static SonarDb randomMap(SonarDb sonarDb)
+    {
+        val random = new SplittableRandom(7);
+        for (int idx = 0; idx < 2000; ++idx)
+            sonarDb.addScannedData(random.nextInt(-150, 150), random.nextInt(-80, 80), (char) random.nextInt('!', '~'));
+        return sonarDb;
+    }
+
+    /**
+     * @return The map's rows from 'fromDepth' to 'toDepth', as printed from getDepthIterator().
+     */
+    private static String expectedMap(SonarDb sonarDb, int fromDepth, int toDepth)
+    {
+        val bytes = new ByteArrayOutputStream();
+        val out = new PrintStream(bytes, true, StandardCharsets.ISO_8859_1);
+        val depthItor = sonarDb.getDepthIterator();
+        for (int depth = sonarDb.getMinDepth(); depthItor.hasNext(); ++depth)
+        {
+            val row = depthItor.next();
+            if (depth >= fromDepth && depth <= toDepth)
+                out.println(row);
+        }
+        return bytes.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String render(MapRenderer renderer, int fromDepth, int toDepth) throws IOException
+    {
+        val bytes = new ByteArrayOutputStream();
+        renderer.render(Channels.newChannel(bytes), fromDepth, toDepth);
+        return bytes.toString(StandardCharsets.ISO_8859_1);
+    }
+
+
+    @Test
+    void render_matchesDepthIterator()
+    {
+        val sonarDb = randomMap(new SonarDb());
+        val bytes = new ByteArrayOutputStream();
+
+        new Submarine(new LocationImpl(), new ScannedSonarDataDb(), sonarDb).printMap(new PrintStream(bytes, true, StandardCharsets.ISO_8859_1));
+
+        assertEquals(expectedMap(sonarDb, Integer.MIN_VALUE, Integer.MAX_VALUE), bytes.toString(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void render_nonLatin1Cell_writesQuestionMarkButPrintMapPrintsIt() throws IOException
+    {
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedData(0, 0, '\u2248');
+        sonarDb.addScannedData(1, 0, '\u00E9');
+        val bytes = new ByteArrayOutputStream();
+
+        new Submarine(new LocationImpl(), new ScannedSonarDataDb(), sonarDb).printMap(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+
+        assertEquals("?\u00E9" + System.lineSeparator(), render(new MapRenderer(sonarDb), Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals("\u2248\u00E9" + System.lineSeparator(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void render_splitsRowsWiderThanTheBuffer() throws IOException
+    {
+        val sonarDb = randomMap(new SonarDb());
+        val expected = expectedMap(sonarDb, Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        for (val bufferSize : new int[]{System.lineSeparator().length(), 7, 64, 299, 300, 301, 4096})
+            assertEquals(expected, render(new MapRenderer(sonarDb, bufferSize), Integer.MIN_VALUE, Integer.MAX_VALUE), "Buffer size " + bufferSize);
+    }
+
+    @Test
+    void render_onlyWritesRowsInRangeAndBounds() throws IOException
+    {
+        val sonarDb = randomMap(new SonarDb());
+        val renderer = new MapRenderer(sonarDb, 100);
+
+        assertEquals(expectedMap(sonarDb, -3, 40), render(renderer, -3, 40));
+        assertEquals(expectedMap(sonarDb, 5, 5), render(renderer, 5, 5));
+        assertEquals(expectedMap(sonarDb, Integer.MIN_VALUE, 0), render(renderer, Integer.MIN_VALUE, 0));
+        assertEquals("", render(renderer, 1000, 2000));
+    }
+
+    @Test
+    void render_countsRows() throws IOException
+    {
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedData(0, -2, 'a');
+        sonarDb.addScannedData(3, 4, 'b');
+
+        val renderer = new MapRenderer(sonarDb);
+        assertEquals(7, renderer.render(Channels.newChannel(new ByteArrayOutputStream())));
+        assertEquals(2, renderer.render(Channels.newChannel(new ByteArrayOutputStream()), 3, 100));
+    }
+
+    @Test
+    void render_emptyMapWritesNothing() throws IOException
+    {
+        assertEquals("", render(new MapRenderer(new SonarDb()), Integer.MIN_VALUE, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void render_concurrentSonarDb() throws IOException
+    {
+        val sonarDb = randomMap(new ConcurrentSonarDb());
+
+        assertEquals(expectedMap(sonarDb, Integer.MIN_VALUE, Integer.MAX_VALUE), render(new MapRenderer(sonarDb, 50), Integer.MIN_VALUE, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void render_toFileReplacesItsContents() throws IOException
+    {
+        val sonarDb = randomMap(new SonarDb());
+        val mapFile = Files.writeString(tempDir.resolve("map.txt"), "x".repeat(100_000));
+
+        val rows = new MapRenderer(sonarDb).render(mapFile, -10, 10);
+
+        assertEquals(21, rows);
+        assertEquals(expectedMap(sonarDb, -10, 10), Files.readString(mapFile, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void render_viewportMatchesSonarDbRender() throws IOException
+    {
+        val sonarDb = randomMap(new SonarDb());
+        val expected = new StringBuilder();
+        for (val row : sonarDb.render(-200, -100, 30, 10))
+            expected.append(row).append(System.lineSeparator());
+
+        val bytes = new ByteArrayOutputStream();
+        val rows = new MapRenderer(sonarDb, 100).render(Channels.newChannel(bytes), -200, -100, 30, 10);
+
+        assertEquals(111, rows);
+        assertEquals(expected.toString(), bytes.toString(StandardCharsets.ISO_8859_1));
+        assertThrows(IllegalArgumentException.class, () -> new MapRenderer(sonarDb).render(Channels.newChannel(bytes), 0, 1, 0, 0));
+    }
+
+    @Test
+    void renderParallel_matchesRender() throws IOException
+    {
+        val sonarDb = randomMap(new SonarDb());
+        // Wide enough that each fork-join task only renders a few rows.
+        sonarDb.addScannedData(100_000, 0, '@');
+        val renderer = new MapRenderer(sonarDb);
+
+        try (val pool = new ForkJoinPool(4))
+        {
+            for (val range : new int[][]{{Integer.MIN_VALUE, Integer.MAX_VALUE}, {-3, 40}, {7, 7}, {1000, 2000}})
+            {
+                val bytes = new ByteArrayOutputStream();
+                val rows = renderer.renderParallel(Channels.newChannel(bytes), pool, range[0], range[1]);
+
+                val expected = render(renderer, range[0], range[1]);
+                assertEquals(expected, bytes.toString(StandardCharsets.ISO_8859_1));
+                assertEquals(expected.lines().count(), rows);
+            }
+        }
+    }
+
+    @Test
+    void renderParallel_toFile() throws IOException
+    {
+        val sonarDb = randomMap(new ConcurrentSonarDb());
+        val mapFile = Files.writeString(tempDir.resolve("map.txt"), "x".repeat(100_000));
+
+        try (val pool = new ForkJoinPool(3))
+        {
+            new MapRenderer(sonarDb).renderParallel(mapFile, pool, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+
+        assertEquals(expectedMap(sonarDb, Integer.MIN_VALUE, Integer.MAX_VALUE), Files.readString(mapFile, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void renderParallel_emptyMapWritesNothing() throws IOException
+    {
+        val bytes = new ByteArrayOutputStream();
+
+        assertEquals(0, new MapRenderer(new SonarDb()).renderParallel(Channels.newChannel(bytes), ForkJoinPool.commonPool(), Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(0, bytes.size());
+    }
+
+    @Test
+    void constructor_rejectsBufferShorterThanALineSeparator()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new MapRenderer(new SonarDb(), 0));
+    }
+}
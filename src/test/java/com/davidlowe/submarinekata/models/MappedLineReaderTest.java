@@ -0,0 +1,160 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedLineReaderTest
+{
+    private static final String MIXED_TERMINATORS = "forward 5\ndown 5\r\nforward 8\rup 3\n\ndown 8\r\n\r\nforward 2";
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> readAll(MappedLineReader reader) throws IOException
+    {
+        val lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null)
+            lines.add(line);
+        return lines;
+    }
+
+    private static List<String> readAllBuffered(String content) throws IOException
+    {
+        val lines = new ArrayList<String>();
+        try (val reader = new BufferedReader(new StringReader(content)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+        return lines;
+    }
+
+    private File write(String content) throws IOException
+    {
+        return Files.writeString(tempDir.resolve("commands.txt"), content).toFile();
+    }
+
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 5, 7, 11, 16, MappedLineReader.DEFAULT_WINDOW_SIZE})
+    void readLine_matchesBufferedReader(int windowSize) throws IOException
+    {
+        for (val content : List.of(MIXED_TERMINATORS, MIXED_TERMINATORS + "\n", MIXED_TERMINATORS + "\r", "\n\n", "\r\n", "q"))
+        {
+            try (val reader = new MappedLineReader(write(content), windowSize + 8))
+            {
+                assertEquals(readAllBuffered(content), readAll(reader), content);
+            }
+        }
+    }
+
+    @Test
+    void readLine_crlfSplitAcrossWindows() throws IOException
+    {
+        // "up 1234\r" fills the first 8-byte window exactly, so its '\n' starts the next window.
+        try (val reader = new MappedLineReader(write("up 1234\r\ndown 2\r\n"), 8))
+        {
+            assertEquals(List.of("up 1234", "down 2"), readAll(reader));
+        }
+    }
+
+    @Test
+    void readLine_emptyFile() throws IOException
+    {
+        try (val reader = new MappedLineReader(write("")))
+        {
+            assertNull(reader.readLineSlice());
+            assertNull(reader.readLineSlice());
+        }
+    }
+
+    @Test
+    void readLine_lineLongerThanWindow_throws() throws IOException
+    {
+        try (val reader = new MappedLineReader(write("up 1\nforward 12345\n"), 8))
+        {
+            assertEquals("up 1", reader.readLine());
+            assertThrows(IOException.class, reader::readLine);
+        }
+    }
+
+    @Test
+    void readLineSlice_isParsedInPlace() throws Exception
+    {
+        val parser = new CommandParser();
+        try (val reader = new MappedLineReader(write("forward 5\nup 2.5\n"), 12))
+        {
+            val slice = reader.readLineSlice();
+            assertEquals(9, slice.length());
+            assertEquals('f', slice.charAt(0));
+            assertEquals("forward 5", slice.toString());
+            parser.parse(slice, 1);
+            assertEquals(Direction.FORWARD, parser.getDirection());
+            assertEquals(5.0, parser.getDistance());
+
+            parser.parse(reader.readLineSlice(), 2);
+            assertEquals(Direction.UP, parser.getDirection());
+            assertEquals(2.5, parser.getDistance());
+            assertNull(reader.readLineSlice());
+        }
+    }
+
+    @Test
+    void commandStream_memoryMappedMatchesBuffered() throws IOException
+    {
+        val commandFile = write(MIXED_TERMINATORS);
+        val commandStream = new CommandStream();
+
+        commandStream.setConfigValue(commandFile);
+        assertFalse(commandStream.isMemoryMapped());
+        val buffered = new ArrayList<String>();
+        String line;
+        while ((line = commandStream.readLine()) != null)
+            buffered.add(line);
+
+        commandStream.setConfigValue(commandFile, true);
+        assertTrue(commandStream.isMemoryMapped());
+        val mapped = new ArrayList<String>();
+        CharSequence slice;
+        while ((slice = commandStream.readLineSlice()) != null)
+            mapped.add(slice.toString());
+
+        assertEquals(buffered, mapped);
+    }
+
+    @Test
+    void readLine_channelRange() throws IOException
+    {
+        val commandFile = write("forward 5\ndown 2\nup 1\n");
+        try (val channel = FileChannel.open(commandFile.toPath()))
+        {
+            try (val reader = new MappedLineReader(channel, 10, 17))
+            {
+                assertEquals(List.of("down 2"), readAll(reader));
+            }
+            // The shared channel is still open.
+            try (val reader = new MappedLineReader(channel, 17, channel.size()))
+            {
+                assertEquals(List.of("up 1"), readAll(reader));
+            }
+            assertThrows(IllegalArgumentException.class, () -> new MappedLineReader(channel, 5, channel.size() + 1));
+        }
+    }
+}
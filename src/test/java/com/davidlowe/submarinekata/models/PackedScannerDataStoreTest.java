@@ -0,0 +1,108 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedScannerDataStoreTest
+{
+    @Test
+    void putAndGet()
+    {
+        val store = new PackedScannerDataStore();
+        store.put(3, -4, "abc def g".toCharArray());
+        store.put(0, 0, new ScannerData());
+
+        assertEquals("abc def g", store.get(3, -4).getData());
+        assertSame(store.get(3, -4), store.get(3, -4));
+        assertEquals(new ScannerData(), store.get(0, 0));
+        assertNull(store.get(-4, 3));
+        assertEquals(2, store.size());
+        assertEquals(8, store.getSymbolCount());
+    }
+
+    @Test
+    void put_existingPosition_replacesGrid()
+    {
+        val store = new PackedScannerDataStore();
+        store.put(1, 1, "aaaaaaaaa".toCharArray());
+        store.put(1, 1, "bbbbbbbbb".toCharArray());
+
+        assertEquals("bbbbbbbbb", store.get(1, 1).getData());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void put_manyEntries_matchesHashMap()
+    {
+        val random = new SplittableRandom(11);
+        val store = new PackedScannerDataStore();
+        val expected = new HashMap<Long, String>();
+        for (int idx = 0; idx < 50_000; ++idx)
+        {
+            val x = random.nextInt(-500, 500);
+            val y = random.nextInt(-500, 500);
+            val cells = new char[9];
+            for (int cell = 0; cell < cells.length; ++cell)
+                cells[cell] = (char) random.nextInt(' ', '~' + 1);
+
+            store.put(x, y, cells);
+            expected.put(LongOpenHashMap.packKey(x, y), new String(cells));
+        }
+
+        assertEquals(expected.size(), store.size());
+        for (val entry : expected.entrySet())
+            assertEquals(entry.getValue(), store.get(LongOpenHashMap.unpackX(entry.getKey()), LongOpenHashMap.unpackY(entry.getKey())).getData());
+    }
+
+    @Test
+    void put_tooManySymbols_throws()
+    {
+        val store = new PackedScannerDataStore();
+        for (int symbol = 0; symbol < ScannerSymbols.MAX_SYMBOLS; ++symbol)
+            store.put(symbol, 0, String.valueOf((char) (0x100 + symbol)).repeat(9).toCharArray());
+
+        assertThrows(IllegalArgumentException.class, () -> store.put(0, 1, "é........".toCharArray()));
+        assertEquals(String.valueOf((char) 0x17F).repeat(9), store.get(ScannerSymbols.MAX_SYMBOLS - 1, 0).getData());
+        assertThrows(IllegalArgumentException.class, () -> store.put(0, 1, "abc".toCharArray()));
+    }
+
+    @Test
+    void put_identicalGrids_storesEachGridOnce()
+    {
+        val store = new PackedScannerDataStore();
+        for (int x = 0; x < 1000; ++x)
+            store.put(x, 0, (x % 4 == 0 ? "#########" : ".........").toCharArray());
+
+        assertEquals(1000, store.size());
+        assertEquals(2, store.getDistinctGridCount());
+        assertEquals(500.0, store.getDeduplicationRatio());
+        assertEquals("#########", store.get(8, 0).getData());
+        assertEquals(".........", store.get(9, 0).getData());
+        assertSame(store.get(8, 0), store.get(4, 0));
+        assertSame(store.get(9, 0), store.get(1, 0));
+    }
+
+    @Test
+    void compact_thenPut_stillFindsExistingGrids()
+    {
+        val store = new PackedScannerDataStore();
+        assertEquals(1.0, store.getDeduplicationRatio());
+        store.put(0, 0, "aaaaaaaaa".toCharArray());
+        store.put(1, 0, "bbbbbbbbb".toCharArray());
+        store.compact();
+
+        store.put(2, 0, "aaaaaaaaa".toCharArray());
+        store.put(3, 0, "ccccccccc".toCharArray());
+
+        assertEquals(3, store.getDistinctGridCount());
+        assertEquals("aaaaaaaaa", store.get(0, 0).getData());
+        assertSame(store.get(0, 0), store.get(2, 0));
+        assertEquals("bbbbbbbbb", store.get(1, 0).getData());
+        assertEquals("ccccccccc", store.get(3, 0).getData());
+    }
+}
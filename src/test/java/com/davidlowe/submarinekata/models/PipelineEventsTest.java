@@ -0,0 +1,177 @@
+package com.davidlowe.submarinekata.models;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineEventsTest
+{
+    @TempDir
+    Path tempDir;
+
+    private Recording recording;
+
+    @BeforeEach
+    void startRecording()
+    {
+        recording = new Recording();
+        for (val eventType : PipelineEvents.EVENT_TYPES)
+            recording.enable(eventType);
+        recording.start();
+    }
+
+    @AfterEach
+    void closeRecording()
+    {
+        recording.close();
+    }
+
+    /**
+     * Stops the recording and returns every event it recorded.
+     */
+    private List<RecordedEvent> stopRecording() throws IOException
+    {
+        recording.stop();
+        val file = tempDir.resolve("recording.jfr");
+        recording.dump(file);
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name)
+    {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name)).toList();
+    }
+
+    private static long totalCommands(List<RecordedEvent> events)
+    {
+        return events.stream().mapToLong(event -> event.getInt("commandCount")).sum();
+    }
+
+    /**
+     * Runs 'commands' from a command file, or as terminal input if 'interactive'.
+     */
+    private int runCommands(String commands, boolean interactive, Submarine submarine) throws Exception
+    {
+        val commandStream = new CommandStream();
+        val stdin = System.in;
+        try
+        {
+            if (interactive)
+            {
+                System.setIn(new ByteArrayInputStream(commands.getBytes(StandardCharsets.US_ASCII)));
+                commandStream.setConfigValue(null, false);
+            }
+            else
+            {
+                commandStream.setConfigValue(Files.writeString(tempDir.resolve("commands.txt"), commands).toFile(), true);
+            }
+        }
+        finally
+        {
+            System.setIn(stdin);
+        }
+
+        val factory = new CommandFactory(event -> submarine.commandAvailable((CommandAvailableEvent) event), commandStream, List.of(submarine));
+        try
+        {
+            return factory.start().get();
+        }
+        finally
+        {
+            factory.stop();
+        }
+    }
+
+
+    @Test
+    void batchPipeline_commitsOneEventPerBatchAndStage() throws Exception
+    {
+        val commandCount = 2 * CommandFactory.BATCH_SIZE + 100;
+        val commands = new StringBuilder();
+        for (int idx = 0; idx < commandCount; ++idx)
+            commands.append(idx % 2 == 0 ? "forward 1\n" : "down 1\n");
+        val submarine = new Submarine(new LocationImpl());
+
+        assertEquals(commandCount, runCommands(commands.toString(), false, submarine));
+
+        val events = stopRecording();
+        val reads = named(events, "submarine.CommandRead");
+        assertEquals(3, reads.size());
+        assertEquals(commandCount, totalCommands(reads));
+        assertEquals(List.of(1L, CommandFactory.BATCH_SIZE + 1L, 2L * CommandFactory.BATCH_SIZE + 1), reads.stream().map(event -> event.getLong("firstLine")).sorted().toList());
+
+        val dispatches = named(events, "submarine.CommandDispatched");
+        assertEquals(3, dispatches.size());
+        assertEquals(commandCount, totalCommands(dispatches));
+        assertTrue(dispatches.stream().allMatch(event -> event.getString("mode").equals("batch")));
+
+        val updates = named(events, "submarine.LocationUpdated");
+        assertEquals(3, updates.size());
+        assertEquals(commandCount, totalCommands(updates));
+        assertTrue(updates.stream().anyMatch(event -> event.getDouble("horizontalLocation") == submarine.getCurrentLocation().getHorizontalLocation()));
+
+        val scans = named(events, "submarine.ScanApplied");
+        assertEquals(3, scans.size());
+        assertEquals(commandCount, totalCommands(scans));
+        // Every command moves the submarine, and the empty scanner data never hits.
+        assertEquals(commandCount, scans.stream().mapToLong(event -> event.getLong("lookups")).sum());
+        assertEquals(0, scans.stream().mapToLong(event -> event.getLong("hits")).sum());
+
+        assertTrue(named(events, "submarine.CommandParsed").isEmpty());
+    }
+
+    @Test
+    void eventPipeline_commitsOneEventPerCommandAndStage() throws Exception
+    {
+        val submarine = new Submarine(new LocationImpl());
+
+        assertEquals(3, runCommands("forward 5\ndown 2\nforward 3\nq\n", true, submarine));
+
+        val events = stopRecording();
+        assertEquals(3, named(events, "submarine.CommandRead").size());
+        val parsed = named(events, "submarine.CommandParsed");
+        assertEquals(List.of("FORWARD", "DOWN", "FORWARD"), parsed.stream().map(event -> event.getString("direction")).toList());
+        assertEquals(List.of(5.0, 2.0, 3.0), parsed.stream().map(event -> event.getDouble("distance")).toList());
+        assertTrue(named(events, "submarine.CommandDispatched").stream().allMatch(event -> event.getString("mode").equals("event") && event.getInt("commandCount") == 1));
+        assertEquals(3, named(events, "submarine.LocationUpdated").size());
+        assertEquals(3, named(events, "submarine.ScanApplied").size());
+    }
+
+    @Test
+    void commandCreate_commitsCommandParsed() throws Exception
+    {
+        Command.create("up 4");
+
+        val parsed = named(stopRecording(), "submarine.CommandParsed");
+        assertEquals(1, parsed.size());
+        assertEquals("UP", parsed.getFirst().getString("direction"));
+        assertEquals(4.0, parsed.getFirst().getDouble("distance"));
+    }
+
+    @Test
+    void startRecording_writesDestinationWhenStopped() throws Exception
+    {
+        val destination = tempDir.resolve("run.jfr");
+        try (val runRecording = PipelineEvents.startRecording(destination))
+        {
+            Command.create("forward 2");
+            runRecording.stop();
+        }
+
+        assertFalse(named(RecordingFile.readAllEvents(destination), "submarine.CommandParsed").isEmpty());
+    }
+}
@@ -0,0 +1,132 @@
+package com.davidlowe.submarinekata.models;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineMetricsTest
+{
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(registry);
+
+    private double count(String name, String... tags)
+    {
+        return registry.get(name).tags(tags).counter().count();
+    }
+
+    private long timerCount(String name, String... tags)
+    {
+        return registry.get(name).tags(tags).timer().count();
+    }
+
+    /**
+     * Runs 'commands' from a command file, or as terminal input if 'interactive'.
+     */
+    private int runCommands(String commands, boolean interactive, Submarine submarine) throws IOException, ExecutionException, InterruptedException
+    {
+        val commandStream = new CommandStream();
+        val stdin = System.in;
+        try
+        {
+            if (interactive)
+            {
+                System.setIn(new ByteArrayInputStream(commands.getBytes(StandardCharsets.US_ASCII)));
+                commandStream.setConfigValue(null, false);
+            }
+            else
+            {
+                commandStream.setConfigValue(Files.writeString(tempDir.resolve("commands.txt"), commands).toFile(), true);
+            }
+        }
+        finally
+        {
+            System.setIn(stdin);
+        }
+
+        val factory = new CommandFactory(event -> submarine.commandAvailable((CommandAvailableEvent) event), commandStream, List.of(submarine), metrics);
+        try
+        {
+            return factory.start().get();
+        }
+        finally
+        {
+            factory.stop();
+        }
+    }
+
+
+    @Test
+    void batchPipeline_recordsCommandsDispatchAndScans() throws Exception
+    {
+        val scannedSonarDataDb = new ScannedSonarDataDb(metrics);
+        scannedSonarDataDb.loadData(new File("docs/scanner-data.json"));
+        val submarine = new Submarine(new LocationImpl(), scannedSonarDataDb, new SonarDb(), metrics);
+
+        val commandsRead = runCommands(Files.readString(Path.of("docs/input.txt")), false, submarine);
+
+        assertEquals(commandsRead, count("submarine.commands.parsed"));
+        assertEquals(0, count("submarine.commands.parse.failures"));
+        assertEquals(1, timerCount("submarine.command.dispatch", "mode", "batch"));
+        assertEquals(1, timerCount("submarine.location.process", "mode", "batch"));
+        assertEquals(0, timerCount("submarine.command.dispatch", "mode", "event"));
+        assertEquals(1, timerCount("submarine.scanner.load"));
+
+        val hits = count("submarine.scanner.lookups", "result", "hit");
+        val misses = count("submarine.scanner.lookups", "result", "miss");
+        assertTrue(hits > 0);
+        assertTrue(misses > 0);
+        assertTrue(hits + misses <= commandsRead);
+
+        assertEquals(submarine.getSonarDb().getCellCount(), registry.get("submarine.sonar.cells").gauge().value());
+        assertEquals(submarine.getSonarDb().getTileCount(), registry.get("submarine.sonar.tiles").gauge().value());
+    }
+
+    @Test
+    void eventPipeline_recordsEveryCommand() throws Exception
+    {
+        val submarine = new Submarine(new LocationImpl(), new ScannedSonarDataDb(), new SonarDb(), metrics);
+
+        val commandsRead = runCommands("forward 5\ndown 2\nforward 3\nq\n", true, submarine);
+
+        assertEquals(3, commandsRead);
+        assertEquals(3, count("submarine.commands.parsed"));
+        assertEquals(3, timerCount("submarine.command.dispatch", "mode", "event"));
+        assertEquals(3, timerCount("submarine.location.process", "mode", "command"));
+        assertEquals(3, count("submarine.scanner.lookups", "result", "miss"));
+    }
+
+    @Test
+    void parseFailure_isCounted() throws IOException
+    {
+        val submarine = new Submarine(new LocationImpl(), new ScannedSonarDataDb(), new SonarDb(), metrics);
+
+        assertThrows(ExecutionException.class, () -> runCommands("forward 5\nsideways 2\n", false, submarine));
+
+        assertEquals(1, count("submarine.commands.parse.failures"));
+        assertEquals(1, count("submarine.commands.parsed"));
+    }
+
+    @Test
+    void noop_recordsNothing()
+    {
+        PipelineMetrics.NOOP.commandsParsed(10);
+        PipelineMetrics.NOOP.scannerLookup(true);
+
+        assertEquals(0, PipelineMetrics.NOOP.getRegistry().get("submarine.commands.parsed").counter().count());
+    }
+}
@@ -0,0 +1,85 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutePositionsTest
+{
+    @TempDir
+    Path tempDir;
+
+    /**
+     * @return Every position a submarine looks up while processing the commands in 'lines' one at a time.
+     */
+    private static HashSet<Long> scannedPositions(Iterable<String> lines, double horizontalStart, double depthStart, double aimStart)
+            throws ParseException
+    {
+        val location = new LocationImpl();
+        location.setConfigValue(horizontalStart, depthStart, aimStart);
+        val positions = new HashSet<Long>();
+        for (val line : lines)
+        {
+            if (location.processCommand(Command.create(line)))
+                positions.add(ScannedSonarDataDb.positionKey(location.getHorizontalLocation(), location.getDepth()));
+        }
+        return positions;
+    }
+
+    private static void assertSamePositions(HashSet<Long> expected, LongOpenHashSet actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        for (val position : expected)
+            assertTrue(actual.contains(position), "Missing position " + position);
+    }
+
+
+    @Test
+    void collect_matchesScannedPositions() throws Exception
+    {
+        val commandFile = new File("docs/input.txt");
+        val lines = Files.readAllLines(commandFile.toPath());
+
+        assertSamePositions(scannedPositions(lines, 0, 0, 0), RoutePositions.collect(commandFile, 0, 0, 0));
+        assertSamePositions(scannedPositions(lines, -12.5, 40, 0.25), RoutePositions.collect(commandFile, -12.5, 40, 0.25));
+    }
+
+    @Test
+    void collect_spansBatchesAndFractions() throws Exception
+    {
+        val lines = new ArrayList<String>();
+        for (int idx = 0; idx < 2 * CommandFactory.BATCH_SIZE + 10; ++idx)
+            lines.add(switch (idx % 3)
+            {
+                case 0 -> "forward 1.3";
+                case 1 -> "down 0.7";
+                default -> "up 0.2";
+            });
+        val commandFile = Files.write(tempDir.resolve("commands.txt"), lines).toFile();
+
+        assertSamePositions(scannedPositions(lines, 0, 0, 0), RoutePositions.collect(commandFile, 0, 0, 0));
+    }
+
+    @Test
+    void collect_stopsAtQuitOrInvalidLine() throws Exception
+    {
+        val route = List.of("forward 5", "down 2", "forward 3");
+        val expected = scannedPositions(route, 0, 0, 0);
+
+        for (val stop : new String[]{"q", "sideways 4"})
+        {
+            val commandFile = Files.writeString(tempDir.resolve("commands.txt"), String.join("\n", route) + "\n" + stop + "\nforward 100\n").toFile();
+            assertSamePositions(expected, RoutePositions.collect(commandFile, 0, 0, 0));
+        }
+    }
+}
@@ -1,18 +1,143 @@
 package com.davidlowe.submarinekata.models;
 
+import lombok.val;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class ScannedSonarDataDbTest
 {
+    @TempDir
+    Path tempDir;
 
     @Test
     void loadData() throws IOException
     {
         ScannedSonarDataDb db = new ScannedSonarDataDb();
-        File jsonFile = new File("C:\\workspaces\\SubmarineKata\\docs\\scanner-data.json");
+        File jsonFile = new File("docs/scanner-data.json");
         db.loadData(jsonFile);
+
+        val scannerData = db.getScannerKey2ScannerData(8, 17);
+        assertNotNull(scannerData);
+        assertEquals("-+*.#=%.:", scannerData.getData());
+    }
+
+    @Test
+    void loadData_negativeAndWhitespaceKeys() throws IOException
+    {
+        val jsonFile = writeJson("{\"(-3, -7)\":[\"a\",\"b\",\"c\",\"d\",\"e\",\"f\",\"g\",\"h\",\"i\"],\"( 4 ,5 )\":[\" \",\" \",\" \",\" \",\" \",\" \",\" \",\" \",\" \"]}");
+
+        val db = new ScannedSonarDataDb();
+        db.loadData(jsonFile);
+
+        assertEquals("abcdefghi", db.getScannerKey2ScannerData(-3, -7).getData());
+        assertEquals(" ".repeat(9), db.getScannerKey2ScannerData(4, 5).getData());
+        assertNull(db.getScannerKey2ScannerData(0, 0));
+    }
+
+    private File writeRepeatedGridJson() throws IOException
+    {
+        return writeJson("{\"(0,0)\":[\".\",\".\",\".\",\".\",\".\",\".\",\".\",\".\",\".\"],"
+                         + "\"(1,0)\":[\".\",\".\",\".\",\".\",\"#\",\".\",\".\",\".\",\".\"],"
+                         + "\"(2,0)\":[\".\",\".\",\".\",\".\",\".\",\".\",\".\",\".\",\".\"]}");
+    }
+
+    @Test
+    void loadData_packsGrids() throws IOException
+    {
+        val db = new ScannedSonarDataDb();
+        db.loadData(writeRepeatedGridJson());
+
+        val store = assertInstanceOf(PackedScannerDataStore.class, db.getScannerDataStore());
+        assertEquals(2, store.getDistinctGridCount());
+        assertEquals(1.5, store.getDeduplicationRatio());
+        assertSame(db.getScannerKey2ScannerData(0, 0), db.getScannerKey2ScannerData(2, 0));
+        assertEquals("....#....", db.getScannerKey2ScannerData(1, 0).getData());
+
+        db.setScannerKey2ScannerData(3, 0, new ScannerData("@@@@@@@@@"));
+        assertEquals("@@@@@@@@@", db.getScannerKey2ScannerData(3, 0).getData());
+    }
+
+    @Test
+    void loadData_ontoSetGrids_sharesIdenticalGrids() throws IOException
+    {
+        val db = new ScannedSonarDataDb();
+        db.setScannerKey2ScannerData(9, 9, new ScannerData("........."));
+        db.setScannerKey2ScannerData(8, 8, new ScannerData("abcdefghi"));
+        db.loadData(writeRepeatedGridJson());
+
+        // Grids set before the load are packed the same way as the loaded ones, and shared with them.
+        val store = assertInstanceOf(PackedScannerDataStore.class, db.getScannerDataStore());
+        assertEquals(5, store.size());
+        assertEquals(3, store.getDistinctGridCount());
+        assertEquals("....#....", db.getScannerKey2ScannerData(1, 0).getData());
+        assertEquals("abcdefghi", db.getScannerKey2ScannerData(8, 8).getData());
+        assertSame(db.getScannerKey2ScannerData(9, 9), db.getScannerKey2ScannerData(2, 0));
+
+        db.setScannerKey2ScannerData(0, 0, new ScannerData("abcdefghi"));
+        assertEquals("abcdefghi", db.getScannerKey2ScannerData(0, 0).getData());
+        assertEquals(3, store.getDistinctGridCount());
+    }
+
+    @Test
+    void loadData_invalidKey_throws() throws IOException
+    {
+        val jsonFile = writeJson("{\"(1;2)\":[\"a\",\"b\",\"c\",\"d\",\"e\",\"f\",\"g\",\"h\",\"i\"]}");
+
+        assertThrows(IllegalArgumentException.class, () -> new ScannedSonarDataDb().loadData(jsonFile));
+    }
+
+    @Test
+    void loadData_invalidDataLength_throws() throws IOException
+    {
+        val jsonFile = writeJson("{\"(1,2)\":[\"a\",\"b\",\"c\"]}");
+
+        assertThrows(IllegalArgumentException.class, () -> new ScannedSonarDataDb().loadData(jsonFile));
+    }
+
+    @Test
+    void loadData_notAnObject_throws() throws IOException
+    {
+        val jsonFile = writeJson("[\"(1,2)\"]");
+
+        assertThrows(IllegalArgumentException.class, () -> new ScannedSonarDataDb().loadData(jsonFile));
+    }
+
+    @Test
+    void makeReadOnly_rejectsChanges() throws IOException
+    {
+        val db = new ScannedSonarDataDb();
+        db.loadData(new File("docs/scanner-data.json"));
+        db.makeReadOnly();
+
+        assertTrue(db.isReadOnly());
+        assertEquals("-+*.#=%.:", db.getScannerKey2ScannerData(8, 17).getData());
+        assertThrows(IllegalStateException.class, () -> db.loadData(new File("docs/scanner-data.json")));
+        assertThrows(IllegalStateException.class, db::clear);
+    }
+
+    @Test
+    void loadDataLazily_decodesOnLookup() throws IOException
+    {
+        val db = new ScannedSonarDataDb();
+        db.loadDataLazily(new File("docs/scanner-data.json"));
+
+        val store = assertInstanceOf(LazyJsonScannerDataStore.class, db.getScannerDataStore());
+        assertEquals(0, store.getDecodedCount());
+        assertEquals("-+*.#=%.:", db.getScannerKey2ScannerData(8, 17).getData());
+        assertSame(db.getScannerKey2ScannerData(8, 17), db.getScannerKey2ScannerData(8, 17));
+        assertEquals(1, store.getDecodedCount());
+        assertThrows(IllegalStateException.class, () -> db.setScannerKey2ScannerData(0, 0, new ScannerData()));
+    }
+
+    private File writeJson(String json) throws IOException
+    {
+        return Files.writeString(tempDir.resolve("scanner-data.json"), json).toFile();
     }
-}
\ No newline at end of file
+}
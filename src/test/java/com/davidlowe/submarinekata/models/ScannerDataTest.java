@@ -3,6 +3,7 @@ package com.davidlowe.submarinekata.models;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ScannerDataTest
@@ -59,4 +60,61 @@ class ScannerDataTest
             scannerData.getRow(-1);
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void getCell()
+    {
+        ScannerData scannerData = new ScannerData(DEFAULT_TEST_DATA);
+
+        assertEquals('1', scannerData.getCell(0, 0));
+        assertEquals('6', scannerData.getCell(1, 2));
+        assertEquals('8', scannerData.getCell(2, 1));
+    }
+
+    @Test
+    void getCell_invalidCell()
+    {
+        ScannerData scannerData = new ScannerData(DEFAULT_TEST_DATA);
+
+        assertThrows(IllegalArgumentException.class, () -> scannerData.getCell(ScannerData.ARRAY_ROW_MAX_SIZE, 0));
+        assertThrows(IllegalArgumentException.class, () -> scannerData.getCell(0, -1));
+    }
+
+    @Test
+    void equals_comparesGrids()
+    {
+        assertEquals(new ScannerData(DEFAULT_TEST_DATA), new ScannerData(new String(DEFAULT_TEST_DATA.toCharArray())));
+        assertEquals(new ScannerData(DEFAULT_TEST_DATA).hashCode(), new ScannerData(DEFAULT_TEST_DATA).hashCode());
+        assertNotEquals(new ScannerData(DEFAULT_TEST_DATA), new ScannerData("123456780"));
+    }
+
+    @Test
+    void packedGrid_decodesEveryCell()
+    {
+        // Latin-1 and wider symbols don't fit the ASCII dictionary, so the grid gets a dictionary of its own.
+        for (String data : new String[]{" \u007F~!#.:*@", "\u00E9\u00FF\u0100\u2248 #\u2248\u00E9."})
+        {
+            ScannerData scannerData = new ScannerData(data);
+
+            assertEquals(data, scannerData.getData());
+            assertEquals(data.substring(3, 6), scannerData.getRow(1));
+            assertEquals("" + data.charAt(2) + data.charAt(5) + data.charAt(8), scannerData.getColumn(2));
+            assertEquals(data.charAt(7), scannerData.getCell(2, 1));
+            assertEquals(data.hashCode(), scannerData.hashCode());
+        }
+    }
+
+    @Test
+    void equals_comparesCellsAcrossDictionaries()
+    {
+        PackedScannerDataStore store = new PackedScannerDataStore();
+        // Gives the store's dictionary different codes from ASCII's.
+        store.put(0, 0, "\u00E9xyzxyzxy".toCharArray());
+        store.put(1, 0, DEFAULT_TEST_DATA.toCharArray());
+
+        assertEquals(new ScannerData(DEFAULT_TEST_DATA), store.get(1, 0));
+        assertEquals(store.get(1, 0), new ScannerData(DEFAULT_TEST_DATA));
+        assertEquals(new ScannerData(DEFAULT_TEST_DATA).hashCode(), store.get(1, 0).hashCode());
+        assertNotEquals(new ScannerData("\u00E9xyzxyzxx"), store.get(0, 0));
+    }
+}
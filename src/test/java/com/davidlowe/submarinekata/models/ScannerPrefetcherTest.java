@@ -0,0 +1,203 @@
+package com.davidlowe.submarinekata.models;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScannerPrefetcherTest
+{
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(registry);
+
+    private double count(String name, String... tags)
+    {
+        return registry.get(name).tags(tags).counter().count();
+    }
+
+    private static List<CommandBatch> readBatches(File commandFile, int batchSize) throws IOException, ParseException
+    {
+        val batches = new ArrayList<CommandBatch>();
+        var batch = new CommandBatch(batchSize);
+        for (val line : Files.readAllLines(commandFile.toPath()))
+        {
+            val command = Command.create(line);
+            batch.add(command.direction(), command.distance());
+            if (batch.isFull())
+            {
+                batches.add(batch);
+                batch = new CommandBatch(batchSize);
+            }
+        }
+        if (!batch.isEmpty())
+            batches.add(batch);
+        return batches;
+    }
+
+
+    @Test
+    void commandsAvailable_appliesEachBatchOnceTheNextArrives()
+    {
+        val applied = new ArrayList<List<Command>>();
+        CommandBatchListener applyBatch = commands ->
+        {
+            val copy = new ArrayList<Command>();
+            for (int idx = 0; idx < commands.size(); ++idx)
+                copy.add(commands.getCommand(idx));
+            applied.add(copy);
+        };
+        val prefetcher = new ScannerPrefetcher(new ScannedSonarDataDb(), new LocationImpl(), applyBatch, metrics);
+
+        val batch = new CommandBatch(2);
+        batch.add(Direction.FORWARD, 5);
+        batch.add(Direction.DOWN, 2);
+        prefetcher.commandsAvailable(batch);
+        assertTrue(applied.isEmpty());
+
+        // The caller refills its batch, as CommandFactory does.
+        batch.clear();
+        batch.add(Direction.UP, 1);
+        prefetcher.commandsAvailable(batch);
+        assertEquals(List.of(List.of(new Command(Direction.FORWARD, 5), new Command(Direction.DOWN, 2))), applied);
+
+        prefetcher.finish();
+        prefetcher.finish();
+        assertEquals(2, applied.size());
+        assertEquals(List.of(new Command(Direction.UP, 1)), applied.get(1));
+    }
+
+    @Test
+    void enableScannerPrefetch_lazyScannerData_matchesUnprefetchedRun() throws Exception
+    {
+        val scannerFile = new File("docs/scanner-data.json");
+        val batches = readBatches(new File("docs/input.txt"), 100);
+
+        val submarine = new Submarine(new LocationImpl());
+        submarine.getScannedSonarDataDb().loadData(scannerFile);
+        for (val batch : batches)
+            submarine.commandsAvailable(batch);
+
+        val prefetchingSubmarine = new Submarine(new LocationImpl(), new ScannedSonarDataDb(), new SonarDb(), metrics);
+        prefetchingSubmarine.getScannedSonarDataDb().loadDataLazily(scannerFile);
+        prefetchingSubmarine.enableScannerPrefetch();
+        for (val batch : batches)
+            prefetchingSubmarine.commandsAvailable(batch);
+        prefetchingSubmarine.commandsFinished();
+
+        assertEquals(submarine.getCurrentLocation().toString(), prefetchingSubmarine.getCurrentLocation().toString());
+        val depthItor = submarine.getSonarDb().getDepthIterator();
+        val prefetchedDepthItor = prefetchingSubmarine.getSonarDb().getDepthIterator();
+        while (depthItor.hasNext())
+            assertEquals(depthItor.next(), prefetchedDepthItor.next());
+        assertFalse(prefetchedDepthItor.hasNext());
+
+        // Every scan is counted once, as a hit or a miss.
+        val prefetcher = prefetchingSubmarine.getScannerPrefetcher();
+        val scans = count("submarine.scanner.lookups", "result", "hit") + count("submarine.scanner.lookups", "result", "miss");
+        assertEquals(scans, prefetcher.getHitCount() + prefetcher.getMissCount());
+        assertEquals(prefetcher.getHitCount(), count("submarine.scanner.prefetch", "result", "hit"));
+        assertEquals(prefetcher.getMissCount(), count("submarine.scanner.prefetch", "result", "miss"));
+    }
+
+    @Test
+    void enableScannerPrefetch_eventAfterBatch_appliesBatchFirst()
+    {
+        val submarine = new Submarine(new LocationImpl());
+        submarine.enableScannerPrefetch();
+
+        val batch = new CommandBatch(2);
+        batch.add(Direction.DOWN, 2);
+        batch.add(Direction.FORWARD, 4);
+        submarine.commandsAvailable(batch);
+        submarine.commandAvailable(new CommandAvailableEvent(this, new Command(Direction.FORWARD, 1)));
+
+        assertEquals(5, submarine.getCurrentLocation().getHorizontalLocation());
+        assertEquals(10, submarine.getCurrentLocation().getDepth());
+    }
+
+    @Test
+    void enableScannerPrefetch_batchFailsToApply_isNotAppliedAgain() throws IOException
+    {
+        // The grid at (1,1) has 2 cells, which the lazy store only finds out when it is looked up.
+        val scannerFile = Files.writeString(tempDir.resolve("scanner-data.json"), "{\"(1,1)\":[\"a\",\"b\"]}").toFile();
+        val commandFile = Files.writeString(tempDir.resolve("commands.txt"), "down 1\nforward 1\nsideways 1\n").toFile();
+        val submarine = new Submarine(new LocationImpl());
+        submarine.getScannedSonarDataDb().loadDataLazily(scannerFile);
+        submarine.enableScannerPrefetch();
+        val commandStream = new CommandStream();
+        commandStream.setConfigValue(commandFile, true);
+        val factory = new CommandFactory(event -> {}, commandStream, List.of(submarine));
+
+        val exception = assertThrows(ExecutionException.class, () -> factory.start().get());
+        factory.stop();
+
+        // Reading stopped at the invalid line; applying the batch before it failed too, and is reported with it.
+        assertInstanceOf(ParseException.class, exception.getCause());
+        assertEquals(1, exception.getCause().getSuppressed().length);
+        assertInstanceOf(IllegalArgumentException.class, exception.getCause().getSuppressed()[0]);
+        submarine.commandsFinished();
+        assertEquals(1, submarine.getCurrentLocation().getHorizontalLocation());
+        assertEquals(1, submarine.getCurrentLocation().getDepth());
+        assertEquals(1, submarine.getCurrentLocation().getAim());
+    }
+
+    @Test
+    void close_appliesHeldBatchAndStopsTheExecutorUntilTheNextBatch()
+    {
+        val applied = new ArrayList<Integer>();
+        val prefetcher = new ScannerPrefetcher(new ScannedSonarDataDb(), new LocationImpl(), commands -> applied.add(commands.size()), metrics);
+        val batch = new CommandBatch(1);
+        batch.add(Direction.FORWARD, 1);
+        assertTrue(prefetcher.isClosed());
+
+        prefetcher.commandsAvailable(batch);
+        assertFalse(prefetcher.isClosed());
+        prefetcher.close();
+        assertTrue(prefetcher.isClosed());
+        assertEquals(List.of(1), applied);
+
+        // A closed prefetcher can still be given batches.
+        prefetcher.commandsAvailable(batch);
+        assertFalse(prefetcher.isClosed());
+        prefetcher.close();
+        assertTrue(prefetcher.isClosed());
+        assertEquals(List.of(1, 1), applied);
+    }
+
+    @Test
+    void enableScannerPrefetch_replacingPrefetcher_closesTheOldOne()
+    {
+        val submarine = new Submarine(new LocationImpl());
+        submarine.enableScannerPrefetch();
+        val batch = new CommandBatch(1);
+        batch.add(Direction.FORWARD, 1);
+        submarine.commandsAvailable(batch);
+        val replaced = submarine.getScannerPrefetcher();
+        assertFalse(replaced.isClosed());
+
+        submarine.enableScannerPrefetch();
+        assertTrue(replaced.isClosed());
+        assertNotSame(replaced, submarine.getScannerPrefetcher());
+        assertEquals(1, submarine.getCurrentLocation().getHorizontalLocation());
+
+        submarine.commandsAvailable(batch);
+        assertFalse(submarine.getScannerPrefetcher().isClosed());
+        submarine.commandsFinished();
+        assertTrue(submarine.getScannerPrefetcher().isClosed());
+        assertEquals(2, submarine.getCurrentLocation().getHorizontalLocation());
+    }
+}
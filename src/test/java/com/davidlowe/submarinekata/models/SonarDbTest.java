@@ -0,0 +1,205 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SonarDbTest
+{
+    @Test
+    void emptyDb()
+    {
+        val sonarDb = new SonarDb();
+
+        assertNull(sonarDb.getMinHorizontalLocation());
+        assertNull(sonarDb.getMaxDepth());
+        assertEquals("", sonarDb.getHorizontalMapDataForDepth(0));
+        assertFalse(sonarDb.getDepthIterator().hasNext());
+        assertEquals(0, sonarDb.getCellCount());
+        assertEquals(0, sonarDb.getTileCount());
+    }
+
+    @Test
+    void addScannedData_tracksBounds()
+    {
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedData(3, -2, 'a');
+        sonarDb.addScannedData(-5, 7, 'b');
+
+        assertEquals(-5, sonarDb.getMinHorizontalLocation());
+        assertEquals(3, sonarDb.getMaxHorizontalLocation());
+        assertEquals(-2, sonarDb.getMinDepth());
+        assertEquals(7, sonarDb.getMaxDepth());
+    }
+
+    @Test
+    void addScannedData_firstWriterWins()
+    {
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedData(1, 1, ' ');
+        sonarDb.addScannedData(1, 1, '#');
+
+        assertEquals(' ', sonarDb.getScannedData(1, 1));
+        assertEquals(1, sonarDb.getCellCount());
+        assertNull(sonarDb.getScannedData(1, 2));
+    }
+
+    @Test
+    void getHorizontalMapDataForDepth_spansTilesAndNegativePositions()
+    {
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedData(-70, 0, 'L');
+        sonarDb.addScannedData(-1, 0, 'M');
+        sonarDb.addScannedData(0, 0, 'N');
+        sonarDb.addScannedData(130, 0, 'R');
+        sonarDb.addScannedData(5, -65, 'T');
+
+        val row = sonarDb.getHorizontalMapDataForDepth(0);
+        assertEquals(201, row.length());
+        assertEquals('L', row.charAt(0));
+        assertEquals('M', row.charAt(69));
+        assertEquals('N', row.charAt(70));
+        assertEquals('R', row.charAt(200));
+        assertEquals(" ".repeat(67), row.substring(1, 68));
+
+        val sparseRow = sonarDb.getHorizontalMapDataForDepth(-30);
+        assertEquals(" ".repeat(201), sparseRow);
+        assertEquals(" ".repeat(201), sonarDb.getHorizontalMapDataForDepth(1000));
+        assertEquals('T', sonarDb.getHorizontalMapDataForDepth(-65).charAt(75));
+        assertEquals(5, sonarDb.getTileCount());
+    }
+
+    @Test
+    void getDepthIterator_coversMinToMaxDepth()
+    {
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedData(0, -1, 'a');
+        sonarDb.addScannedData(1, 2, 'b');
+
+        val rows = new ArrayList<String>();
+        sonarDb.getDepthIterator().forEachRemaining(rows::add);
+
+        assertEquals(4, rows.size());
+        assertEquals("a ", rows.get(0));
+        assertEquals("  ", rows.get(1));
+        assertEquals("  ", rows.get(2));
+        assertEquals(" b", rows.get(3));
+    }
+
+    @Test
+    void addScannedData_nonLatin1_keepsTheCharacter()
+    {
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedData(0, 0, '\u2248');
+        sonarDb.addScannedData(1, 0, '\u00E9');
+        sonarDb.addScannedData(0, 0, 'x');
+
+        assertTrue(sonarDb.hasWideCells());
+        assertEquals('\u2248', sonarDb.getScannedData(0, 0));
+        assertEquals("\u2248\u00E9", sonarDb.getHorizontalMapDataForDepth(0));
+        assertEquals(List.of(" \u2248\u00E9 "), sonarDb.render(-1, 0, 2, 0));
+        assertEquals(2, sonarDb.getCellCount());
+    }
+
+    @Test
+    void addScannedBlock_writesGridCenteredOnPosition()
+    {
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedBlock(0, 0, new ScannerData("abcdefghi"));
+
+        assertEquals(-1, sonarDb.getMinHorizontalLocation());
+        assertEquals(1, sonarDb.getMaxHorizontalLocation());
+        assertEquals(-1, sonarDb.getMinDepth());
+        assertEquals(1, sonarDb.getMaxDepth());
+        assertEquals("abc", sonarDb.getHorizontalMapDataForDepth(-1));
+        assertEquals("def", sonarDb.getHorizontalMapDataForDepth(0));
+        assertEquals("ghi", sonarDb.getHorizontalMapDataForDepth(1));
+        assertEquals(9, sonarDb.getCellCount());
+        assertEquals(4, sonarDb.getTileCount());
+    }
+
+    @Test
+    void addScannedBlock_matchesCellByCellWrites()
+    {
+        val blockDb = new SonarDb();
+        val cellDb = new SonarDb();
+        val scans = new String[]{"123456789", "abcdefghi", "#%=+-*:. "};
+        val centers = new int[][]{{63, 10}, {64, 11}, {-1, 64}};
+
+        for (int scanIdx = 0; scanIdx < scans.length; ++scanIdx)
+        {
+            val scannerData = new ScannerData(scans[scanIdx]);
+            blockDb.addScannedBlock(centers[scanIdx][0], centers[scanIdx][1], scannerData);
+            for (int row = 0; row < 3; ++row)
+                for (int col = 0; col < 3; ++col)
+                    cellDb.addScannedData(centers[scanIdx][0] - 1 + col, centers[scanIdx][1] - 1 + row, scannerData.getCell(row, col));
+        }
+
+        assertEquals(cellDb.getCellCount(), blockDb.getCellCount());
+        for (int depth = cellDb.getMinDepth(); depth <= cellDb.getMaxDepth(); ++depth)
+            assertEquals(cellDb.getHorizontalMapDataForDepth(depth), blockDb.getHorizontalMapDataForDepth(depth));
+    }
+
+    @Test
+    void addScannedBlock_nonLatin1_keepsTheCharacters()
+    {
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedBlock(63, 0, new ScannerData("abcd\u2588fgh\u2248"));
+
+        assertEquals(List.of("abc", "d\u2588f", "gh\u2248"), sonarDb.render(62, -1, 64, 1));
+        assertEquals('\u2248', sonarDb.getScannedData(64, 1));
+        assertEquals(9, sonarDb.getCellCount());
+    }
+
+    @Test
+    void render_matchesCellsInsideAndOutsideTheMap()
+    {
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedBlock(63, 10, new ScannerData("123456789"));
+        sonarDb.addScannedData(-65, 12, 'x');
+        sonarDb.addScannedData(0, 9, ' ');
+
+        val rows = sonarDb.render(-70, 5, 70, 15);
+
+        assertEquals(11, rows.size());
+        for (int depth = 5; depth <= 15; ++depth)
+        {
+            val row = rows.get(depth - 5);
+            assertEquals(141, row.length());
+            for (int x = -70; x <= 70; ++x)
+            {
+                val cell = sonarDb.getScannedData(x, depth);
+                assertEquals(cell == null ? ' ' : cell, row.charAt(x + 70), "(" + x + "," + depth + ")");
+            }
+        }
+    }
+
+    @Test
+    void render_onlyTouchesTheViewport()
+    {
+        // Far too wide to render in full rows, but a viewport only reads the tiles it overlaps.
+        val sonarDb = new SonarDb();
+        sonarDb.addScannedData(-1_000_000_000, 0, 'a');
+        sonarDb.addScannedData(1_000_000_000, 0, 'b');
+        sonarDb.addScannedData(5, 1, 'c');
+
+        assertEquals(List.of("   ", "  c"), sonarDb.render(3, 0, 5, 1));
+        assertEquals(List.of("a "), sonarDb.render(-1_000_000_000, 0, -999_999_999, 0));
+        assertEquals(List.of(" "), sonarDb.render(0, -1, 0, -1));
+    }
+
+    @Test
+    void render_rejectsInvalidViewports()
+    {
+        val sonarDb = new SonarDb();
+
+        assertThrows(IllegalArgumentException.class, () -> sonarDb.render(1, 0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> sonarDb.render(0, 1, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> sonarDb.render(Integer.MIN_VALUE, 0, Integer.MAX_VALUE, 0));
+        assertEquals(List.of("  "), sonarDb.render(0, 0, 1, 0));
+    }
+}
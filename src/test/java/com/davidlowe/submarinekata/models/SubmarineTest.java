@@ -5,6 +5,11 @@ import lombok.val;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class SubmarineTest
@@ -195,4 +200,98 @@ class SubmarineTest
         assertEquals(zero, location.getDepth());
         assertEquals(zero, location.getAim());
     }
+
+    @Test
+    void testCommandsAvailable_MatchesCommandAvailableEvents() throws Exception
+    {
+        val scannerFile = new File("docs/scanner-data.json");
+        val commands = new ArrayList<Command>();
+        for (val line : Files.readAllLines(Path.of("docs/input.txt")))
+            commands.add(Command.create(line));
+
+        location.setConfigValue(0, 0, 0);
+        submarine.getScannedSonarDataDb().loadData(scannerFile);
+        for (val command : commands)
+            submarine.commandAvailable(new CommandAvailableEvent(this, command));
+
+        val batchLocation = new LocationImpl();
+        val batchSubmarine = new Submarine(batchLocation);
+        batchSubmarine.getScannedSonarDataDb().loadData(scannerFile);
+        val batch = new CommandBatch(commands.size() / 2 + 1);
+        for (int idx = 0; idx < commands.size(); ++idx)
+        {
+            batch.add(commands.get(idx).direction(), commands.get(idx).distance());
+            if (batch.isFull() || idx == commands.size() - 1)
+            {
+                batchSubmarine.commandsAvailable(batch);
+                batch.clear();
+            }
+        }
+
+        assertEquals(location.toString(), batchLocation.toString());
+        val depthItor = submarine.getSonarDb().getDepthIterator();
+        val batchDepthItor = batchSubmarine.getSonarDb().getDepthIterator();
+        while (depthItor.hasNext())
+            assertEquals(depthItor.next(), batchDepthItor.next());
+        assertFalse(batchDepthItor.hasNext());
+    }
+
+    @Test
+    void testRouteFilteredScannerData_MatchesFullScannerData() throws Exception
+    {
+        val scannerFile = new File("docs/scanner-data.json");
+        val commandFile = new File("docs/input.txt");
+        val batch = new CommandBatch(CommandFactory.BATCH_SIZE);
+        for (val line : Files.readAllLines(commandFile.toPath()))
+        {
+            val command = Command.create(line);
+            batch.add(command.direction(), command.distance());
+        }
+
+        submarine.getScannedSonarDataDb().loadData(scannerFile);
+        submarine.commandsAvailable(batch);
+
+        val routeSubmarine = new Submarine(new LocationImpl());
+        routeSubmarine.getScannedSonarDataDb().loadData(scannerFile, RoutePositions.collect(commandFile, 0, 0, 0));
+        routeSubmarine.commandsAvailable(batch);
+
+        assertTrue(routeSubmarine.getScannedSonarDataDb().size() < submarine.getScannedSonarDataDb().size());
+        val depthItor = submarine.getSonarDb().getDepthIterator();
+        val routeDepthItor = routeSubmarine.getSonarDb().getDepthIterator();
+        while (depthItor.hasNext())
+            assertEquals(depthItor.next(), routeDepthItor.next());
+        assertFalse(routeDepthItor.hasNext());
+    }
+
+    @Test
+    void testCommandHistory_LocationAfterAndEdit()
+    {
+        location.setConfigValue(1, 2, 3);
+        assertThrows(IllegalStateException.class, () -> submarine.getLocationAfter(0));
+        submarine.enableCommandHistory();
+
+        submarine.commandAvailable(new CommandAvailableEvent(this, new Command(Direction.FORWARD, 5)));
+        val batch = new CommandBatch(2);
+        batch.add(Direction.DOWN, 2);
+        batch.add(Direction.FORWARD, 4);
+        submarine.commandsAvailable(batch);
+
+        assertEquals(3, submarine.getCommandHistory().size());
+        val start = submarine.getLocationAfter(-1);
+        assertEquals(1.0, start.getHorizontalLocation());
+        assertEquals(2.0, start.getDepth());
+        val afterFirst = submarine.getLocationAfter(0);
+        assertEquals(6.0, afterFirst.getHorizontalLocation());
+        assertEquals(17.0, afterFirst.getDepth());
+        assertEquals(location.toString(), submarine.getLocationAfter(2).toString());
+
+        // forward 5, up 2, forward 4: aim goes 3 -> 1.
+        val edited = submarine.editCommand(1, new Command(Direction.UP, 2));
+        assertEquals(10.0, edited.getHorizontalLocation());
+        assertEquals(21.0, edited.getDepth());
+        assertEquals(1.0, edited.getAim());
+        // The submarine itself has not moved.
+        assertEquals(10.0, location.getHorizontalLocation());
+        assertEquals(37.0, location.getDepth());
+    }
 }
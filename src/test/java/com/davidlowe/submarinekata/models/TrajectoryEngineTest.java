@@ -0,0 +1,171 @@
+package com.davidlowe.submarinekata.models;
+
+import lombok.val;
+import org.apache.commons.cli.ParseException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrajectoryEngineTest
+{
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @TempDir
+    Path tempDir;
+
+    @AfterAll
+    static void tearDown()
+    {
+        POOL.shutdown();
+    }
+
+    /**
+     * Writes 'commandCount' random commands. Every seventh command has a zero distance, which does not
+     * change the location.
+     */
+    private File writeCommands(int commandCount, boolean integerDistances, String lineSeparator) throws IOException
+    {
+        val random = new Random(commandCount);
+        val commands = new StringBuilder();
+        for (int idx = 0; idx < commandCount; ++idx)
+        {
+            val direction = Direction.fromOrdinal(random.nextInt(3)).name().toLowerCase();
+            val distance = idx % 7 == 0 ? "0" : integerDistances ? Integer.toString(random.nextInt(1, 10)) : (random.nextInt(1, 100) / 10.0) + "";
+            commands.append(direction).append(' ').append(distance).append(lineSeparator);
+        }
+        return Files.writeString(tempDir.resolve("commands.txt"), commands).toFile();
+    }
+
+    /**
+     * @return Every changed position from replaying 'commandFile' with LocationImpl.processCommand, plus the final location.
+     */
+    private static List<double[]> replaySequentially(File commandFile, Location location) throws IOException, ParseException
+    {
+        val positions = new ArrayList<double[]>();
+        for (val line : Files.readAllLines(commandFile.toPath()))
+        {
+            if (line.equalsIgnoreCase("q"))
+                break;
+            if (location.processCommand(Command.create(line)))
+                positions.add(new double[]{location.getHorizontalLocation(), location.getDepth()});
+        }
+        return positions;
+    }
+
+    private static List<double[]> replayInParallel(File commandFile, Location location, int chunkSize) throws IOException, ParseException
+    {
+        val positions = new ArrayList<double[]>();
+        new TrajectoryEngine(POOL, chunkSize).run(commandFile, location, (horizontal, depth) -> positions.add(new double[]{horizontal, depth}));
+        return positions;
+    }
+
+
+    @Test
+    void run_integerDistances_matchesLocationImplExactly() throws Exception
+    {
+        for (val lineSeparator : List.of("\n", "\r\n", "\r"))
+        {
+            val commandFile = writeCommands(5000, true, lineSeparator);
+            val expectedLocation = new LocationImpl();
+            expectedLocation.setConfigValue(3, -2, 1);
+            val actualLocation = new LocationImpl();
+            actualLocation.setConfigValue(3, -2, 1);
+
+            val expected = replaySequentially(commandFile, expectedLocation);
+            val actual = replayInParallel(commandFile, actualLocation, 97);
+
+            assertEquals(expected.size(), actual.size());
+            for (int idx = 0; idx < expected.size(); ++idx)
+                assertArrayEquals(expected.get(idx), actual.get(idx));
+            assertEquals(expectedLocation.toString(), actualLocation.toString());
+            assertEquals(expectedLocation.getDepth(), actualLocation.getDepth());
+        }
+    }
+
+    @Test
+    void run_decimalDistances_matchesLocationImplWithinTolerance() throws Exception
+    {
+        val commandFile = writeCommands(20000, false, "\n");
+        val expectedLocation = new LocationImpl();
+        val actualLocation = new LocationImpl();
+
+        val expected = replaySequentially(commandFile, expectedLocation);
+        val actual = replayInParallel(commandFile, actualLocation, 256);
+
+        assertEquals(expected.size(), actual.size());
+        for (int idx = 0; idx < expected.size(); ++idx)
+        {
+            for (int axis = 0; axis < 2; ++axis)
+            {
+                val tolerance = 1e-9 * Math.max(1.0, Math.abs(expected.get(idx)[axis]));
+                assertEquals(expected.get(idx)[axis], actual.get(idx)[axis], tolerance);
+            }
+        }
+        assertEquals(expectedLocation.getDepth(), actualLocation.getDepth(), 1e-9 * Math.abs(expectedLocation.getDepth()));
+    }
+
+    @Test
+    void run_withoutListener_returnsCountAndFinalLocation() throws Exception
+    {
+        val commandFile = writeCommands(3000, true, "\n");
+        val expectedLocation = new LocationImpl();
+        replaySequentially(commandFile, expectedLocation);
+
+        val actualLocation = new LocationImpl();
+        val commandCount = new TrajectoryEngine(POOL, 64).run(commandFile, actualLocation);
+
+        assertEquals(3000, commandCount);
+        assertEquals(expectedLocation.getHorizontalLocation(), actualLocation.getHorizontalLocation());
+        assertEquals(expectedLocation.getDepth(), actualLocation.getDepth());
+        assertEquals(expectedLocation.getAim(), actualLocation.getAim());
+    }
+
+    @Test
+    void run_quitLine_endsReplay() throws Exception
+    {
+        val commandFile = Files.writeString(tempDir.resolve("commands.txt"), "forward 5\ndown 2\nforward 3\nq\nforward 100\n").toFile();
+        val location = new LocationImpl();
+
+        val positions = replayInParallel(commandFile, location, 4);
+
+        assertEquals(3, positions.size());
+        assertEquals(8.0, location.getHorizontalLocation());
+        assertEquals(6.0, location.getDepth());
+    }
+
+    @Test
+    void run_invalidLine_reportsLineAndLeavesLocationUnchanged() throws IOException
+    {
+        val commandFile = Files.writeString(tempDir.resolve("commands.txt"), "forward 5\ndown 2\nforward 3\nforward 2\nsideways 1\nup 1\n").toFile();
+        val location = new LocationImpl();
+        val positions = new ArrayList<double[]>();
+
+        val exception = assertThrows(ParseException.class, () ->
+                new TrajectoryEngine(POOL, 8).run(commandFile, location, (horizontal, depth) -> positions.add(new double[]{horizontal, depth})));
+
+        assertEquals("Invalid command \"sideways 1\" at line 5", exception.getMessage());
+        assertTrue(positions.isEmpty());
+        assertEquals(0.0, location.getHorizontalLocation());
+    }
+
+    @Test
+    void run_emptyFile() throws Exception
+    {
+        val commandFile = Files.writeString(tempDir.resolve("commands.txt"), "").toFile();
+        val location = new LocationImpl();
+
+        assertEquals(0, new TrajectoryEngine(POOL).run(commandFile, location));
+        assertEquals(0.0, location.getHorizontalLocation());
+    }
+}